@@ -3,10 +3,17 @@ package org.telegram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.bot.AlbumMakerBot;
+import org.telegram.bot.BotHost;
+import org.telegram.config.BotConfig;
+import org.telegram.config.TenantConfig;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Classe principal para iniciar o bot AlbumMaker
  */
@@ -20,17 +27,43 @@ public class Main {
             // Inicializar a API do Telegram
             TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
 
-            // Criar e registrar o bot
-            AlbumMakerBot albumMakerBot = new AlbumMakerBot();
-            botsApi.registerBot(albumMakerBot);
-
-            logger.info("AlbumMaker Bot iniciado com sucesso!");
+            // Criar e registrar os bots sobre a mesma infraestrutura
+            BotHost host = new BotHost();
+            List<BotSession> sessions = new CopyOnWriteArrayList<>();
 
-            // Adicionar um gancho de desligamento para limpar recursos
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Ao desligar, parar o long polling e drenar o trabalho em andamento
+            Thread shutdownHook = new Thread(() -> {
                 logger.info("Desligando o AlbumMaker Bot...");
-                // Adicionar aqui qualquer limpeza necessária
-            }));
+                for (BotSession session : sessions) {
+                    if (session.isRunning()) {
+                        session.stop();
+                    }
+                }
+                host.shutdown();
+            }, "shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+            for (TenantConfig tenant : BotConfig.getTenants()) {
+                AlbumMakerBot albumMakerBot = host.createBot(tenant);
+                try {
+                    sessions.add(botsApi.registerBot(albumMakerBot));
+                } catch (TelegramApiException e) {
+                    // Um token inválido não deve derrubar os demais bots; as mídias pendentes
+                    // dele ficam no disco para a próxima instância
+                    logger.error("Erro ao registrar o bot {}", tenant, e);
+                    continue;
+                }
+                albumMakerBot.restorePendingMedia();
+            }
+
+            if (sessions.isEmpty()) {
+                logger.error("Nenhum bot pôde ser registrado");
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                host.shutdown();
+                return;
+            }
+            logger.info("AlbumMaker Bot iniciado com sucesso! Bots ativos: {} de {}",
+                    sessions.size(), BotConfig.getTenants().size());
         } catch (TelegramApiException e) {
             logger.error("Erro ao iniciar o AlbumMaker Bot", e);
         }
@@ -1,93 +1,394 @@
 package org.telegram.bot;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.config.BotConfig;
+import org.telegram.config.TenantConfig;
 import org.telegram.handler.CommandHandler;
 import org.telegram.handler.MediaHandler;
 import org.telegram.handler.CaptionHandler;
+import org.telegram.model.Command;
+import org.telegram.model.MediaItem;
+import org.telegram.model.UpdateKind;
 import org.telegram.model.UserSession;
+import org.telegram.service.AlbumExporter;
+import org.telegram.service.ApiTransport;
+import org.telegram.service.AlbumPublisher;
+import org.telegram.service.CollageRenderer;
+import org.telegram.service.FairScheduler;
+import org.telegram.service.InputMediaConverter;
+import org.telegram.service.JsonRequestWriter;
+import org.telegram.service.MediaFileSource;
+import org.telegram.service.MediaSpillStore;
+import org.telegram.service.MetricsService;
+import org.telegram.service.PendingMediaStore;
+import org.telegram.service.RateLimiter;
+import org.telegram.service.TelegramFileSource;
+import org.telegram.service.UpdateCheckpointService;
+import org.telegram.service.UpdateDispatcher;
+import org.telegram.service.UpdateRecorder;
 import org.telegram.service.UserSessionService;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Implementação do bot AlbumMaker
  */
 public class AlbumMakerBot extends TelegramLongPollingBot {
     private static final Logger logger = LoggerFactory.getLogger(AlbumMakerBot.class);
+    // Só interpretam as respostas das chamadas montadas pelo JsonRequestWriter
+    private static final SendMediaGroup MEDIA_GROUP_RESPONSE = new SendMediaGroup();
+    private static final EditMessageCaption EDIT_CAPTION_RESPONSE = new EditMessageCaption();
 
+    private final TenantConfig tenant;
     private final CommandHandler commandHandler;
     private final MediaHandler mediaHandler;
     private final CaptionHandler captionHandler;
     private final UserSessionService sessionService;
+    private final MetricsService metrics;
+    private final UpdateDispatcher dispatcher;
+    private final UpdateDispatcher.UpdateHandler updateHandler = this::processUpdate;
+    private final UpdateCheckpointService checkpointService;
+    private final AlbumPublisher albumPublisher;
+    private final AlbumExporter albumExporter;
+    private final CollageRenderer collageRenderer;
+    private final FairScheduler.Tenant outboundScheduler;
+    private final RateLimiter rateLimiter;
+    private final PendingMediaStore pendingMediaStore;
+    private final UpdateRecorder recorder;
+    private final MediaSpillStore spillStore;
+    private final Clock clock;
+    private final ApiTransport transport;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ThreadLocal<JsonRequestWriter> requestWriters = ThreadLocal.withInitial(JsonRequestWriter::new);
+    private final String apiBaseUrl;
+    private volatile boolean accepting = true;
 
-    public AlbumMakerBot() {
-        this.sessionService = new UserSessionService();
-        this.commandHandler = new CommandHandler(this);
-        this.mediaHandler = new MediaHandler(this, sessionService);
-        this.captionHandler = new CaptionHandler(this, sessionService);
+    /**
+     * Cria um bot sobre a infraestrutura compartilhada do processo
+     * @param tenant credenciais e diretório de estado deste bot
+     */
+    public AlbumMakerBot(BotHost host, TenantConfig tenant) {
+        super(tenant.getToken());
+        this.tenant = tenant;
+        this.metrics = host.metricsFor(tenant);
+        this.transport = host.getTransport();
+        this.dispatcher = host.getDispatcher();
+        this.apiBaseUrl = getBaseUrl();
+        this.rateLimiter = new RateLimiter(() -> BotConfig.getTenantMaxCallsPerSecond(tenant.getId()));
+        this.outboundScheduler = host.getOutboundScheduler().addTenant(rateLimiter, metrics);
+        this.checkpointService = new UpdateCheckpointService(tenant.getStateDir(), host.getMaintenanceScheduler());
+        this.spillStore = BotConfig.isMediaSpillEnabled() ? openSpillStore() : null;
+        this.sessionService = new UserSessionService(host.getClock(), host.getMaintenanceScheduler(), spillStore);
+        this.albumPublisher = new AlbumPublisher(this, outboundScheduler, metrics);
+        MediaFileSource fileSource = new TelegramFileSource(this, BotConfig.getExportFileBaseUrl());
+        this.albumExporter = new AlbumExporter(fileSource, metrics, tenant.getStateDir());
+        this.collageRenderer = new CollageRenderer(fileSource, metrics);
+        this.commandHandler = new CommandHandler(this, sessionService, albumPublisher, albumExporter, collageRenderer);
+        this.mediaHandler = new MediaHandler(this, sessionService, metrics, outboundScheduler,
+                host.getClock(), host.getMediaScheduler());
+        this.captionHandler = new CaptionHandler(this, sessionService, metrics, outboundScheduler,
+                host.getMediaScheduler());
+        this.pendingMediaStore = new PendingMediaStore(tenant.getStateDir());
+        this.clock = host.getClock();
+        this.recorder = BotConfig.isRecorderEnabled() ? openRecorder(host) : null;
     }
 
-    @Override
-    public String getBotUsername() {
-        return BotConfig.getBotUsername();
+    /**
+     * Abre um novo arquivo de gravação das atualizações; uma falha só desativa a gravação
+     */
+    private UpdateRecorder openRecorder(BotHost host) {
+        String name = "updates-" + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+                .format(LocalDateTime.now(clock)) + ".amr";
+        Path file = tenant.getStateDir().resolve("recordings").resolve(name);
+        try {
+            return new UpdateRecorder(file, BotConfig.getRecorderBufferKb() * 1024,
+                    BotConfig.getRecorderMaxMegabytes() * 1024L * 1024L, clock.millis(),
+                    metrics, host.getMaintenanceScheduler());
+        } catch (IOException e) {
+            logger.error("Bot {}: não foi possível iniciar a gravação de atualizações em {}", tenant.getId(), file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Abre o arquivo de transbordo das mídias pendentes; sem ele, todas ficam no heap
+     */
+    private MediaSpillStore openSpillStore() {
+        Path file = tenant.getStateDir().resolve("media-spill.bin");
+        try {
+            return new MediaSpillStore(file, BotConfig.getMediaSpillMaxMegabytes() * 1024L * 1024L, metrics);
+        } catch (IOException e) {
+            logger.error("Bot {}: não foi possível abrir o arquivo de transbordo {}", tenant.getId(), file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Retoma as mídias que a instância anterior não chegou a transformar em álbuns. O
+     * arquivo é consumido: chamar só depois de o bot ser registrado, quando o desligamento
+     * coordenado já pode gravá-las de volta.
+     */
+    public void restorePendingMedia() {
+        Map<Long, List<MediaItem>> pendingByChat = pendingMediaStore.takeAll();
+        int restored = 0;
+        for (Map.Entry<Long, List<MediaItem>> entry : pendingByChat.entrySet()) {
+            UserSession session = sessionService.getOrCreateSession(entry.getKey());
+            for (MediaItem item : entry.getValue()) {
+                session.addMedia(item);
+                restored++;
+            }
+            mediaHandler.resumeAlbumCreation(entry.getKey());
+        }
+
+        if (restored > 0) {
+            metrics.add("media.restored", restored);
+            logger.info("Bot {}: {} mídias pendentes de {} chats retomadas da execução anterior",
+                    tenant.getId(), restored, pendingByChat.size());
+        }
     }
 
     @Override
-    public String getBotToken() {
-        return BotConfig.getBotToken();
+    public String getBotUsername() {
+        return tenant.getUsername();
     }
 
     @Override
     public void onUpdateReceived(Update update) {
+        if (!accepting) {
+            // Sem registrar no checkpoint: a próxima instância recebe a atualização de novo
+            metrics.increment("ingress.rejected.shutdown");
+            return;
+        }
+
+        // Descartar atualizações reenviadas pelo Telegram que já foram processadas
+        int updateId = update.getUpdateId();
+        if (!checkpointService.begin(updateId)) {
+            metrics.increment("ingress.duplicate");
+            return;
+        }
+
+        if (!update.hasMessage()) {
+            checkpointService.complete(updateId);
+            return;
+        }
+
+        // Classificar a mensagem uma única vez; a classificação acompanha a atualização na fila
+        Message message = update.getMessage();
+        UpdateKind kind = UpdateKind.of(message, getBotUsername());
+        if (recorder != null) {
+            Command command = kind == UpdateKind.CANCEL_COMMAND ? Command.CANCEL
+                    : kind == UpdateKind.COMMAND ? Command.parse(message.getText(), getBotUsername()) : null;
+            recorder.record(clock.millis(), message.getChatId(), kind, message.getMessageId(), command);
+        }
+        if (kind == UpdateKind.IGNORED) {
+            checkpointService.complete(updateId);
+            return;
+        }
+        switch (dispatcher.submit(updateHandler, message.getChatId(), update, kind)) {
+            case SHED:
+                checkpointService.complete(updateId);
+                break;
+
+            case REFUSED:
+                // Fica em aberto: o checkpoint não passa dela e a próxima instância a recebe de novo
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Processa uma atualização retirada da fila de entrada
+     */
+    private void processUpdate(Update update, UpdateKind kind) {
         try {
-            if (update.hasMessage()) {
-                Message message = update.getMessage();
-                long chatId = message.getChatId();
+            Message message = update.getMessage();
+            long chatId = message.getChatId();
 
-                // Garantir que há uma sessão de usuário
-                UserSession session = sessionService.getOrCreateSession(chatId);
+            // Garantir que há uma sessão de usuário
+            sessionService.getOrCreateSession(chatId);
 
-                // Processar comandos
-                if (message.hasText() && message.getText().startsWith("/")) {
+            switch (kind) {
+                case COMMAND:
+                case CANCEL_COMMAND:
                     commandHandler.handleCommand(message);
-                    return;
-                }
+                    break;
 
-                // Processar mensagens com mídia
-                if (hasMedia(message)) {
-                    mediaHandler.handleMedia(message);
-                    return;
-                }
+                case PHOTO:
+                case VIDEO:
+                case ANIMATION:
+                case DOCUMENT:
+                    mediaHandler.handleMedia(message, kind);
+                    break;
 
-                // Processar respostas para adicionar legendas
-                if (message.hasText() && message.isReply()) {
+                case CAPTION_REPLY:
+                    // Processar respostas para adicionar legendas
                     captionHandler.handleCaption(message);
-                    return;
-                }
+                    break;
 
-                // Se chegou aqui e não é nenhum dos casos acima, mostrar mensagem de ajuda
-                if (message.hasText()) {
+                case TEXT:
+                    // Texto que não é comando nem resposta: mostrar mensagem de ajuda
                     sendMessage(chatId, "Envie arquivos de mídia (fotos, vídeos) para criar um álbum ou use /help para ver os comandos disponíveis.");
-                }
+                    break;
+
+                default:
+                    break;
             }
         } catch (Exception e) {
             logger.error("Erro ao processar update", e);
+        } finally {
+            // Mídias também: aceitas pela sessão, já não dependem do reenvio, que o long polling
+            // impede ao confirmar a atualização no próximo getUpdates
+            checkpointService.complete(update.getUpdateId());
+        }
+    }
+
+    /**
+     * Envia as chamadas JSON pelo transporte configurado
+     */
+    @Override
+    public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) throws TelegramApiException {
+        chargeRateLimit();
+        if (transport == null) {
+            return super.execute(method);
+        }
+        method.validate();
+        return method.deserializeResponse(post(method.getMethod(), method, ApiTransport.CallType.TEXT));
+    }
+
+    /**
+     * Envia grupos de mídia já hospedados no Telegram pelo transporte configurado.
+     * Mídias novas exigem upload multipart e continuam com o cliente da biblioteca.
+     */
+    @Override
+    public List<Message> execute(SendMediaGroup sendMediaGroup) throws TelegramApiException {
+        chargeRateLimit();
+        if (transport == null || hasNewMedia(sendMediaGroup)) {
+            return super.execute(sendMediaGroup);
         }
+        sendMediaGroup.validate();
+        return sendMediaGroup.deserializeResponse(
+                post(SendMediaGroup.PATH, toJson(sendMediaGroup), ApiTransport.CallType.MEDIA));
     }
 
     /**
-     * Verifica se a mensagem contém algum tipo de mídia
+     * Envia ao chat um álbum de mídias já hospedadas no Telegram. Com o transporte próprio
+     * o corpo é montado direto dos itens, sem objetos InputMedia nem reflexão (ver
+     * {@link JsonRequestWriter}); sem ele, segue pelo {@link #execute(SendMediaGroup)}.
      */
-    private boolean hasMedia(Message message) {
-        return message.hasPhoto() ||
-                message.hasVideo() ||
-                message.hasDocument() ||
-                message.hasAnimation();
+    public List<Message> sendMediaGroup(long chatId, List<MediaItem> mediaItems) throws TelegramApiException {
+        if (transport == null) {
+            SendMediaGroup mediaGroup = new SendMediaGroup();
+            mediaGroup.setChatId(String.valueOf(chatId));
+            mediaGroup.setMedias(InputMediaConverter.convert(mediaItems, null));
+            return execute(mediaGroup);
+        }
+        chargeRateLimit();
+        JsonRequestWriter body = requestWriters.get().sendMediaGroup(chatId, mediaItems, null);
+        return MEDIA_GROUP_RESPONSE.deserializeResponse(post(SendMediaGroup.PATH, body, ApiTransport.CallType.MEDIA));
+    }
+
+    /**
+     * Edita a legenda de uma mensagem, pelo mesmo caminho direto do {@link #sendMediaGroup}
+     * @return a mensagem editada, ou true para mensagens inline
+     */
+    public Serializable editMessageCaption(long chatId, int messageId, String caption) throws TelegramApiException {
+        if (transport == null) {
+            EditMessageCaption editCaption = new EditMessageCaption();
+            editCaption.setChatId(String.valueOf(chatId));
+            editCaption.setMessageId(messageId);
+            editCaption.setCaption(caption);
+            return execute(editCaption);
+        }
+        chargeRateLimit();
+        JsonRequestWriter body = requestWriters.get().editMessageCaption(chatId, messageId, caption);
+        return EDIT_CAPTION_RESPONSE.deserializeResponse(post(EditMessageCaption.PATH, body, ApiTransport.CallType.TEXT));
+    }
+
+    /**
+     * A biblioteca só serializa SendMediaGroup em multipart; aqui o corpo JSON é montado
+     * com os nomes de campo da Bot API
+     */
+    private ObjectNode toJson(SendMediaGroup sendMediaGroup) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("chat_id", sendMediaGroup.getChatId());
+        body.set("media", objectMapper.valueToTree(sendMediaGroup.getMedias()));
+        if (sendMediaGroup.getMessageThreadId() != null) {
+            body.put("message_thread_id", sendMediaGroup.getMessageThreadId());
+        }
+        if (sendMediaGroup.getReplyToMessageId() != null) {
+            body.put("reply_to_message_id", sendMediaGroup.getReplyToMessageId());
+        }
+        if (sendMediaGroup.getDisableNotification() != null) {
+            body.put("disable_notification", sendMediaGroup.getDisableNotification());
+        }
+        if (sendMediaGroup.getAllowSendingWithoutReply() != null) {
+            body.put("allow_sending_without_reply", sendMediaGroup.getAllowSendingWithoutReply());
+        }
+        if (sendMediaGroup.getProtectContent() != null) {
+            body.put("protect_content", sendMediaGroup.getProtectContent());
+        }
+        return body;
+    }
+
+    private static boolean hasNewMedia(SendMediaGroup sendMediaGroup) {
+        for (InputMedia media : sendMediaGroup.getMedias()) {
+            if (media.isNewMedia()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Desconta a chamada do limite deste bot; o Telegram limita cada token separadamente.
+     * Nada espera aqui, pois a thread pode ser compartilhada com os outros bots: as tarefas
+     * da fila de saída já pagaram seu custo ao sair dela, e as demais chamadas (respostas
+     * na faixa de entrada) entram como dívida, que segura as próximas tarefas do bot.
+     */
+    private void chargeRateLimit() {
+        metrics.increment("api.calls");
+        if (!outboundScheduler.isRunningTask()) {
+            rateLimiter.consume(1);
+        }
+    }
+
+    private String post(String methodName, Object body, ApiTransport.CallType type) throws TelegramApiException {
+        try {
+            return transport.post(apiBaseUrl + methodName, objectMapper.writeValueAsString(body), type);
+        } catch (IOException e) {
+            throw new TelegramApiException("Falha ao executar o método " + methodName, e);
+        }
+    }
+
+    private String post(String methodName, JsonRequestWriter body, ApiTransport.CallType type)
+            throws TelegramApiException {
+        try {
+            return transport.post(apiBaseUrl + methodName, body.buffer(), body.length(), type);
+        } catch (IOException e) {
+            throw new TelegramApiException("Falha ao executar o método " + methodName, e);
+        }
     }
 
     /**
@@ -105,4 +406,72 @@ public class AlbumMakerBot extends TelegramLongPollingBot {
             logger.error("Erro ao enviar mensagem para o chat ID: {}", chatId, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Primeira etapa do desligamento: deixa de aceitar atualizações
+     */
+    public void stopIntake() {
+        accepting = false;
+    }
+
+    /**
+     * Dispara agora os temporizadores de álbuns, exclusões e edições de legenda
+     * (ver {@link MediaHandler#drain} e {@link CaptionHandler#drain})
+     */
+    public int flushPendingAlbums(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int fired = captionHandler.drain(timeout, unit);
+        return fired + mediaHandler.drain(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Última etapa do desligamento, depois de esvaziada a fila de saída: grava em disco as
+     * mídias que ainda não viraram álbuns e libera os recursos próprios deste bot
+     * @return quantidade de mídias gravadas
+     */
+    public int shutdown() {
+        int saved = 0;
+        Map<Long, List<MediaItem>> pendingByChat = sessionService.getPendingMediaByChat();
+        if (!pendingByChat.isEmpty()) {
+            try {
+                saved = pendingMediaStore.save(pendingByChat);
+                logger.info("Bot {}: {} mídias pendentes de {} chats gravadas para a próxima instância",
+                        tenant.getId(), saved, pendingByChat.size());
+            } catch (IOException e) {
+                logger.error("Bot {}: não foi possível gravar as mídias pendentes", tenant.getId(), e);
+            }
+        }
+
+        sessionService.shutdown();
+        checkpointService.shutdown();
+        if (recorder != null) {
+            recorder.close();
+        }
+        if (spillStore != null) {
+            spillStore.close();
+        }
+        albumPublisher.shutdown();
+        albumExporter.shutdown();
+        collageRenderer.shutdown();
+        return saved;
+    }
+
+    public TenantConfig getTenant() {
+        return tenant;
+    }
+
+    public UserSessionService getSessionService() {
+        return sessionService;
+    }
+
+    public MetricsService getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publica um álbum já montado em vários chats e canais
+     */
+    public AlbumPublisher getAlbumPublisher() {
+        return albumPublisher;
+    }
+}
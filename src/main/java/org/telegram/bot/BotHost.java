@@ -0,0 +1,180 @@
+package org.telegram.bot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+import org.telegram.config.TenantConfig;
+import org.telegram.service.ApiTransport;
+import org.telegram.service.ExecutorTaskScheduler;
+import org.telegram.service.FairScheduler;
+import org.telegram.service.MetricsService;
+import org.telegram.service.PooledHttpTransport;
+import org.telegram.service.TaskScheduler;
+import org.telegram.service.UpdateDispatcher;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Infraestrutura compartilhada pelos bots hospedados no mesmo processo.
+ *
+ * A fila de entrada, os temporizadores, o agendador de envios, o pool HTTP e o
+ * relatório de métricas existem uma única vez, qualquer que seja a quantidade de
+ * bots. Cada bot mantém separados as sessões, o checkpoint, o diretório de estado,
+ * o limite de chamadas e as métricas (prefixadas por {@code tenant.<id>.}).
+ */
+public class BotHost {
+    private static final Logger logger = LoggerFactory.getLogger(BotHost.class);
+
+    private final MetricsService metrics;
+    private final Clock clock;
+    private final TaskScheduler mediaScheduler;
+    private final TaskScheduler maintenanceScheduler;
+    private final ApiTransport transport;
+    private final UpdateDispatcher dispatcher;
+    private final FairScheduler outboundScheduler;
+    private final List<AlbumMakerBot> bots = new CopyOnWriteArrayList<>();
+
+    public BotHost() {
+        this(new MetricsService());
+    }
+
+    private BotHost(MetricsService metrics) {
+        this(metrics, Clock.systemDefaultZone(),
+                new ExecutorTaskScheduler("media-scheduler", BotConfig.getMediaSchedulerThreads()),
+                new ExecutorTaskScheduler("maintenance", 1),
+                BotConfig.isTransportPooled() ? new PooledHttpTransport(metrics) : null);
+    }
+
+    /**
+     * Cria a infraestrutura com dependências próprias (ex.: tempo virtual em simulações)
+     * @param mediaScheduler       temporizadores de criação automática de álbuns e exclusões
+     * @param maintenanceScheduler limpeza de sessões e gravação dos checkpoints
+     * @param transport            transporte das chamadas JSON à Bot API; null usa o cliente da biblioteca
+     */
+    public BotHost(MetricsService metrics, Clock clock, TaskScheduler mediaScheduler,
+                   TaskScheduler maintenanceScheduler, ApiTransport transport) {
+        this.metrics = metrics;
+        this.clock = clock;
+        this.mediaScheduler = mediaScheduler;
+        this.maintenanceScheduler = maintenanceScheduler;
+        this.transport = transport;
+        this.dispatcher = new UpdateDispatcher(metrics);
+        this.outboundScheduler = new FairScheduler(metrics);
+
+        // Ajustar o tamanho do pool quando a configuração mudar, sem perder tarefas agendadas
+        BotConfig.addChangeListener(() -> mediaScheduler.setThreads(BotConfig.getMediaSchedulerThreads()));
+
+        metrics.registerGauge("media.scheduler.queue", mediaScheduler::getPendingTasks);
+        metrics.registerGauge("host.tenants", bots::size);
+    }
+
+    /**
+     * Cria um bot sobre esta infraestrutura
+     */
+    public AlbumMakerBot createBot(TenantConfig tenant) {
+        return register(new AlbumMakerBot(this, tenant));
+    }
+
+    /**
+     * Inclui no desligamento coordenado um bot criado sobre esta infraestrutura por
+     * outros meios (ex.: bots simulados das ferramentas)
+     */
+    public <T extends AlbumMakerBot> T register(T bot) {
+        bots.add(bot);
+        return bot;
+    }
+
+    /**
+     * Desligamento coordenado para trocas de versão sem perda: para a entrada, esvazia a
+     * fila de entrada, dispara os temporizadores pendentes, aguarda os envios e exclusões
+     * dentro do prazo ({@code shutdown.drainTimeoutSeconds}) e grava em disco, por bot, as
+     * mídias que sobrarem. Só então os recursos compartilhados são liberados.
+     * @return true se tudo foi concluído dentro do prazo
+     */
+    public boolean shutdown() {
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.SECONDS.toNanos(BotConfig.getShutdownDrainTimeoutSeconds());
+        logger.info("Desligando {} bots", bots.size());
+
+        for (AlbumMakerBot bot : bots) {
+            bot.stopIntake();
+        }
+
+        boolean completed = dispatcher.shutdown(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+
+        int fired = 0;
+        for (AlbumMakerBot bot : bots) {
+            fired += bot.flushPendingAlbums(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+        }
+
+        if (!outboundScheduler.shutdown(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+            completed = false;
+            logger.warn("Prazo de desligamento esgotado; {} tarefas de saída abandonadas",
+                    outboundScheduler.getQueuedTasks());
+        }
+
+        int saved = 0;
+        for (AlbumMakerBot bot : bots) {
+            saved += bot.shutdown();
+        }
+
+        mediaScheduler.shutdown();
+        maintenanceScheduler.shutdown();
+        if (transport != null) {
+            transport.shutdown();
+        }
+
+        logger.info("Desligamento concluído em {} ms: {} temporizadores antecipados, {} mídias gravadas{}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), fired, saved,
+                completed ? "" : " (prazo esgotado)");
+        metrics.shutdown();
+        return completed;
+    }
+
+    private static long remainingMillis(long deadlineNanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Métricas de um bot: o bot único mantém os nomes sem prefixo
+     */
+    MetricsService metricsFor(TenantConfig tenant) {
+        return tenant.isDefault() ? metrics : metrics.forTenant(tenant.getId());
+    }
+
+    public List<AlbumMakerBot> getBots() {
+        return Collections.unmodifiableList(bots);
+    }
+
+    public MetricsService getMetrics() {
+        return metrics;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public TaskScheduler getMediaScheduler() {
+        return mediaScheduler;
+    }
+
+    public TaskScheduler getMaintenanceScheduler() {
+        return maintenanceScheduler;
+    }
+
+    public ApiTransport getTransport() {
+        return transport;
+    }
+
+    public UpdateDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public FairScheduler getOutboundScheduler() {
+        return outboundScheduler;
+    }
+}
@@ -5,37 +5,72 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
 
 /**
- * Classe de configuração para armazenar credenciais e configurações do bot
+ * Classe de configuração para armazenar credenciais e configurações do bot.
+ *
+ * As configurações são lidas de um arquivo externo (propriedade de sistema
+ * {@code albummaker.config}, padrão {@code config.properties} no diretório de trabalho)
+ * ou, na ausência dele, do classpath. O arquivo externo é observado e os parâmetros de
+ * ajuste são aplicados em tempo real; as credenciais e a lista de bots só mudam com reinício.
  */
 public class BotConfig {
     private static final Logger logger = LoggerFactory.getLogger(BotConfig.class);
-    private static final Properties properties = new Properties();
+    private static final String CONFIG_FILE_PROPERTY = "albummaker.config";
+    private static final String DEFAULT_CONFIG_FILE = "config.properties";
+    private static final Pattern TENANT_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private static final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private static volatile Properties properties = new Properties();
+    private static volatile Map<String, Integer> parsedValues = new ConcurrentHashMap<>();
+    private static volatile Map<String, List<String>> parsedLists = new ConcurrentHashMap<>();
+    private static Path configFile;
 
     private static String BOT_USERNAME;
     private static String BOT_TOKEN;
+    private static List<TenantConfig> TENANTS;
 
     static {
         loadConfig();
+        startWatcher();
     }
 
     private static void loadConfig() {
-        try (InputStream input = BotConfig.class.getClassLoader().getResourceAsStream("config.properties")) {
-            if (input == null) {
+        configFile = Paths.get(System.getProperty(CONFIG_FILE_PROPERTY, DEFAULT_CONFIG_FILE)).toAbsolutePath();
+
+        try {
+            Properties loaded = Files.isRegularFile(configFile) ? readExternal() : readClasspath();
+            if (loaded == null) {
                 logger.error("Não foi possível encontrar o arquivo config.properties");
                 System.exit(1);
             }
-
-            // Carregar as propriedades
-            properties.load(input);
+            properties = loaded;
 
             // Obter os valores de configuração
             BOT_USERNAME = properties.getProperty("bot.username");
             BOT_TOKEN = properties.getProperty("bot.token");
+            TENANTS = parseTenants();
 
-            if (BOT_USERNAME == null || BOT_TOKEN == null) {
+            if (TENANTS.isEmpty()) {
                 logger.error("Credenciais do bot não encontradas no arquivo de configuração");
                 System.exit(1);
             }
@@ -47,6 +82,149 @@ public class BotConfig {
         }
     }
 
+    /**
+     * Lê os bots declarados em {@code tenants}; sem essa lista, usa o bot único de
+     * {@code bot.username} e {@code bot.token}
+     */
+    private static List<TenantConfig> parseTenants() {
+        List<String> ids = parseList("tenants");
+        if (ids.isEmpty()) {
+            if (BOT_USERNAME == null || BOT_TOKEN == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(
+                    new TenantConfig(TenantConfig.DEFAULT_ID, BOT_USERNAME, BOT_TOKEN, getStateDir()));
+        }
+
+        List<TenantConfig> tenants = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String id : ids) {
+            // O identificador vira nome de diretório e prefixo de métricas
+            if (!TENANT_ID_PATTERN.matcher(id).matches() || !seen.add(id)) {
+                logger.error("Identificador de bot inválido ou repetido em tenants: '{}'", id);
+                System.exit(1);
+            }
+
+            String username = properties.getProperty("tenant." + id + ".username");
+            String token = properties.getProperty("tenant." + id + ".token");
+            if (username == null || token == null) {
+                logger.error("Credenciais do bot '{}' não encontradas no arquivo de configuração", id);
+                System.exit(1);
+            }
+            tenants.add(new TenantConfig(id, username.trim(), token.trim(), getStateDir().resolve(id)));
+        }
+        return Collections.unmodifiableList(tenants);
+    }
+
+    private static Properties readExternal() throws IOException {
+        Properties loaded = new Properties();
+        try (InputStream input = Files.newInputStream(configFile)) {
+            loaded.load(input);
+        }
+        return loaded;
+    }
+
+    private static Properties readClasspath() throws IOException {
+        configFile = null;
+        try (InputStream input = BotConfig.class.getClassLoader().getResourceAsStream(DEFAULT_CONFIG_FILE)) {
+            if (input == null) {
+                return null;
+            }
+            Properties loaded = new Properties();
+            loaded.load(input);
+            return loaded;
+        }
+    }
+
+    /**
+     * Observa o arquivo externo e recarrega os parâmetros quando ele muda
+     */
+    private static void startWatcher() {
+        if (configFile == null || configFile.getParent() == null) {
+            logger.info("Configuração lida do classpath; recarga em tempo real desativada");
+            return;
+        }
+
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            configFile.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.warn("Não foi possível observar o arquivo de configuração {}", configFile, e);
+            return;
+        }
+
+        Thread watcher = new Thread(() -> watchLoop(watchService), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("Observando alterações em {}", configFile);
+    }
+
+    private static void watchLoop(WatchService watchService) {
+        Path fileName = configFile.getFileName();
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (fileName.equals(event.context())) {
+                    changed = true;
+                }
+            }
+            key.reset();
+
+            if (changed) {
+                reload();
+            }
+        }
+    }
+
+    /**
+     * Relê o arquivo externo e notifica os interessados
+     */
+    public static void reload() {
+        if (configFile == null) {
+            return;
+        }
+
+        try {
+            Properties loaded = readExternal();
+            if (loaded.isEmpty()) {
+                // Editores costumam truncar o arquivo antes de gravar; aguardar o próximo evento
+                return;
+            }
+            properties = loaded;
+            parsedValues = new ConcurrentHashMap<>();
+            parsedLists = new ConcurrentHashMap<>();
+            logger.info("Configurações recarregadas de {}", configFile);
+        } catch (IOException e) {
+            logger.warn("Erro ao recarregar o arquivo de configuração; mantendo valores atuais", e);
+            return;
+        }
+
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                logger.error("Erro ao aplicar nova configuração", e);
+            }
+        }
+    }
+
+    /**
+     * Registra uma ação executada sempre que a configuração é recarregada
+     */
+    public static void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
     public static String getBotUsername() {
         return BOT_USERNAME;
     }
@@ -54,4 +232,332 @@ public class BotConfig {
     public static String getBotToken() {
         return BOT_TOKEN;
     }
-}
\ No newline at end of file
+
+    /**
+     * Bots hospedados neste processo (lidos apenas na inicialização)
+     */
+    public static List<TenantConfig> getTenants() {
+        return TENANTS;
+    }
+
+    /**
+     * Chamadas por segundo permitidas a um bot ({@code tenant.<id>.maxCallsPerSecond},
+     * com padrão em {@code tenant.maxCallsPerSecond}). O Telegram limita cada token a
+     * cerca de 30 mensagens por segundo.
+     */
+    public static int getTenantMaxCallsPerSecond(String tenantId) {
+        int defaultValue = getInt("tenant.maxCallsPerSecond", 30, 1);
+        return getInt("tenant." + tenantId + ".maxCallsPerSecond", defaultValue, 1);
+    }
+
+    /**
+     * Segundos de inatividade até o álbum ser criado automaticamente
+     */
+    public static int getAutoAlbumDelaySeconds() {
+        return getInt("album.delaySeconds", 3, 1);
+    }
+
+    /**
+     * Máximo de mídias por álbum (o Telegram aceita até 10)
+     */
+    public static int getMaxMediaPerAlbum() {
+        return Math.min(getInt("album.maxMedia", 10, 2), 10);
+    }
+
+    /**
+     * Enviar cada álbum completo assim que a décima mídia chega, sem esperar o fim do lote
+     */
+    public static boolean isEagerAlbumFlushEnabled() {
+        return getBoolean("album.eagerFlush", true);
+    }
+
+    /**
+     * Espera sem novas respostas antes de enviar a edição de legenda, reunindo as correções seguidas
+     */
+    public static int getCaptionCoalesceMillis() {
+        return getInt("caption.coalesceMillis", 1500, 0);
+    }
+
+    public static int getSessionTimeoutMinutes() {
+        return getInt("session.timeoutMinutes", 30, 1);
+    }
+
+    public static int getSessionCleanupIntervalMinutes() {
+        return getInt("session.cleanupIntervalMinutes", 10, 1);
+    }
+
+    public static int getMaxPendingMediaPerSession() {
+        return getInt("session.maxPendingMedia", 200, 2);
+    }
+
+    /**
+     * Mídias pendentes de cada sessão mantidas no heap; as seguintes vão para o arquivo de
+     * transbordo (vale para as sessões criadas depois da mudança)
+     */
+    public static int getSessionHeapMediaLimit() {
+        return getInt("session.heapMediaLimit", 50, 1);
+    }
+
+    /**
+     * Transborda para um arquivo mapeado em memória as mídias pendentes além de
+     * session.heapMediaLimit (lido apenas na inicialização)
+     */
+    public static boolean isMediaSpillEnabled() {
+        return getBoolean("spill.enabled", true);
+    }
+
+    /**
+     * Tamanho máximo do arquivo de transbordo; cheio, as novas mídias ficam no heap
+     */
+    public static int getMediaSpillMaxMegabytes() {
+        return getInt("spill.maxMegabytes", 256, 1);
+    }
+
+    public static int getMediaSchedulerThreads() {
+        return getInt("media.schedulerThreads", 1, 1);
+    }
+
+    /**
+     * Quantidade de faixas da fila de entrada (lida apenas na inicialização,
+     * pois a distribuição dos chats entre as faixas depende dela). Zero processa as
+     * atualizações na própria thread de recebimento, para simulações determinísticas.
+     */
+    public static int getIngressLanes() {
+        return getInt("ingress.lanes", 4, 0);
+    }
+
+    /**
+     * Atualizações que cada bot pode manter em uma faixa; um bot sobrecarregado não ocupa
+     * o espaço dos outros
+     */
+    public static int getIngressLaneCapacity() {
+        return getInt("ingress.laneCapacity", 500, 10);
+    }
+
+    /**
+     * Diretório onde o bot guarda estado local entre execuções
+     */
+    public static Path getStateDir() {
+        return Paths.get(properties.getProperty("state.dir", "data"));
+    }
+
+    /**
+     * Quantidade de update_ids recentes lembrados para descartar repetições
+     */
+    public static int getCheckpointWindowSize() {
+        return getInt("checkpoint.windowSize", 4096, 64);
+    }
+
+    public static long getCheckpointFlushIntervalMillis() {
+        return getInt("checkpoint.flushIntervalMillis", 1000, 50);
+    }
+
+    /**
+     * Chats e canais (IDs ou @usernames) que recebem os álbuns publicados com /publish
+     */
+    public static List<String> getPublishTargets() {
+        return getList("publish.targets");
+    }
+
+    /**
+     * IDs dos usuários (remetentes, não chats) autorizados a usar /publish
+     */
+    public static List<String> getPublishAdmins() {
+        return getList("publish.admins");
+    }
+
+    public static int getPublishConcurrency() {
+        return getInt("publish.concurrency", 8, 1);
+    }
+
+    public static int getPublishMaxRetryAfterSeconds() {
+        return getInt("publish.maxRetryAfterSeconds", 30, 0);
+    }
+
+    /**
+     * Endereço base para baixar arquivos; o token e o caminho do arquivo são concatenados a ele
+     */
+    public static String getExportFileBaseUrl() {
+        return properties.getProperty("export.fileBaseUrl", "https://api.telegram.org/file/bot");
+    }
+
+    public static int getExportConcurrency() {
+        return getInt("export.concurrency", 4, 1);
+    }
+
+    public static int getExportBufferKb() {
+        return getInt("export.bufferKb", 64, 4);
+    }
+
+    /**
+     * Tamanho máximo do ZIP entregue como documento (limite de upload da Bot API)
+     */
+    public static int getExportMaxUploadMb() {
+        return getInt("export.maxUploadMb", 50, 1);
+    }
+
+    /**
+     * Threads do trabalho de saída (lido apenas na inicialização). Zero executa as
+     * tarefas na thread de quem as enviou, para simulações determinísticas.
+     */
+    public static int getOutboundThreads() {
+        return getInt("outbound.threads", 4, 0);
+    }
+
+    /**
+     * Cota de tarefas de saída pendentes por chat
+     */
+    public static int getOutboundMaxQueuedPerChat() {
+        return getInt("outbound.maxQueuedPerChat", 64, 1);
+    }
+
+    /**
+     * Chats com peso maior no escalonamento justo
+     */
+    public static List<String> getOutboundPremiumChats() {
+        return getList("outbound.premiumChats");
+    }
+
+    public static int getOutboundPremiumWeight() {
+        return getInt("outbound.premiumWeight", 4, 1);
+    }
+
+    public static int getCollageParallelism() {
+        return getInt("collage.parallelism", Runtime.getRuntime().availableProcessors(), 1);
+    }
+
+    /**
+     * Memória máxima ocupada simultaneamente por fotos decodificadas ao gerar prévias
+     */
+    public static int getCollageMemoryBudgetMb() {
+        return getInt("collage.memoryBudgetMb", 64, 8);
+    }
+
+    public static int getCollageTileSize() {
+        return getInt("collage.tileSize", 320, 32);
+    }
+
+    public static int getCollageMaxItems() {
+        return getInt("collage.maxItems", 100, 1);
+    }
+
+    /**
+     * Usa o transporte HTTP próprio, com pool de conexões persistentes, em vez do cliente
+     * padrão da biblioteca (lido apenas na inicialização)
+     */
+    public static boolean isTransportPooled() {
+        return getBoolean("transport.pooled", true);
+    }
+
+    /**
+     * Conexões simultâneas com a Bot API
+     */
+    public static int getTransportMaxConnections() {
+        return getInt("transport.maxConnections", 32, 1);
+    }
+
+    /**
+     * Tempo máximo que uma conexão ociosa fica aberta para reuso
+     */
+    public static int getTransportKeepAliveSeconds() {
+        return getInt("transport.keepAliveSeconds", 30, 1);
+    }
+
+    public static int getTransportConnectTimeoutMillis() {
+        return getInt("transport.connectTimeoutMillis", 5000, 100);
+    }
+
+    /**
+     * Espera máxima por uma conexão livre do pool
+     */
+    public static int getTransportPoolWaitMillis() {
+        return getInt("transport.poolWaitMillis", 5000, 0);
+    }
+
+    /**
+     * Tempo limite das chamadas de texto (mensagens, edições, exclusões)
+     */
+    public static int getTransportTextTimeoutMillis() {
+        return getInt("transport.textTimeoutMillis", 15000, 100);
+    }
+
+    /**
+     * Tempo limite das chamadas de mídia (sendMediaGroup)
+     */
+    public static int getTransportMediaTimeoutMillis() {
+        return getInt("transport.mediaTimeoutMillis", 60000, 100);
+    }
+
+    /**
+     * Prazo total do desligamento para esvaziar as filas e concluir envios e exclusões;
+     * o que sobrar é gravado em disco para a próxima instância
+     */
+    public static int getShutdownDrainTimeoutSeconds() {
+        return getInt("shutdown.drainTimeoutSeconds", 20, 1);
+    }
+
+    /**
+     * Grava as atualizações recebidas, anonimizadas, em state.dir/recordings
+     * (lido apenas na inicialização)
+     */
+    public static boolean isRecorderEnabled() {
+        return getBoolean("recorder.enabled", false);
+    }
+
+    /**
+     * Tamanho de cada um dos dois buffers em memória da gravação
+     */
+    public static int getRecorderBufferKb() {
+        return getInt("recorder.bufferKb", 1024, 16);
+    }
+
+    /**
+     * Tamanho máximo de cada arquivo de gravação; ao atingi-lo a gravação para
+     */
+    public static int getRecorderMaxMegabytes() {
+        return getInt("recorder.maxMegabytes", 256, 1);
+    }
+
+    private static boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    private static List<String> getList(String key) {
+        return parsedLists.computeIfAbsent(key, BotConfig::parseList);
+    }
+
+    private static List<String> parseList(String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    private static int getInt(String key, int defaultValue, int minValue) {
+        // Valores convertidos uma única vez por recarga, pois são lidos no caminho quente
+        return parsedValues.computeIfAbsent(key, k -> parseInt(k, defaultValue, minValue));
+    }
+
+    private static int parseInt(String key, int defaultValue, int minValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Math.max(Integer.parseInt(value.trim()), minValue);
+        } catch (NumberFormatException e) {
+            logger.warn("Valor inválido para {}: '{}'. Usando {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
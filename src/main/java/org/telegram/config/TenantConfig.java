@@ -0,0 +1,59 @@
+package org.telegram.config;
+
+import java.nio.file.Path;
+
+/**
+ * Identidade de um bot hospedado no processo (inquilino): credenciais e diretório
+ * de estado próprios. Os parâmetros de ajuste continuam globais, exceto o limite de
+ * chamadas, que pode ser definido por inquilino.
+ */
+public class TenantConfig {
+    /**
+     * Identificador usado quando a configuração traz um único bot ({@code bot.username})
+     */
+    public static final String DEFAULT_ID = "default";
+
+    private final String id;
+    private final String username;
+    private final String token;
+    private final Path stateDir;
+
+    public TenantConfig(String id, String username, String token, Path stateDir) {
+        this.id = id;
+        this.username = username;
+        this.token = token;
+        this.stateDir = stateDir;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Diretório do checkpoint de atualizações e dos arquivos temporários de exportação
+     */
+    public Path getStateDir() {
+        return stateDir;
+    }
+
+    /**
+     * Bot configurado no formato de um único bot, cujas métricas e estado mantêm os
+     * nomes e caminhos de antes da hospedagem de vários bots
+     */
+    public boolean isDefault() {
+        return DEFAULT_ID.equals(id);
+    }
+
+    @Override
+    public String toString() {
+        return id + " (@" + username + ")";
+    }
+}
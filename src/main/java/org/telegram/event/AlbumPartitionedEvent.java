@@ -0,0 +1,30 @@
+package org.telegram.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR: as mídias pendentes foram divididas em álbuns
+ */
+@Name("org.telegram.albummaker.AlbumPartitioned")
+@Label("Album Partitioned")
+@Category({"AlbumMaker", "Media"})
+@Enabled(false)
+@StackTrace(false)
+public class AlbumPartitionedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Items")
+    public int itemCount;
+
+    @Label("Albums")
+    public int albumCount;
+
+    @Label("Max Items Per Album")
+    public int maxPerAlbum;
+}
@@ -0,0 +1,30 @@
+package org.telegram.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR: edição da legenda de um álbum
+ */
+@Name("org.telegram.albummaker.CaptionEdit")
+@Label("Caption Edit")
+@Category({"AlbumMaker", "Telegram API"})
+@Enabled(false)
+@StackTrace(false)
+public class CaptionEditEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Caption Length")
+    public int captionLength;
+
+    @Label("Coalesced Replies")
+    public int coalescedReplies;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,36 @@
+package org.telegram.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento JFR: o temporizador de criação automática disparou. A duração cobre
+ * a criação dos álbuns até o enfileiramento dos envios.
+ */
+@Name("org.telegram.albummaker.DebounceFired")
+@Label("Album Debounce Fired")
+@Category({"AlbumMaker", "Media"})
+@Enabled(false)
+@StackTrace(false)
+public class DebounceFiredEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Pending Items")
+    public int pendingCount;
+
+    @Label("Configured Delay")
+    @Timespan(Timespan.MILLISECONDS)
+    public long delayMillis;
+
+    @Label("Lateness")
+    @Description("Atraso do disparo em relação ao horário agendado")
+    @Timespan(Timespan.MILLISECONDS)
+    public long latenessMillis;
+}
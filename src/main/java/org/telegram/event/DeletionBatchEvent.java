@@ -0,0 +1,27 @@
+package org.telegram.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR: exclusão das mensagens originais após a criação dos álbuns
+ */
+@Name("org.telegram.albummaker.DeletionBatch")
+@Label("Original Messages Deletion")
+@Category({"AlbumMaker", "Telegram API"})
+@Enabled(false)
+@StackTrace(false)
+public class DeletionBatchEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Requested")
+    public int requestedCount;
+
+    @Label("Deleted")
+    public int deletedCount;
+}
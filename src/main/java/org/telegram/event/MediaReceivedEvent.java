@@ -0,0 +1,33 @@
+package org.telegram.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR: uma mídia chegou e foi aceita ou recusada pela sessão
+ */
+@Name("org.telegram.albummaker.MediaReceived")
+@Label("Media Received")
+@Category({"AlbumMaker", "Media"})
+@Enabled(false)
+@StackTrace(false)
+public class MediaReceivedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Media Type")
+    public String mediaType;
+
+    @Label("Pending Items")
+    @Description("Mídias pendentes na sessão após esta")
+    public int pendingCount;
+
+    @Label("Accepted")
+    @Description("false se o limite de mídias pendentes recusou a mídia")
+    public boolean accepted;
+}
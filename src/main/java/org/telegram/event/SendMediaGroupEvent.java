@@ -0,0 +1,33 @@
+package org.telegram.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR: chamada sendMediaGroup de um álbum, do início ao fim
+ */
+@Name("org.telegram.albummaker.SendMediaGroup")
+@Label("Send Media Group")
+@Category({"AlbumMaker", "Telegram API"})
+@Enabled(false)
+@StackTrace(false)
+public class SendMediaGroupEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Album Number")
+    public int albumNumber;
+
+    @Label("Albums")
+    public int albumCount;
+
+    @Label("Items")
+    public int itemCount;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,31 @@
+package org.telegram.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento JFR: uma sessão expirada foi removida pela limpeza periódica
+ */
+@Name("org.telegram.albummaker.SessionEvicted")
+@Label("Session Evicted")
+@Category({"AlbumMaker", "Session"})
+@Enabled(false)
+@StackTrace(false)
+public class SessionEvictedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Idle Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long idleMillis;
+
+    @Label("Pending Items")
+    @Description("Mídias pendentes descartadas junto com a sessão")
+    public int pendingCount;
+}
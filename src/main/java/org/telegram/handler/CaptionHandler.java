@@ -3,25 +3,85 @@ package org.telegram.handler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.bot.AlbumMakerBot;
+import org.telegram.config.BotConfig;
+import org.telegram.event.CaptionEditEvent;
 import org.telegram.model.Album;
 import org.telegram.model.UserSession;
+import org.telegram.service.FairScheduler;
+import org.telegram.service.MetricsService;
+import org.telegram.service.TaskScheduler;
 import org.telegram.service.UserSessionService;
-import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Manipulador de legendas para álbuns
+ * Manipulador de legendas para álbuns.
+ *
+ * Usuários corrigindo a legenda costumam mandar várias respostas seguidas; cada uma só
+ * reagenda a edição do álbum, que é enviada uma única vez, com o texto mais recente,
+ * depois de {@code caption.coalesceMillis} sem novas respostas.
  */
 public class CaptionHandler {
     private static final Logger logger = LoggerFactory.getLogger(CaptionHandler.class);
+    private static final long RETRY_DELAY_SECONDS = 1;
 
     private final AlbumMakerBot bot;
     private final UserSessionService sessionService;
+    private final MetricsService metrics;
+    private final FairScheduler.Tenant outboundScheduler;
+    private final TaskScheduler scheduler;
+    // Edição agendada por álbum; quem a marcar primeiro (disparo ou cancelamento) decide seu destino
+    private final Map<String, PendingEdit> pendingEdits = new ConcurrentHashMap<>();
+    // Edições desde o agendamento até o disparo terminar ou o cancelamento vencer
+    private final AtomicInteger inFlightEdits = new AtomicInteger();
+
+    private final class PendingEdit {
+        final long chatId;
+        final Album album;
+        final int replies; // Respostas reunidas nesta edição
+        // Quem marcar primeiro decide: o disparo envia a edição, o cancelamento a impede
+        final AtomicBoolean claimed = new AtomicBoolean();
+        volatile ScheduledFuture<?> future;
+
+        PendingEdit(long chatId, Album album, int replies) {
+            this.chatId = chatId;
+            this.album = album;
+            this.replies = replies;
+        }
+
+        /**
+         * Impede o disparo, se ele ainda não começou
+         * @return false se o disparo já está rodando (e envia a edição sozinho)
+         */
+        boolean cancel() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            inFlightEdits.decrementAndGet();
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            return true;
+        }
+    }
 
-    public CaptionHandler(AlbumMakerBot bot, UserSessionService sessionService) {
+    public CaptionHandler(AlbumMakerBot bot, UserSessionService sessionService, MetricsService metrics,
+                          FairScheduler.Tenant outboundScheduler, TaskScheduler scheduler) {
         this.bot = bot;
         this.sessionService = sessionService;
+        this.metrics = metrics;
+        this.outboundScheduler = outboundScheduler;
+        this.scheduler = scheduler;
+
+        metrics.registerGauge("caption.pending", pendingEdits::size);
     }
 
     /**
@@ -55,32 +115,131 @@ public class CaptionHandler {
             return;
         }
 
-        // Atualizar a legenda do álbum
+        // Atualizar a legenda do álbum; a edição no Telegram sai quando as respostas pararem
         album.setCaption(caption);
+        scheduleCaptionEdit(chatId, album);
+    }
 
-        // Tentar atualizar a legenda na mensagem do Telegram
-        try {
-            updateAlbumCaption(chatId, album);
-            bot.sendMessage(chatId, "✅ Legenda adicionada com sucesso!");
-        } catch (TelegramApiException e) {
-            logger.error("Erro ao atualizar legenda do álbum para o chat ID: {}", chatId, e);
-            bot.sendMessage(chatId, "❌ Ocorreu um erro ao adicionar a legenda. Por favor, tente novamente.");
+    /**
+     * Agenda (ou reagenda) a edição da legenda do álbum
+     */
+    private void scheduleCaptionEdit(long chatId, Album album) {
+        long delayMillis = BotConfig.getCaptionCoalesceMillis();
+        pendingEdits.compute(album.getAlbumId(), (albumId, previous) -> {
+            int replies = 1;
+            // Se o cancelamento falhar a edição anterior já está saindo, e esta vai depois
+            if (previous != null && previous.cancel()) {
+                metrics.increment("caption.edits.coalesced");
+                replies += previous.replies;
+            }
+            PendingEdit edit = new PendingEdit(chatId, album, replies);
+            // Contar antes de agendar, para que a drenagem aguarde um disparo que acabou de começar
+            inFlightEdits.incrementAndGet();
+            edit.future = scheduler.schedule(() -> {
+                if (!edit.claimed.compareAndSet(false, true)) {
+                    return; // Cancelada antes de começar
+                }
+                try {
+                    // A entrada pode já ser de uma resposta mais nova, que sai depois desta
+                    pendingEdits.remove(albumId, edit);
+                    submitCaptionEdit(edit);
+                } finally {
+                    inFlightEdits.decrementAndGet();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+            return edit;
+        });
+    }
+
+    /**
+     * Desligamento: envia agora as edições que ainda aguardavam o fim das respostas e
+     * aguarda as que já estavam sendo disparadas
+     * @param timeout espera máxima pelos disparos que já tinham começado
+     * @return quantidade de edições antecipadas
+     */
+    public int drain(long timeout, TimeUnit unit) {
+        int fired = 0;
+        for (Map.Entry<String, PendingEdit> entry : pendingEdits.entrySet()) {
+            PendingEdit edit = entry.getValue();
+            // Se o cancelamento falhar o disparo já começou e enfileira a edição sozinho
+            if (edit.cancel()) {
+                pendingEdits.remove(entry.getKey(), edit);
+                fired++;
+                submitCaptionEdit(edit);
+            }
+        }
+
+        // Disparos em andamento ainda vão enfileirar a edição: aguardá-los antes que a fila de
+        // saída pare de aceitar tarefas
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlightEdits.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * Enfileira a edição na fila justa do chat, depois dos envios já pendentes. Com a cota
+     * do chat cheia, tenta de novo após um atraso em vez de descartar a edição; o texto
+     * enviado é o do álbum no momento em que ela roda.
+     */
+    private void submitCaptionEdit(PendingEdit edit) {
+        long chatId = edit.chatId;
+        boolean queued = outboundScheduler.submit(chatId, 1, () -> {
+            // Tentar atualizar a legenda na mensagem do Telegram
+            try {
+                updateAlbumCaption(chatId, edit.album, edit.replies);
+                bot.sendMessage(chatId, "✅ Legenda adicionada com sucesso!");
+            } catch (TelegramApiException e) {
+                logger.error("Erro ao atualizar legenda do álbum para o chat ID: {}", chatId, e);
+                bot.sendMessage(chatId, "❌ Ocorreu um erro ao adicionar a legenda. Por favor, tente novamente.");
+            }
+        });
+        if (queued) {
+            return;
         }
+        metrics.increment("caption.edits.retried");
+        logger.info("Fila de saída cheia para o chat ID: {}. Edição de legenda adiada", chatId);
+
+        // Contada como edição em andamento para que a drenagem espere a nova tentativa
+        inFlightEdits.incrementAndGet();
+        scheduler.schedule(() -> {
+            try {
+                submitCaptionEdit(edit);
+            } finally {
+                inFlightEdits.decrementAndGet();
+            }
+        }, RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
     }
 
     /**
      * Atualiza a legenda de um álbum no Telegram
+     * @param replies respostas do usuário reunidas nesta edição
      */
-    private void updateAlbumCaption(long chatId, Album album) throws TelegramApiException {
+    private void updateAlbumCaption(long chatId, Album album, int replies) throws TelegramApiException {
         // Infelizmente, o Telegram não permite editar a legenda de um grupo de mídia inteiro
         // Só podemos editar a legenda do primeiro item do álbum
+        String caption = album.getCaption();
 
-        EditMessageCaption editCaption = new EditMessageCaption();
-        editCaption.setChatId(String.valueOf(chatId));
-        editCaption.setMessageId(album.getSentMessageId());
-        editCaption.setCaption(album.getCaption());
-
-        bot.execute(editCaption);
+        CaptionEditEvent event = new CaptionEditEvent();
+        event.begin();
+        try {
+            bot.editMessageCaption(chatId, album.getSentMessageId(), caption);
+            metrics.increment("caption.edits");
+            event.success = true;
+        } finally {
+            if (event.shouldCommit()) {
+                event.chatId = chatId;
+                event.captionLength = caption != null ? caption.length() : 0;
+                event.coalescedReplies = replies;
+                event.commit();
+            }
+        }
         logger.info("Legenda atualizada com sucesso para o álbum {} do chat ID: {}",
                 album.getAlbumId(), chatId);
     }
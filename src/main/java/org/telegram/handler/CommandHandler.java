@@ -3,17 +3,49 @@ package org.telegram.handler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.bot.AlbumMakerBot;
+import org.telegram.config.BotConfig;
+import org.telegram.model.Album;
+import org.telegram.model.Command;
+import org.telegram.model.MediaItem;
+import org.telegram.model.PublishReport;
+import org.telegram.model.UserSession;
+import org.telegram.service.AlbumExporter;
+import org.telegram.service.AlbumPublisher;
+import org.telegram.service.CollageRenderer;
+import org.telegram.service.UserSessionService;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Manipulador de comandos do bot
  */
 public class CommandHandler {
     private static final Logger logger = LoggerFactory.getLogger(CommandHandler.class);
+    private static final int MAX_FAILURES_IN_REPORT = 10;
+
     private final AlbumMakerBot bot;
+    private final UserSessionService sessionService;
+    private final AlbumPublisher albumPublisher;
+    private final AlbumExporter albumExporter;
+    private final CollageRenderer collageRenderer;
 
-    public CommandHandler(AlbumMakerBot bot) {
+    public CommandHandler(AlbumMakerBot bot, UserSessionService sessionService, AlbumPublisher albumPublisher,
+                          AlbumExporter albumExporter, CollageRenderer collageRenderer) {
         this.bot = bot;
+        this.sessionService = sessionService;
+        this.albumPublisher = albumPublisher;
+        this.albumExporter = albumExporter;
+        this.collageRenderer = collageRenderer;
     }
 
     /**
@@ -22,32 +54,48 @@ public class CommandHandler {
     public void handleCommand(Message message) {
         String text = message.getText();
         long chatId = message.getChatId();
-        String username = message.getFrom().getUserName();
 
-        logger.info("Comando recebido: {} do usuário: {}", text, username);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Comando recebido: {} do usuário: {}",
+                    text, message.getFrom() != null ? message.getFrom().getUserName() : null);
+        }
 
-        // Extrair o comando (primeira palavra após /)
-        String[] parts = text.split("\\s+");
-        String command = parts[0].toLowerCase();
+        // Identificar o comando (primeira palavra após /) sem alocar strings; comandos para
+        // outros bots do grupo são ignorados
+        Command command = Command.parse(text, bot.getBotUsername());
+        if (command == null) {
+            return;
+        }
 
         switch (command) {
-            case "/start":
+            case START:
                 handleStart(chatId);
                 break;
 
-            case "/help":
+            case HELP:
                 handleHelp(chatId);
                 break;
 
-            case "/cancel":
+            case CANCEL:
                 handleCancel(chatId);
                 break;
 
-            case "/about":
-            case "/sobre":
+            case ABOUT:
                 handleAbout(chatId);
                 break;
 
+            case PUBLISH:
+                handlePublish(chatId, message.getFrom());
+                break;
+
+            case EXPORT:
+                handleExport(chatId);
+                break;
+
+            case COLLAGE:
+                handleCollage(chatId);
+                break;
+
             default:
                 bot.sendMessage(chatId, "Comando não reconhecido. Use /help para ver os comandos disponíveis.");
                 break;
@@ -71,6 +119,8 @@ public class CommandHandler {
                 "/start - Iniciar o bot e ver as boas-vindas\n" +
                 "/help - Mostrar esta mensagem de ajuda\n" +
                 "/cancel - Cancelar a criação do álbum atual\n" +
+                "/export - Baixar o último álbum em um arquivo ZIP\n" +
+                "/collage - Gerar uma prévia em mosaico das fotos do último envio\n" +
                 "/about - Informações sobre o bot\n\n" +
                 "*Como usar:*\n" +
                 "1. Envie várias fotos e/ou vídeos\n" +
@@ -96,4 +146,131 @@ public class CommandHandler {
 
         bot.sendMessage(chatId, aboutMessage);
     }
-}
\ No newline at end of file
+
+    private void handleExport(long chatId) {
+        UserSession session = sessionService.getSession(chatId);
+        Album album = session != null ? session.getLastAlbum() : null;
+        if (album == null) {
+            bot.sendMessage(chatId, "❌ Não encontrei nenhum álbum recente para exportar.");
+            return;
+        }
+
+        bot.sendMessage(chatId, "📦 Preparando o arquivo ZIP do álbum...");
+        albumExporter.exportAsync(album).whenComplete((zipFile, error) -> {
+            if (error != null) {
+                logger.error("Erro ao exportar álbum {} do chat ID: {}", album.getAlbumId(), chatId, error);
+                bot.sendMessage(chatId, "❌ Ocorreu um erro ao exportar o álbum. Por favor, tente novamente.");
+                return;
+            }
+            sendExportedAlbum(chatId, album, zipFile);
+        });
+    }
+
+    private void sendExportedAlbum(long chatId, Album album, Path zipFile) {
+        try {
+            if (Files.size(zipFile) > BotConfig.getExportMaxUploadMb() * 1024L * 1024L) {
+                bot.sendMessage(chatId, "❌ O arquivo ZIP ficou grande demais para ser enviado pelo Telegram.");
+                return;
+            }
+
+            SendDocument document = new SendDocument();
+            document.setChatId(String.valueOf(chatId));
+            document.setDocument(new InputFile(zipFile.toFile(), "album_" + album.getAlbumId() + ".zip"));
+            bot.execute(document);
+        } catch (IOException | TelegramApiException e) {
+            logger.error("Erro ao enviar o ZIP do álbum {} para o chat ID: {}", album.getAlbumId(), chatId, e);
+            bot.sendMessage(chatId, "❌ Ocorreu um erro ao enviar o arquivo ZIP. Por favor, tente novamente.");
+        } finally {
+            try {
+                Files.deleteIfExists(zipFile);
+            } catch (IOException e) {
+                logger.warn("Não foi possível apagar o arquivo {}", zipFile, e);
+            }
+        }
+    }
+
+    private void handleCollage(long chatId) {
+        // Usar o último lote inteiro, que pode ter mais de 10 fotos, ou o último álbum
+        UserSession session = sessionService.getSession(chatId);
+        List<MediaItem> mediaItems = session != null ? session.getLastBatch() : null;
+        if ((mediaItems == null || mediaItems.isEmpty()) && session != null && session.getLastAlbum() != null) {
+            mediaItems = session.getLastAlbum().getMediaItems();
+        }
+        if (mediaItems == null || mediaItems.isEmpty()) {
+            bot.sendMessage(chatId, "❌ Não encontrei nenhum envio recente para gerar a prévia.");
+            return;
+        }
+
+        collageRenderer.renderAsync(mediaItems).whenComplete((image, error) -> {
+            if (error != null) {
+                logger.error("Erro ao gerar prévia para o chat ID: {}", chatId, error);
+                bot.sendMessage(chatId, "❌ Não foi possível gerar a prévia. Ela só inclui fotos.");
+                return;
+            }
+
+            SendPhoto photo = new SendPhoto();
+            photo.setChatId(String.valueOf(chatId));
+            photo.setPhoto(new InputFile(new ByteArrayInputStream(image), "collage.jpg"));
+            try {
+                bot.execute(photo);
+            } catch (TelegramApiException e) {
+                logger.error("Erro ao enviar prévia para o chat ID: {}", chatId, e);
+                bot.sendMessage(chatId, "❌ Ocorreu um erro ao enviar a prévia. Por favor, tente novamente.");
+            }
+        });
+    }
+
+    /**
+     * Publica o último álbum do chat. A permissão é de quem enviou o comando, não do chat:
+     * num grupo, só os administradores listados podem publicar.
+     */
+    private void handlePublish(long chatId, User sender) {
+        if (sender == null || !BotConfig.getPublishAdmins().contains(String.valueOf(sender.getId()))) {
+            bot.sendMessage(chatId, "❌ Você não tem permissão para publicar álbuns.");
+            return;
+        }
+
+        List<String> targets = BotConfig.getPublishTargets();
+        if (targets.isEmpty()) {
+            bot.sendMessage(chatId, "❌ Nenhum destino de publicação configurado.");
+            return;
+        }
+
+        UserSession session = sessionService.getSession(chatId);
+        Album album = session != null ? session.getLastAlbum() : null;
+        if (album == null) {
+            bot.sendMessage(chatId, "❌ Não encontrei nenhum álbum recente para publicar.");
+            return;
+        }
+
+        bot.sendMessage(chatId, String.format("📣 Publicando o álbum em %d destinos...", targets.size()));
+        albumPublisher.publishAsync(album, targets).whenComplete((report, error) -> {
+            if (error != null) {
+                logger.error("Erro ao publicar álbum {} do chat ID: {}", album.getAlbumId(), chatId, error);
+                bot.sendMessage(chatId, "❌ Ocorreu um erro ao publicar o álbum. Por favor, tente novamente.");
+                return;
+            }
+            bot.sendMessage(chatId, formatPublishReport(report));
+        });
+    }
+
+    private String formatPublishReport(PublishReport report) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("✅ Álbum publicado em %d de %d destinos (%.1f s).",
+                report.getSuccessCount(), report.getResults().size(), report.getElapsedMillis() / 1000.0));
+
+        int listed = 0;
+        for (PublishReport.TargetResult result : report.getResults()) {
+            if (result.isSuccess()) {
+                continue;
+            }
+            if (listed == MAX_FAILURES_IN_REPORT) {
+                text.append("\n• ...");
+                break;
+            }
+            text.append("\n• ").append(result.getTarget()).append(": ").append(result.getError());
+            listed++;
+        }
+        return text.toString();
+    }
+}
@@ -3,68 +3,144 @@ package org.telegram.handler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.bot.AlbumMakerBot;
+import org.telegram.config.BotConfig;
+import org.telegram.event.AlbumPartitionedEvent;
+import org.telegram.event.DebounceFiredEvent;
+import org.telegram.event.DeletionBatchEvent;
+import org.telegram.event.MediaReceivedEvent;
+import org.telegram.event.SendMediaGroupEvent;
 import org.telegram.model.Album;
 import org.telegram.model.MediaItem;
+import org.telegram.model.UpdateKind;
 import org.telegram.model.UserSession;
+import org.telegram.service.FairScheduler;
+import org.telegram.service.MetricsService;
+import org.telegram.service.TaskScheduler;
 import org.telegram.service.UserSessionService;
-import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.PhotoSize;
-import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
-import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
-import org.telegram.telegrambots.meta.api.objects.media.InputMediaVideo;
-import org.telegram.telegrambots.meta.api.objects.media.InputMediaDocument;
-import org.telegram.telegrambots.meta.api.objects.media.InputMediaAnimation;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.time.Clock;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manipulador de mídia com suporte a múltiplos álbuns
  */
 public class MediaHandler {
     private static final Logger logger = LoggerFactory.getLogger(MediaHandler.class);
-    private static final int AUTO_ALBUM_DELAY_SECONDS = 3;
-    private static final int MAX_MEDIA_PER_ALBUM = 10;
+    // Exclusões por tarefa de saída: o tamanho máximo de um álbum, para que o escalonador e o
+    // limite de chamadas espacem as exclusões de um lote grande em vez de uma rajada só
+    private static final int DELETION_CHUNK = 10;
 
     private final AlbumMakerBot bot;
     private final UserSessionService sessionService;
-    private final ScheduledExecutorService scheduler;
-    private final Map<Long, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
+    private final MetricsService metrics;
+    private final FairScheduler.Tenant outboundScheduler;
+    private final Clock clock;
+    private final TaskScheduler scheduler;
+    // Temporizador atual de cada chat; cada um só retira do mapa a própria entrada
+    private final Map<Long, AlbumTimer> scheduledTasks = new ConcurrentHashMap<>();
+    // Exclusões aguardando o atraso de exibição; quem retirar a entrada do conjunto a executa
+    private final Set<Runnable> pendingDeletions = ConcurrentHashMap.newKeySet();
+    // Temporizadores de álbum desde o agendamento até terminarem ou serem cancelados, mais
+    // as exclusões agendadas em execução
+    private final AtomicInteger inFlightTimers = new AtomicInteger();
+    private volatile boolean draining;
+
+    private final class AlbumTimer {
+        final long dueMillis;
+        // Quem marcar primeiro decide: o disparo roda a criação, o cancelamento a impede
+        final AtomicBoolean claimed = new AtomicBoolean();
+        volatile ScheduledFuture<?> future;
+
+        AlbumTimer(long dueMillis) {
+            this.dueMillis = dueMillis;
+        }
+
+        /**
+         * Impede o disparo, se ele ainda não começou. {@code ScheduledFuture.cancel} não
+         * serve para decidir: também retorna true com a tarefa já rodando.
+         * @return false se o temporizador já está rodando (e cria os álbuns sozinho)
+         */
+        boolean cancel() {
+            if (!claimed.compareAndSet(false, true)) {
+                return false;
+            }
+            inFlightTimers.decrementAndGet();
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            return true;
+        }
+    }
 
-    public MediaHandler(AlbumMakerBot bot, UserSessionService sessionService) {
+    public MediaHandler(AlbumMakerBot bot, UserSessionService sessionService, MetricsService metrics,
+                        FairScheduler.Tenant outboundScheduler, Clock clock, TaskScheduler scheduler) {
         this.bot = bot;
         this.sessionService = sessionService;
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this.metrics = metrics;
+        this.outboundScheduler = outboundScheduler;
+        this.clock = clock;
+        this.scheduler = scheduler;
+
+        metrics.registerGauge("media.scheduled.albums", scheduledTasks::size);
     }
 
     /**
      * Processa mensagens com mídia
+     * @param kind classificação já calculada na entrada, que indica o tipo de mídia
      */
-    public void handleMedia(Message message) {
+    public void handleMedia(Message message, UpdateKind kind) {
         long chatId = message.getChatId();
-        UserSession session = sessionService.getOrCreateSession(chatId);
 
         // Extrair o item de mídia da mensagem
-        MediaItem mediaItem = extractMediaItem(message);
+        MediaItem mediaItem = extractMediaItem(message, kind);
         if (mediaItem == null) {
             bot.sendMessage(chatId, "❌ Desculpe, não consegui processar este tipo de mídia.");
             return;
         }
 
-        // Adicionar a mídia à sessão
-        session.addMedia(mediaItem);
-        logger.info("Mídia adicionada para o chat ID: {}. Total: {}",
-                chatId, session.getPendingMedia().size());
+        // Adicionar a mídia à sessão, respeitando o limite de mídias pendentes; se a sessão
+        // expirar no meio, a mídia vai para uma sessão nova
+        int maxPendingMedia = BotConfig.getMaxPendingMediaPerSession();
+        UserSession session;
+        UserSession.AddResult result;
+        do {
+            session = sessionService.getOrCreateSession(chatId);
+            result = session.addMedia(mediaItem, maxPendingMedia);
+        } while (result == UserSession.AddResult.CLOSED);
+
+        if (result == UserSession.AddResult.LIMIT_REACHED) {
+            metrics.increment("session.media.rejected");
+            commitMediaReceived(chatId, kind, session.getPendingMediaCount(), false);
+            if (session.markMediaLimitNotified()) {
+                bot.sendMessage(chatId, String.format(
+                        "⚠️ Limite de %d mídias pendentes atingido. Aguarde a criação dos álbuns antes de enviar mais.",
+                        maxPendingMedia));
+            }
+            return;
+        }
+
+        metrics.increment("media.received");
+        commitMediaReceived(chatId, kind, session.getPendingMediaCount(), true);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Mídia adicionada para o chat ID: {}. Total: {}",
+                    chatId, session.getPendingMediaCount());
+        }
+
+        // Álbuns completos saem já; só o restante espera o fim do lote
+        flushFullAlbums(chatId, session);
 
         // Cancelar qualquer tarefa agendada anteriormente
         cancelScheduledAlbumCreation(chatId);
@@ -74,87 +150,224 @@ public class MediaHandler {
     }
 
     /**
-     * Extrai o item de mídia de uma mensagem
+     * Envia os álbuns completos enquanto o usuário ainda está enviando mídias, para que o
+     * primeiro apareça logo e as chamadas à API se espalhem ao longo do lote. O aviso de
+     * conclusão fica para o fim do lote, junto com o restante.
      */
-    private MediaItem extractMediaItem(Message message) {
-        Integer messageId = message.getMessageId();
+    private void flushFullAlbums(long chatId, UserSession session) {
+        int maxMediaPerAlbum = BotConfig.getMaxMediaPerAlbum();
+        int fullAlbums = session.getPendingMediaCount() / maxMediaPerAlbum;
+        if (fullAlbums == 0 || !BotConfig.isEagerAlbumFlushEnabled()) {
+            return;
+        }
 
-        // Processar foto
-        if (message.hasPhoto()) {
-            List<PhotoSize> photos = message.getPhoto();
-            // Pegar a foto de maior qualidade (última da lista)
-            PhotoSize photo = photos.stream()
-                    .max(Comparator.comparing(PhotoSize::getFileSize))
-                    .orElse(null);
-
-            if (photo != null) {
-                String fileName = "photo_" + photo.getFileId().substring(0, 10) + ".jpg";
-                return new MediaItem(photo.getFileId(), fileName, MediaItem.MediaType.PHOTO, messageId);
-            }
+        // Enviar só os álbuns que cabem na cota, reservando a vaga da exclusão; os demais
+        // esperam a fila andar (próxima mídia ou o debounce)
+        int fittingAlbums = Math.min(fullAlbums, outboundScheduler.getRemainingQuota(chatId) - 1);
+        if (fittingAlbums < fullAlbums) {
+            metrics.increment("media.albums.eager.deferred");
+        }
+        if (fittingAlbums <= 0) {
+            return;
         }
 
-        // Processar vídeo
-        if (message.hasVideo()) {
-            String fileId = message.getVideo().getFileId();
-            String fileName = message.getVideo().getFileName();
-            if (fileName == null || fileName.isEmpty()) {
-                fileName = "video_" + fileId.substring(0, 10) + ".mp4";
-            }
-            return new MediaItem(fileId, fileName, MediaItem.MediaType.VIDEO, messageId);
+        UserSession.Batch albumItems = session.takeFullAlbums(maxMediaPerAlbum, fittingAlbums);
+        if (albumItems == null) {
+            // O temporizador retirou o lote inteiro nesse meio tempo
+            return;
         }
+        int albumCount = albumItems.size() / maxMediaPerAlbum;
+        metrics.add("media.albums.eager", albumCount);
+        logger.info("Enviando {} álbuns completos antecipadamente para o chat ID: {}", albumCount, chatId);
+        enqueueAlbums(chatId, albumItems, albumCount, 0);
+    }
 
-        // Processar animação (GIF)
-        if (message.hasAnimation()) {
-            String fileId = message.getAnimation().getFileId();
-            String fileName = "animation_" + fileId.substring(0, 10) + ".gif";
-            return new MediaItem(fileId, fileName, MediaItem.MediaType.ANIMATION, messageId);
+    private static void commitMediaReceived(long chatId, UpdateKind kind, int pendingCount, boolean accepted) {
+        MediaReceivedEvent event = new MediaReceivedEvent();
+        if (event.shouldCommit()) {
+            event.chatId = chatId;
+            event.mediaType = kind.name();
+            event.pendingCount = pendingCount;
+            event.accepted = accepted;
+            event.commit();
         }
+    }
 
-        // Processar documento (se for mídia reconhecida)
-        if (message.hasDocument()) {
-            String fileId = message.getDocument().getFileId();
-            String fileName = message.getDocument().getFileName();
-            if (fileName == null || fileName.isEmpty()) {
-                fileName = "document_" + fileId.substring(0, 10);
-            }
-            return new MediaItem(fileId, fileName, MediaItem.MediaType.DOCUMENT, messageId);
+    /**
+     * Extrai o item de mídia de uma mensagem. O nome do arquivo só é gerado
+     * quando alguém precisar dele (ver {@link MediaItem#getFileName()}).
+     */
+    private MediaItem extractMediaItem(Message message, UpdateKind kind) {
+        Integer messageId = message.getMessageId();
+        long receivedAt = clock.millis();
+
+        switch (kind) {
+            case PHOTO:
+                PhotoSize photo = largestPhoto(message.getPhoto());
+                return photo != null
+                        ? new MediaItem(photo.getFileId(), null, MediaItem.MediaType.PHOTO, messageId, receivedAt)
+                        : null;
+
+            case VIDEO:
+                return new MediaItem(message.getVideo().getFileId(), message.getVideo().getFileName(),
+                        MediaItem.MediaType.VIDEO, messageId, receivedAt);
+
+            case ANIMATION:
+                return new MediaItem(message.getAnimation().getFileId(), null,
+                        MediaItem.MediaType.ANIMATION, messageId, receivedAt);
+
+            case DOCUMENT:
+                return new MediaItem(message.getDocument().getFileId(), message.getDocument().getFileName(),
+                        MediaItem.MediaType.DOCUMENT, messageId, receivedAt);
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Seleciona a foto de maior qualidade. Tamanhos sem fileSize informado perdem
+     * para os que têm; em empate prevalece o último da lista, que o Telegram envia
+     * em ordem crescente de resolução.
+     */
+    private static PhotoSize largestPhoto(List<PhotoSize> photos) {
+        if (photos == null) {
+            return null;
         }
 
-        return null;
+        PhotoSize largest = null;
+        int largestSize = -1;
+        for (int i = 0; i < photos.size(); i++) {
+            PhotoSize photo = photos.get(i);
+            if (photo == null) {
+                continue;
+            }
+            Integer fileSize = photo.getFileSize();
+            int size = fileSize != null ? fileSize : 0;
+            if (size >= largestSize) {
+                largest = photo;
+                largestSize = size;
+            }
+        }
+        return largest;
     }
 
     /**
      * Agenda a criação automática do álbum
      */
     private void scheduleAlbumCreation(long chatId) {
-        // Agendar a tarefa
-        ScheduledFuture<?> future = scheduler.schedule(() -> {
+        int delaySeconds = BotConfig.getAutoAlbumDelaySeconds();
+        AlbumTimer timer = new AlbumTimer(clock.millis() + TimeUnit.SECONDS.toMillis(delaySeconds));
+
+        // Registrar e contar antes de agendar: o disparo sempre encontra a própria entrada e
+        // a drenagem nunca deixa de ver um temporizador que acabou de começar
+        inFlightTimers.incrementAndGet();
+        AlbumTimer previous = scheduledTasks.put(chatId, timer);
+        if (previous != null) {
+            previous.cancel();
+        }
+        timer.future = scheduler.schedule(() -> {
+            if (!timer.claimed.compareAndSet(false, true)) {
+                return; // Cancelado antes de começar
+            }
+            // Sair da lista antes de criar os álbuns, mas só se a entrada ainda for deste
+            // temporizador: um agendamento mais novo (inclusive o feito pela própria criação,
+            // quando adiada) não pode ser removido e já cuida das mídias
+            if (!scheduledTasks.remove(chatId, timer)) {
+                inFlightTimers.decrementAndGet();
+                return;
+            }
+
+            DebounceFiredEvent event = new DebounceFiredEvent();
+            event.begin();
             try {
+                if (event.isEnabled()) {
+                    UserSession session = sessionService.getSession(chatId);
+                    event.chatId = chatId;
+                    event.pendingCount = session != null ? session.getPendingMediaCount() : 0;
+                    event.delayMillis = TimeUnit.SECONDS.toMillis(delaySeconds);
+                    event.latenessMillis = clock.millis() - timer.dueMillis;
+                }
                 createAlbums(chatId);
             } catch (Exception e) {
                 logger.error("Erro ao criar álbum agendado para o chat ID: {}", chatId, e);
                 bot.sendMessage(chatId, "❌ Ocorreu um erro ao criar o álbum. Por favor, tente novamente.");
             } finally {
-                // Remover a tarefa da lista após execução
-                scheduledTasks.remove(chatId);
+                event.commit();
+                inFlightTimers.decrementAndGet();
             }
-        }, AUTO_ALBUM_DELAY_SECONDS, TimeUnit.SECONDS);
-
-        // Salvar a referência à tarefa
-        scheduledTasks.put(chatId, future);
+        }, delaySeconds, TimeUnit.SECONDS);
 
         logger.info("Criação de álbum agendada para o chat ID: {} em {} segundos",
-                chatId, AUTO_ALBUM_DELAY_SECONDS);
+                chatId, delaySeconds);
+    }
+
+    /**
+     * Retoma a criação de álbuns para mídias restauradas de uma instância anterior
+     */
+    public void resumeAlbumCreation(long chatId) {
+        scheduleAlbumCreation(chatId);
+    }
+
+    /**
+     * Desligamento: cria agora os álbuns cujos temporizadores ainda não venceram e
+     * antecipa as exclusões agendadas. Daqui em diante nada mais é adiado; lotes que não
+     * couberem na cota de saída ficam pendentes na sessão, para serem gravados em disco.
+     * @param timeout espera máxima pelos temporizadores que já tinham começado a rodar
+     * @return quantidade de temporizadores disparados
+     */
+    public int drain(long timeout, TimeUnit unit) {
+        synchronized (pendingDeletions) {
+            draining = true;
+        }
+
+        int fired = 0;
+        for (Map.Entry<Long, AlbumTimer> entry : scheduledTasks.entrySet()) {
+            long chatId = entry.getKey();
+            AlbumTimer timer = entry.getValue();
+            // Se o cancelamento falhar o temporizador já começou: cria os álbuns sozinho e a
+            // espera abaixo o aguarda
+            if (timer.cancel()) {
+                scheduledTasks.remove(chatId, timer);
+                fired++;
+                try {
+                    createAlbums(chatId);
+                } catch (Exception e) {
+                    logger.error("Erro ao criar álbum durante o desligamento para o chat ID: {}", chatId, e);
+                }
+            }
+        }
+
+        for (Runnable deletion : pendingDeletions) {
+            if (pendingDeletions.remove(deletion)) {
+                fired++;
+                deletion.run();
+            }
+        }
+
+        // Temporizadores que já rodavam ainda podem enfileirar envios: aguardá-los antes que
+        // a fila de saída pare de aceitar tarefas
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlightTimers.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        metrics.add("media.drain.fired", fired);
+        return fired;
     }
 
     /**
      * Cancela a criação agendada do álbum
      */
     private void cancelScheduledAlbumCreation(long chatId) {
-        ScheduledFuture<?> task = scheduledTasks.get(chatId);
-        if (task != null && !task.isDone()) {
-            task.cancel(false);
-            scheduledTasks.remove(chatId);
+        AlbumTimer timer = scheduledTasks.get(chatId);
+        if (timer != null && timer.cancel()) {
+            scheduledTasks.remove(chatId, timer);
             logger.info("Tarefa de criação de álbum cancelada para o chat ID: {}", chatId);
         }
     }
@@ -164,126 +377,340 @@ public class MediaHandler {
      */
     public void createAlbums(long chatId) {
         UserSession session = sessionService.getSession(chatId);
-        if (session == null || session.getPendingMedia().isEmpty()) {
+        if (session == null) {
             logger.warn("Tentativa de criar álbum sem mídias pendentes para o chat ID: {}", chatId);
             return;
         }
+        if (session.getPendingMediaCount() == 0) {
+            // Todos os álbuns do lote já saíram antecipadamente; falta só o aviso
+            int flushedAlbums = session.completeBatch();
+            if (flushedAlbums > 0) {
+                announceAlbums(chatId, flushedAlbums);
+            } else {
+                logger.warn("Tentativa de criar álbum sem mídias pendentes para o chat ID: {}", chatId);
+            }
+            return;
+        }
 
-        List<MediaItem> mediaItems = new ArrayList<>(session.getPendingMedia());
-        int totalMedias = mediaItems.size();
+        int totalMedias = session.getPendingMediaCount();
         logger.info("Criando álbuns com {} itens totais para o chat ID: {}", totalMedias, chatId);
 
         // Se houver apenas uma mídia, enviar mensagem informativa
         if (totalMedias == 1) {
+            // Sobra de um lote com álbuns já enviados: descartada sem aviso, como a sobra de um
+            // lote enviado de uma vez, para não contradizer o aviso de álbuns criados
+            UserSession.Batch leftover = session.takeLeftover(1);
+            if (leftover != null) {
+                logger.warn("Itens insuficientes ({}) para criar um álbum para o chat ID: {}",
+                        leftover.size(), chatId);
+                leftover.release(0, leftover.size());
+                announceAlbums(chatId, leftover.getFlushedAlbums());
+                return;
+            }
             bot.sendMessage(chatId,
                     "ℹ️ Para criar um álbum, você precisa enviar pelo menos 2 mídias. " +
                             "Envie mais mídias e tente novamente.");
             return;
         }
 
-        // Limpar a sessão antes de enviar os álbuns para evitar duplicações
-        List<MediaItem> allMediaItems = new ArrayList<>(session.getPendingMedia());
-        session.clearPendingMedia();
+        // Respeitar a cota do chat na fila de saída (um envio por álbum e a exclusão final)
+        int maxMediaPerAlbum = BotConfig.getMaxMediaPerAlbum();
+        int albumCount = (int) Math.ceil((double) totalMedias / maxMediaPerAlbum);
+        int remainingQuota = outboundScheduler.getRemainingQuota(chatId);
+        if (remainingQuota < albumCount + 1) {
+            // Enviar já os álbuns completos que cabem na cota; o restante espera o próximo
+            // disparo. Um lote maior que a cota inteira nunca caberia de uma vez.
+            int sentAlbums = sendFittingAlbums(chatId, session, remainingQuota - 1);
+            if (draining) {
+                logger.info("Fila de saída cheia durante o desligamento; mídias do chat ID: {} ficam pendentes", chatId);
+                return;
+            }
+            // O lote continua em andamento: a sessão não deve expirar enquanto espera a fila
+            session.updateLastActivity();
+            metrics.increment("media.albums.deferred");
+            logger.info("Fila de saída cheia para o chat ID: {}. {} álbuns enviados, restante adiado",
+                    chatId, sentAlbums);
+            scheduleAlbumCreation(chatId);
+            return;
+        }
+
+        // Retirar o lote da sessão de uma vez antes de enviar os álbuns, para evitar
+        // duplicações; mídias que chegarem depois ficam para o próximo lote
+        UserSession.Batch batch = session.drainBatch(2);
+        if (batch == null) {
+            // Um envio antecipado levou as mídias nesse meio tempo; o novo temporizador cuida do resto
+            return;
+        }
+        albumCount = (int) Math.ceil((double) batch.size() / maxMediaPerAlbum);
 
-        // Criar múltiplos álbuns se necessário
-        int albumCount = (int) Math.ceil((double) totalMedias / MAX_MEDIA_PER_ALBUM);
+        enqueueAlbums(chatId, batch, albumCount, batch.getFlushedAlbums() + albumCount);
+    }
+
+    /**
+     * Retira e enfileira até {@code maxAlbums} álbuns completos das mídias pendentes, que
+     * passam a contar como enviados antecipadamente no lote em andamento
+     * @return quantidade de álbuns enfileirados
+     */
+    private int sendFittingAlbums(long chatId, UserSession session, int maxAlbums) {
+        if (maxAlbums <= 0) {
+            return 0;
+        }
+        int maxMediaPerAlbum = BotConfig.getMaxMediaPerAlbum();
+        UserSession.Batch albumItems = session.takeFullAlbums(maxMediaPerAlbum, maxAlbums);
+        if (albumItems == null) {
+            return 0;
+        }
+        int albumCount = albumItems.size() / maxMediaPerAlbum;
+        metrics.add("media.albums.partial", albumCount);
+        enqueueAlbums(chatId, albumItems, albumCount, 0);
+        return albumCount;
+    }
+
+    /**
+     * Enfileira os envios dos álbuns e, depois deles, a exclusão das mensagens originais.
+     * Cada envio lê do lote só as mídias do seu álbum, na hora de enviar, para que as
+     * transbordadas não voltem ao heap todas de uma vez.
+     * @param announcedAlbums total de álbuns do lote informado ao usuário após o último
+     *                        envio; 0 para não avisar
+     */
+    private void enqueueAlbums(long chatId, UserSession.Batch batch, int albumCount, int announcedAlbums) {
+        int totalMedias = batch.size();
+        int maxMediaPerAlbum = BotConfig.getMaxMediaPerAlbum();
+
+        // Criar múltiplos álbuns se necessário; os envios entram na fila justa do chat
         logger.info("Criando {} álbuns para o chat ID: {}", albumCount, chatId);
 
-        boolean success = true;
+        AlbumPartitionedEvent partitioned = new AlbumPartitionedEvent();
+        if (partitioned.shouldCommit()) {
+            partitioned.chatId = chatId;
+            partitioned.itemCount = totalMedias;
+            partitioned.albumCount = albumCount;
+            partitioned.maxPerAlbum = maxMediaPerAlbum;
+            partitioned.commit();
+        }
+
+        AtomicBoolean success = new AtomicBoolean(true);
+        // Preenchido pelos envios, que rodam antes da exclusão na fila do chat; 0 = sem id
+        int[] messageIds = new int[totalMedias];
+
+        // Uma sobra de uma mídia no fim não vira álbum: o aviso vai no último álbum de fato
+        boolean leftoverAtEnd = albumCount > 1 && totalMedias - (albumCount - 1) * maxMediaPerAlbum < 2;
+        int lastAlbum = leftoverAtEnd ? albumCount - 1 : albumCount;
 
         for (int i = 0; i < albumCount; i++) {
-            int fromIndex = i * MAX_MEDIA_PER_ALBUM;
-            int toIndex = Math.min(fromIndex + MAX_MEDIA_PER_ALBUM, totalMedias);
-
-            List<MediaItem> albumItems = allMediaItems.subList(fromIndex, toIndex);
-            if (albumItems.size() >= 2) {  // O Telegram exige pelo menos 2 itens por álbum
-                boolean albumSuccess = createSingleAlbum(chatId, albumItems, i + 1, albumCount);
-                if (!albumSuccess) {
-                    success = false;
+            int fromIndex = i * maxMediaPerAlbum;
+            int toIndex = Math.min(fromIndex + maxMediaPerAlbum, totalMedias);
+
+            if (toIndex - fromIndex >= 2) {  // O Telegram exige pelo menos 2 itens por álbum
+                int albumNumber = i + 1;
+                int announce = albumNumber != lastAlbum || announcedAlbums == 0 ? 0
+                        : leftoverAtEnd ? announcedAlbums - 1 : announcedAlbums;
+                boolean queued = outboundScheduler.submit(chatId, 1, () -> {
+                    List<MediaItem> albumItems = batch.read(fromIndex, toIndex);
+                    for (int j = 0; j < albumItems.size(); j++) {
+                        Integer messageId = albumItems.get(j).getMessageId();
+                        messageIds[fromIndex + j] = messageId != null ? messageId : 0;
+                    }
+                    if (!createSingleAlbum(chatId, batch.getSession(), albumItems, albumNumber, albumCount,
+                            announce)) {
+                        success.set(false);
+                    }
+                });
+                if (!queued) {
+                    logger.warn("Álbum {}/{} descartado pela fila de saída para o chat ID: {}",
+                            albumNumber, albumCount, chatId);
+                    batch.release(fromIndex, toIndex);
+                    success.set(false);
                 }
             } else {
                 // Se sobrarem itens que não são suficientes para um álbum, avise o usuário
                 logger.warn("Itens insuficientes ({}) para criar um álbum para o chat ID: {}",
-                        albumItems.size(), chatId);
+                        toIndex - fromIndex, chatId);
+                batch.release(fromIndex, toIndex);
                 if (i == 0) {  // Se for o primeiro e único álbum
                     bot.sendMessage(chatId,
                             "ℹ️ Para criar um álbum, você precisa enviar pelo menos 2 mídias. " +
                                     "Envie mais mídias e tente novamente.");
                 }
-                success = false;
+                success.set(false);
             }
         }
 
-        // Se os álbuns foram criados com sucesso, delete as mensagens originais
-        if (success) {
-            deleteOriginalMessages(chatId, allMediaItems);
+        // Se os álbuns foram criados com sucesso, delete as mensagens originais.
+        // As tarefas de um chat rodam em ordem, então esta roda depois de todos os envios.
+        submitAfterQueued(chatId, () -> {
+            if (success.get()) {
+                deleteOriginalMessages(chatId, messageIds);
+            }
+        });
+    }
+
+    /**
+     * Enfileira uma tarefa que deve rodar depois das já enfileiradas para o chat. A cota é
+     * consultada antes de enfileirar os envios, mas legendas e avisos do mesmo chat podem
+     * ocupá-la nesse meio tempo: com a fila cheia, a tarefa tenta de novo após um atraso,
+     * ainda atrás dos envios, em vez de ser descartada.
+     */
+    private void submitAfterQueued(long chatId, Runnable action) {
+        if (outboundScheduler.submit(chatId, 1, action)) {
+            return;
+        }
+        metrics.increment("media.outbound.retried");
+        logger.info("Fila de saída cheia para o chat ID: {}. Tarefa adiada", chatId);
+
+        // Contada como temporizador para que a drenagem espere a nova tentativa
+        inFlightTimers.incrementAndGet();
+        scheduler.schedule(() -> {
+            try {
+                submitAfterQueued(chatId, action);
+            } finally {
+                inFlightTimers.decrementAndGet();
+            }
+        }, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Deleta as mensagens originais após a criação bem-sucedida dos álbuns, em tarefas de
+     * até {@link #DELETION_CHUNK} mensagens
+     */
+    private void deleteOriginalMessages(long chatId, int[] messageIds) {
+        for (int from = 0; from < messageIds.length; from += DELETION_CHUNK) {
+            int to = Math.min(from + DELETION_CHUNK, messageIds.length);
+            deferDeletion(chatId, Arrays.copyOfRange(messageIds, from, to));
         }
     }
 
     /**
-     * Deleta as mensagens originais após a criação bem-sucedida dos álbuns
+     * Agenda a exclusão de um trecho das mensagens originais
      */
-    private void deleteOriginalMessages(long chatId, List<MediaItem> mediaItems) {
+    private void deferDeletion(long chatId, int[] messageIds) {
+        Runnable deletion = () -> submitDeletion(chatId, messageIds);
+
+        // A drenagem é ligada sob a mesma trava: ou a exclusão entra no conjunto antes de ser
+        // percorrida pelo desligamento, ou roda aqui mesmo
+        boolean deferred;
+        synchronized (pendingDeletions) {
+            deferred = !draining && pendingDeletions.add(deletion);
+        }
+        if (!deferred) {
+            // Desligando: a fila não aceita novas tarefas, então excluir aqui mesmo
+            deleteMessages(chatId, messageIds);
+            return;
+        }
+
         // Agendar a exclusão para ocorrer após um pequeno delay para garantir que o álbum foi exibido
         scheduler.schedule(() -> {
-            int deletedCount = 0;
-
-            for (MediaItem item : mediaItems) {
-                Integer messageId = item.getMessageId();
-                if (messageId != null) {
-                    try {
-                        DeleteMessage deleteMessage = new DeleteMessage();
-                        deleteMessage.setChatId(String.valueOf(chatId));
-                        deleteMessage.setMessageId(messageId);
-
-                        boolean deleted = bot.execute(deleteMessage);
-                        if (deleted) {
-                            deletedCount++;
-                        }
-                    } catch (TelegramApiException e) {
-                        logger.warn("Não foi possível deletar a mensagem ID: {} para o chat ID: {}",
-                                messageId, chatId, e);
+            // Contar antes de retirar a exclusão do conjunto: a drenagem que não a encontrar
+            // mais espera por ela
+            inFlightTimers.incrementAndGet();
+            try {
+                if (pendingDeletions.remove(deletion)) {
+                    deletion.run();
+                }
+            } finally {
+                inFlightTimers.decrementAndGet();
+            }
+        }, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Enfileira a exclusão depois do atraso de exibição. Com a fila do chat cheia (os álbuns
+     * seguintes de um lote grande ocupam a cota), a exclusão espera mais um atraso em vez de
+     * ser descartada.
+     */
+    private void submitDeletion(long chatId, int[] messageIds) {
+        if (outboundScheduler.submit(chatId, messageIds.length, () -> deleteMessages(chatId, messageIds))) {
+            return;
+        }
+        metrics.increment("media.deletions.deferred");
+        logger.info("Fila de saída cheia para o chat ID: {}. Exclusão das mensagens originais adiada", chatId);
+        deferDeletion(chatId, messageIds);
+    }
+
+    private void deleteMessages(long chatId, int[] messageIds) {
+        DeletionBatchEvent event = new DeletionBatchEvent();
+        event.begin();
+        int deletedCount = 0;
+
+        for (int messageId : messageIds) {
+            if (messageId != 0) {
+                try {
+                    DeleteMessage deleteMessage = new DeleteMessage();
+                    deleteMessage.setChatId(String.valueOf(chatId));
+                    deleteMessage.setMessageId(messageId);
+
+                    boolean deleted = bot.execute(deleteMessage);
+                    if (deleted) {
+                        deletedCount++;
                     }
+                } catch (TelegramApiException e) {
+                    logger.warn("Não foi possível deletar a mensagem ID: {} para o chat ID: {}",
+                            messageId, chatId, e);
                 }
             }
+        }
 
-            logger.info("Deletadas {} de {} mensagens originais para o chat ID: {}",
-                    deletedCount, mediaItems.size(), chatId);
-        }, 1, TimeUnit.SECONDS);
+        logger.info("Deletadas {} de {} mensagens originais para o chat ID: {}",
+                deletedCount, messageIds.length, chatId);
+
+        if (event.shouldCommit()) {
+            event.chatId = chatId;
+            event.requestedCount = messageIds.length;
+            event.deletedCount = deletedCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Avisa, na fila do chat e portanto depois dos envios já enfileirados, que os álbuns
+     * do lote foram criados
+     */
+    private void announceAlbums(long chatId, int albumCount) {
+        submitAfterQueued(chatId, () -> bot.sendMessage(chatId, albumsCreatedMessage(albumCount)));
+    }
+
+    private static String albumsCreatedMessage(int albumCount) {
+        return albumCount > 1
+                ? String.format("✅ Criados %d álbuns com sucesso! Para adicionar uma legenda, responda a um álbum com o texto desejado.", albumCount)
+                : "✅ Álbum criado com sucesso! Para adicionar uma legenda, responda ao álbum com o texto desejado.";
     }
 
     /**
      * Cria um único álbum com as mídias especificadas
+     * @param owner           sessão de onde as mídias foram retiradas
+     * @param announcedAlbums se maior que zero, avisa após o envio que o lote gerou esse total de álbuns
      * @return true se o álbum foi criado com sucesso, false caso contrário
      */
-    private boolean createSingleAlbum(long chatId, List<MediaItem> mediaItems, int albumNumber, int totalAlbums) {
+    private boolean createSingleAlbum(long chatId, UserSession owner, List<MediaItem> mediaItems, int albumNumber,
+                                      int totalAlbums, int announcedAlbums) {
         logger.info("Criando álbum {}/{} com {} itens para o chat ID: {}",
                 albumNumber, totalAlbums, mediaItems.size(), chatId);
 
         // Criar o álbum
-        Album album = new Album(mediaItems);
+        Album album = new Album(mediaItems, clock);
 
         // Enviar o álbum para o usuário
+        SendMediaGroupEvent event = new SendMediaGroupEvent();
+        event.begin();
         try {
             List<Message> sentMessages = sendAlbumToUser(chatId, mediaItems);
+            event.end();
+            event.success = sentMessages != null && !sentMessages.isEmpty();
 
             // Se o envio foi bem-sucedido, atualizar a sessão
             if (sentMessages != null && !sentMessages.isEmpty()) {
                 // Guardamos o ID da mensagem do álbum para poder modificar depois
                 album.setSentMessageId(sentMessages.get(0).getMessageId());
 
-                // Atualizar a sessão
-                UserSession session = sessionService.getSession(chatId);
-                if (session != null) {
-                    session.setLastAlbum(album);
-
-                    // Informar o usuário apenas uma vez, após o último álbum
-                    if (albumNumber == totalAlbums) {
-                        String message = totalAlbums > 1
-                                ? String.format("✅ Criados %d álbuns com sucesso! Para adicionar uma legenda, responda a um álbum com o texto desejado.", totalAlbums)
-                                : "✅ Álbum criado com sucesso! Para adicionar uma legenda, responda ao álbum com o texto desejado.";
-                        bot.sendMessage(chatId, message);
-                    }
+                // Atualizar a sessão, se ainda for a que coletou as mídias: uma sessão recriada
+                // depois da expiração está no estado inicial e não espera legenda deste álbum
+                if (sessionService.getSession(chatId) == owner) {
+                    owner.setLastAlbum(album);
+                }
+
+                // Informar o usuário apenas uma vez, após o último álbum do lote
+                if (announcedAlbums > 0) {
+                    bot.sendMessage(chatId, albumsCreatedMessage(announcedAlbums));
                 }
 
                 return true;
@@ -301,6 +728,14 @@ public class MediaHandler {
             }
 
             return false;
+        } finally {
+            if (event.shouldCommit()) {
+                event.chatId = chatId;
+                event.albumNumber = albumNumber;
+                event.albumCount = totalAlbums;
+                event.itemCount = mediaItems.size();
+                event.commit();
+            }
         }
     }
 
@@ -308,65 +743,19 @@ public class MediaHandler {
      * Envia um álbum para o usuário
      */
     private List<Message> sendAlbumToUser(long chatId, List<MediaItem> mediaItems) throws TelegramApiException {
-        // Preparar grupo de mídia para envio
-        SendMediaGroup mediaGroup = new SendMediaGroup();
-        mediaGroup.setChatId(String.valueOf(chatId));
-
-        List<InputMedia> inputMedia = new ArrayList<>();
-
-        // Converter cada item de mídia para o formato do Telegram
-        for (MediaItem item : mediaItems) {
-            InputMedia media = convertToInputMedia(item);
-            if (media != null) {
-                inputMedia.add(media);
-            }
-        }
-
         // Verificar se temos pelo menos 2 itens para o álbum (requisito do Telegram)
-        if (inputMedia.size() < 2) {
+        if (mediaItems.size() < 2) {
             throw new TelegramApiException("Número insuficiente de itens de mídia para criar um álbum");
         }
 
         // O Telegram permite no máximo 10 itens por álbum
-        if (inputMedia.size() > MAX_MEDIA_PER_ALBUM) {
-            inputMedia = inputMedia.subList(0, MAX_MEDIA_PER_ALBUM);
-            logger.warn("Álbum truncado para {} itens para o chat ID: {}", MAX_MEDIA_PER_ALBUM, chatId);
+        int maxMediaPerAlbum = BotConfig.getMaxMediaPerAlbum();
+        if (mediaItems.size() > maxMediaPerAlbum) {
+            mediaItems = mediaItems.subList(0, maxMediaPerAlbum);
+            logger.warn("Álbum truncado para {} itens para o chat ID: {}", maxMediaPerAlbum, chatId);
         }
 
-        mediaGroup.setMedias(inputMedia);
-
-        // Enviar o grupo de mídia
-        return bot.execute(mediaGroup);
-    }
-
-    /**
-     * Converte um MediaItem para o formato InputMedia do Telegram
-     */
-    private InputMedia convertToInputMedia(MediaItem item) {
-        switch (item.getType()) {
-            case PHOTO:
-                InputMediaPhoto photo = new InputMediaPhoto();
-                photo.setMedia(item.getFileId());
-                return photo;
-
-            case VIDEO:
-                InputMediaVideo video = new InputMediaVideo();
-                video.setMedia(item.getFileId());
-                return video;
-
-            case ANIMATION:
-                InputMediaAnimation animation = new InputMediaAnimation();
-                animation.setMedia(item.getFileId());
-                return animation;
-
-            case DOCUMENT:
-                InputMediaDocument document = new InputMediaDocument();
-                document.setMedia(item.getFileId());
-                return document;
-
-            default:
-                logger.warn("Tipo de mídia não suportado: {}", item.getType());
-                return null;
-        }
+        // Enviar o grupo de mídia, montado direto dos itens
+        return bot.sendMediaGroup(chatId, mediaItems);
     }
-}
\ No newline at end of file
+}
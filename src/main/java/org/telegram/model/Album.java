@@ -1,5 +1,6 @@
 package org.telegram.model;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,13 +17,21 @@ public class Album {
     private Integer sentMessageId; // ID da mensagem do álbum enviado
 
     public Album() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public Album(Clock clock) {
         this.albumId = UUID.randomUUID().toString().substring(0, 8);
         this.mediaItems = new ArrayList<>();
-        this.createdAt = LocalDateTime.now();
+        this.createdAt = LocalDateTime.now(clock);
     }
 
     public Album(List<MediaItem> mediaItems) {
-        this();
+        this(mediaItems, Clock.systemDefaultZone());
+    }
+
+    public Album(List<MediaItem> mediaItems, Clock clock) {
+        this(clock);
         this.mediaItems.addAll(mediaItems);
     }
 
@@ -0,0 +1,120 @@
+package org.telegram.model;
+
+/**
+ * Comandos reconhecidos pelo bot.
+ *
+ * A identificação é feita sobre o texto original, sem expressões regulares e sem
+ * criar novas strings: o primeiro token é delimitado manualmente e comparado com
+ * uma tabela de nomes agrupada por comprimento.
+ */
+public enum Command {
+    START("/start"),
+    HELP("/help"),
+    CANCEL("/cancel"),
+    ABOUT("/about", "/sobre"),
+    PUBLISH("/publish", "/publicar"),
+    EXPORT("/export", "/exportar"),
+    COLLAGE("/collage", "/mosaico"),
+    UNKNOWN();
+
+    private static final int MAX_NAME_LENGTH = 16;
+    private static final Command[][] COMMANDS_BY_LENGTH = new Command[MAX_NAME_LENGTH + 1][];
+    private static final String[][] NAMES_BY_LENGTH = new String[MAX_NAME_LENGTH + 1][];
+
+    static {
+        for (int length = 0; length <= MAX_NAME_LENGTH; length++) {
+            int count = 0;
+            for (Command command : values()) {
+                for (String name : command.names) {
+                    if (name.length() == length) {
+                        count++;
+                    }
+                }
+            }
+
+            COMMANDS_BY_LENGTH[length] = new Command[count];
+            NAMES_BY_LENGTH[length] = new String[count];
+            int index = 0;
+            for (Command command : values()) {
+                for (String name : command.names) {
+                    if (name.length() == length) {
+                        COMMANDS_BY_LENGTH[length][index] = command;
+                        NAMES_BY_LENGTH[length][index] = name;
+                        index++;
+                    }
+                }
+            }
+        }
+    }
+
+    private final String[] names;
+
+    Command(String... names) {
+        this.names = names;
+    }
+
+    /**
+     * Nome principal do comando (ex.: "/publish"), ou null para {@link #UNKNOWN}
+     */
+    public String getName() {
+        return names.length > 0 ? names[0] : null;
+    }
+
+    /**
+     * Identifica o comando no início do texto (ex.: "/start", "/HELP@meubot argumento")
+     * @param botUsername nome de usuário deste bot; em grupos, comandos com menção a outro
+     *                    bot não são deste. Null ou vazio aceita qualquer menção.
+     * @return o comando reconhecido, ou null se o texto não começar com "/" ou o comando
+     *         for para outro bot
+     */
+    public static Command parse(String text, String botUsername) {
+        if (text == null || text.isEmpty() || text.charAt(0) != '/') {
+            return null;
+        }
+
+        // Delimitar o primeiro token: termina em espaço ou na menção ao bot
+        int end = 1;
+        int length = text.length();
+        while (end < length) {
+            char c = text.charAt(end);
+            if (c == '@' || Character.isWhitespace(c)) {
+                break;
+            }
+            end++;
+        }
+
+        if (end < length && text.charAt(end) == '@' && !mentions(text, end + 1, botUsername)) {
+            return null;
+        }
+
+        if (end > MAX_NAME_LENGTH) {
+            return UNKNOWN;
+        }
+
+        String[] candidates = NAMES_BY_LENGTH[end];
+        for (int i = 0; i < candidates.length; i++) {
+            if (text.regionMatches(true, 0, candidates[i], 0, end)) {
+                return COMMANDS_BY_LENGTH[end][i];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Compara a menção que começa em {@code start} com o nome do bot, sem diferenciar
+     * maiúsculas (como o Telegram) e aceitando o nome configurado com ou sem "@"
+     */
+    private static boolean mentions(String text, int start, String botUsername) {
+        if (botUsername == null || botUsername.isEmpty()) {
+            return true;
+        }
+        int nameStart = botUsername.charAt(0) == '@' ? 1 : 0;
+        int nameLength = botUsername.length() - nameStart;
+
+        int end = start;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        return end - start == nameLength && text.regionMatches(true, start, botUsername, nameStart, nameLength);
+    }
+}
@@ -1,38 +1,56 @@
 package org.telegram.model;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 
 /**
  * Classe que representa um item de mídia
  */
 public class MediaItem {
     private String fileId;
-    private String fileName;
+    private String fileName; // Nome original; nulo se o usuário não enviou um
+    private String defaultFileName;
     private MediaType type;
-    private LocalDateTime receivedAt;
+    private long receivedAtMillis;
     private String uniqueId;
     private Integer messageId; // ID da mensagem original
 
     public enum MediaType {
-        PHOTO,
-        VIDEO,
-        DOCUMENT,
-        ANIMATION
+        PHOTO("photo_", ".jpg"),
+        VIDEO("video_", ".mp4"),
+        DOCUMENT("document_", ""),
+        ANIMATION("animation_", ".gif");
+
+        private final String defaultPrefix;
+        private final String defaultExtension;
+
+        MediaType(String defaultPrefix, String defaultExtension) {
+            this.defaultPrefix = defaultPrefix;
+            this.defaultExtension = defaultExtension;
+        }
     }
 
-    public MediaItem(String fileId, String fileName, MediaType type, Integer messageId) {
+    /**
+     * @param fileName nome original do arquivo; se nulo ou vazio, um nome padrão
+     *                 é gerado sob demanda a partir do fileId
+     * @param receivedAtMillis instante de recebimento, em milissegundos desde a época,
+     *                         lido do relógio de quem recebeu a mídia
+     */
+    public MediaItem(String fileId, String fileName, MediaType type, Integer messageId, long receivedAtMillis) {
         this.fileId = fileId;
-        this.fileName = fileName;
+        this.fileName = fileName != null && !fileName.isEmpty() ? fileName : null;
         this.type = type;
         this.messageId = messageId;
-        this.receivedAt = LocalDateTime.now();
-        this.uniqueId = generateUniqueId();
+        this.receivedAtMillis = receivedAtMillis;
     }
 
     private String generateUniqueId() {
         return fileId.substring(0, Math.min(fileId.length(), 10)) +
                 "-" +
-                System.currentTimeMillis();
+                receivedAtMillis;
+    }
+
+    private String generateFileName() {
+        return type.defaultPrefix + fileId.substring(0, Math.min(fileId.length(), 10)) + type.defaultExtension;
     }
 
     public String getFileId() {
@@ -40,18 +58,52 @@ public class MediaItem {
     }
 
     public String getFileName() {
+        if (fileName != null) {
+            return fileName;
+        }
+        if (defaultFileName == null) {
+            defaultFileName = generateFileName();
+        }
+        return defaultFileName;
+    }
+
+    /**
+     * Nome enviado pelo usuário, sem gerar o padrão
+     * @return null se a mídia chegou sem nome
+     */
+    public String getOriginalFileName() {
         return fileName;
     }
 
+    /**
+     * Nome padrão derivado do fileId, ignorando o nome original enviado pelo usuário
+     */
+    public String getDefaultFileName() {
+        return generateFileName();
+    }
+
     public MediaType getType() {
         return type;
     }
 
-    public LocalDateTime getReceivedAt() {
-        return receivedAt;
+    /**
+     * Instante de recebimento, sem fuso; quem exibir escolhe o fuso
+     */
+    public Instant getReceivedAt() {
+        return Instant.ofEpochMilli(receivedAtMillis);
+    }
+
+    /**
+     * Instante de recebimento, em milissegundos desde a época
+     */
+    public long getReceivedAtMillis() {
+        return receivedAtMillis;
     }
 
     public String getUniqueId() {
+        if (uniqueId == null) {
+            uniqueId = generateUniqueId();
+        }
         return uniqueId;
     }
 
@@ -63,9 +115,9 @@ public class MediaItem {
     public String toString() {
         return "MediaItem{" +
                 "type=" + type +
-                ", fileName='" + fileName + '\'' +
+                ", fileName='" + getFileName() + '\'' +
                 ", messageId=" + messageId +
-                ", receivedAt=" + receivedAt +
+                ", receivedAt=" + getReceivedAt() +
                 '}';
     }
 }
\ No newline at end of file
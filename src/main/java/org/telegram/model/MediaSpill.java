@@ -0,0 +1,26 @@
+package org.telegram.model;
+
+/**
+ * Armazenamento fora do heap para as mídias pendentes que passam do limite em memória
+ * da sessão (ver {@link UserSession}). Cada mídia vira um registro identificado por uma
+ * posição; a sessão guarda só esse número até o lote ser enviado.
+ */
+public interface MediaSpill {
+    /**
+     * Grava a mídia num registro livre
+     * @return posição do registro, ou -1 se a mídia não couber num registro ou o
+     *         armazenamento estiver cheio (a mídia fica então no heap)
+     */
+    int write(MediaItem item);
+
+    /**
+     * Lê a mídia de um registro ocupado, sem liberá-lo
+     * @throws IllegalStateException se o registro estiver livre
+     */
+    MediaItem read(int slot);
+
+    /**
+     * Libera o registro para reuso; depois disso a posição não pode mais ser lida
+     */
+    void free(int slot);
+}
@@ -0,0 +1,89 @@
+package org.telegram.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado da publicação de um álbum em vários destinos
+ */
+public class PublishReport {
+    private final String albumId;
+    private final List<TargetResult> results;
+    private final long elapsedMillis;
+
+    /**
+     * Resultado da publicação em um único destino
+     */
+    public static class TargetResult {
+        private final String target;
+        private final boolean success;
+        private final Integer messageId; // ID da primeira mensagem do álbum publicado
+        private final String error;
+
+        public TargetResult(String target, boolean success, Integer messageId, String error) {
+            this.target = target;
+            this.success = success;
+            this.messageId = messageId;
+            this.error = error;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public Integer getMessageId() {
+            return messageId;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    public PublishReport(String albumId, List<TargetResult> results, long elapsedMillis) {
+        this.albumId = albumId;
+        this.results = new ArrayList<>(results);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getAlbumId() {
+        return albumId;
+    }
+
+    public List<TargetResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public int getSuccessCount() {
+        int count = 0;
+        for (TargetResult result : results) {
+            if (result.isSuccess()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getFailureCount() {
+        return results.size() - getSuccessCount();
+    }
+
+    @Override
+    public String toString() {
+        return "PublishReport{" +
+                "albumId='" + albumId + '\'' +
+                ", targets=" + results.size() +
+                ", success=" + getSuccessCount() +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+package org.telegram.model;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+/**
+ * Classificação de uma mensagem recebida, calculada uma única vez na entrada
+ * e repassada aos manipuladores junto com a atualização
+ */
+public enum UpdateKind {
+    PHOTO(MediaItem.MediaType.PHOTO, Priority.HIGH),
+    VIDEO(MediaItem.MediaType.VIDEO, Priority.HIGH),
+    ANIMATION(MediaItem.MediaType.ANIMATION, Priority.HIGH),
+    DOCUMENT(MediaItem.MediaType.DOCUMENT, Priority.HIGH),
+    CANCEL_COMMAND(null, Priority.HIGH),
+    COMMAND(null, Priority.NORMAL),
+    CAPTION_REPLY(null, Priority.NORMAL),
+    TEXT(null, Priority.LOW),
+    IGNORED(null, Priority.LOW);
+
+    /**
+     * Prioridade de uma atualização para fins de descarte na fila de entrada
+     */
+    public enum Priority {
+        HIGH,   // Mídias e /cancel: nunca descartadas; com a faixa cheia, excedem a capacidade
+        NORMAL, // Comandos e respostas de legenda
+        LOW     // Mensagens de ajuda para texto não reconhecido
+    }
+
+    private final MediaItem.MediaType mediaType;
+    private final Priority priority;
+
+    UpdateKind(MediaItem.MediaType mediaType, Priority priority) {
+        this.mediaType = mediaType;
+        this.priority = priority;
+    }
+
+    /**
+     * Classifica a mensagem seguindo a mesma ordem de decisão do bot
+     * @param botUsername nome de usuário do bot, para ignorar comandos dirigidos a outros bots
+     */
+    public static UpdateKind of(Message message, String botUsername) {
+        if (message.hasText()) {
+            String text = message.getText();
+            Command command = Command.parse(text, botUsername);
+            if (command != null) {
+                return command == Command.CANCEL ? CANCEL_COMMAND : COMMAND;
+            }
+            if (text.startsWith("/")) {
+                // Comando com menção a outro bot do grupo
+                return IGNORED;
+            }
+        }
+
+        if (message.hasPhoto()) {
+            return PHOTO;
+        }
+        if (message.hasVideo()) {
+            return VIDEO;
+        }
+        if (message.hasAnimation()) {
+            return ANIMATION;
+        }
+        if (message.hasDocument()) {
+            return DOCUMENT;
+        }
+
+        if (message.hasText()) {
+            return message.isReply() ? CAPTION_REPLY : TEXT;
+        }
+        return IGNORED;
+    }
+
+    public boolean isMedia() {
+        return mediaType != null;
+    }
+
+    /**
+     * Tipo de mídia correspondente, ou null se não for uma mídia
+     */
+    public MediaItem.MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+}
@@ -1,88 +1,632 @@
 package org.telegram.model;
 
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Classe que representa uma sessão de usuário
+ * Classe que representa uma sessão de usuário.
+ *
+ * A sessão é usada ao mesmo tempo pelas threads de entrada (mídias e legendas), pelos
+ * temporizadores e envios de álbuns e pela limpeza de sessões expiradas. Todo o estado
+ * fica num {@link Snapshot} imutável, trocado por compare-and-set: cada leitura enxerga
+ * um estado consistente, e cada operação composta (acrescentar respeitando o limite,
+ * retirar o lote, expirar) é atômica sem travar as outras threads.
+ *
+ * Com um {@link MediaSpill}, só as primeiras mídias pendentes ficam no heap; as demais
+ * vão para o armazenamento fora do heap e a sessão guarda apenas a posição de cada uma.
+ * As mídias do heap vêm sempre antes das transbordadas, exceto as que o armazenamento
+ * recusar, que ficam no heap mesmo depois do limite.
  */
 public class UserSession {
     private final long chatId;
-    private List<MediaItem> pendingMedia;
-    private Album lastAlbum;
-    private LocalDateTime lastActivity;
-    private SessionState state;
+    private final Clock clock;
+    private final MediaSpill spill;
+    private final int heapMediaLimit;
+    private final AtomicReference<Snapshot> snapshot;
 
     public enum SessionState {
         IDLE,               // Estado inicial
         COLLECTING_MEDIA,   // Coletando mídia para o álbum
-        WAITING_FOR_CAPTION // Esperando legenda para o álbum
+        WAITING_FOR_CAPTION; // Esperando legenda para o álbum
+
+        /**
+         * Transições válidas: a coleta começa com a primeira mídia, a legenda só é esperada
+         * depois de um álbum enviado e qualquer estado pode voltar ao inicial. Um álbum que
+         * termina de sair depois de a sessão ser recriada não é da sessão nova (ver
+         * {@link Batch#getSession()}): IDLE nunca vai direto para a espera pela legenda.
+         */
+        public boolean canMoveTo(SessionState next) {
+            if (next == this || next == IDLE) {
+                return true;
+            }
+            switch (this) {
+                case IDLE:
+                    return next == COLLECTING_MEDIA;
+                case COLLECTING_MEDIA:
+                    return next == WAITING_FOR_CAPTION;
+                case WAITING_FOR_CAPTION:
+                    return next == COLLECTING_MEDIA;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Resultado de {@link #addMedia(MediaItem, int)}
+     */
+    public enum AddResult {
+        ADDED,
+        LIMIT_REACHED, // Limite de mídias pendentes atingido; nada mudou
+        CLOSED         // Sessão expirada e removida; use uma nova sessão do chat
+    }
+
+    /**
+     * Lote retirado da sessão para virar álbuns. As mídias transbordadas só são lidas do
+     * armazenamento quando pedidas, álbum a álbum, e o registro é liberado nessa leitura:
+     * cada posição do lote deve ser lida ou liberada uma única vez.
+     */
+    public static final class Batch {
+        private final List<MediaItem> items;
+        private final SlotList spilled;
+        private final MediaSpill spill;
+        private final int flushedAlbums;
+        private final UserSession session;
+
+        Batch(List<MediaItem> items, SlotList spilled, MediaSpill spill, int flushedAlbums, UserSession session) {
+            this.items = items;
+            this.spilled = spilled;
+            this.spill = spill;
+            this.flushedAlbums = flushedAlbums;
+            this.session = session;
+        }
+
+        public int size() {
+            return items.size() + spilled.size();
+        }
+
+        /**
+         * Mídias das posições [from, to) do lote, lendo e liberando as transbordadas
+         */
+        public List<MediaItem> read(int from, int to) {
+            List<MediaItem> read = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                if (i < items.size()) {
+                    read.add(items.get(i));
+                } else {
+                    int slot = spilled.get(i - items.size());
+                    read.add(spill.read(slot));
+                    spill.free(slot);
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Libera as posições [from, to) sem lê-las (ex.: sobra que não forma álbum)
+         */
+        public void release(int from, int to) {
+            for (int i = Math.max(from, items.size()); i < to; i++) {
+                spill.free(spilled.get(i - items.size()));
+            }
+        }
+
+        /**
+         * Álbuns do mesmo lote já enviados antes, enquanto as mídias ainda chegavam
+         */
+        public int getFlushedAlbums() {
+            return flushedAlbums;
+        }
+
+        /**
+         * Sessão de onde o lote foi retirado, que pode já ter expirado e sido substituída
+         */
+        public UserSession getSession() {
+            return session;
+        }
+    }
+
+    /**
+     * Lista imutável das posições das mídias transbordadas, em blocos: acrescentar copia
+     * só o último bloco e o array de referências, e os blocos cheios são compartilhados
+     * entre os estados da sessão
+     */
+    static final class SlotList {
+        static final SlotList EMPTY = new SlotList(new int[0][], 0);
+        private static final int CHUNK = 256;
+
+        private final int[][] chunks;
+        private final int size;
+
+        private SlotList(int[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int get(int index) {
+            return chunks[index / CHUNK][index % CHUNK];
+        }
+
+        SlotList append(int slot) {
+            int offset = size % CHUNK;
+            int[][] next;
+            if (offset == 0) {
+                next = Arrays.copyOf(chunks, chunks.length + 1);
+                next[chunks.length] = new int[]{slot};
+            } else {
+                next = chunks.clone();
+                int[] last = Arrays.copyOf(chunks[chunks.length - 1], offset + 1);
+                last[offset] = slot;
+                next[next.length - 1] = last;
+            }
+            return new SlotList(next, size + 1);
+        }
+
+        SlotList slice(int from, int to) {
+            if (from == 0 && to == size) {
+                return this;
+            }
+            int count = to - from;
+            if (count == 0) {
+                return EMPTY;
+            }
+            int[][] next = new int[(count + CHUNK - 1) / CHUNK][];
+            for (int c = 0; c < next.length; c++) {
+                int[] chunk = new int[Math.min(CHUNK, count - c * CHUNK)];
+                for (int i = 0; i < chunk.length; i++) {
+                    chunk[i] = get(from + c * CHUNK + i);
+                }
+                next[c] = chunk;
+            }
+            return new SlotList(next, count);
+        }
+    }
+
+    /**
+     * Estado imutável da sessão num instante; toda mudança cria um novo
+     */
+    private static final class Snapshot {
+        final List<MediaItem> pendingMedia;
+        final SlotList spilled;          // Mídias pendentes fora do heap, depois das de pendingMedia
+        final Album lastAlbum;
+        final List<MediaItem> lastBatch; // Mídias do último lote em heap, que pode ter gerado vários álbuns
+        final int flushedAlbums;         // Álbuns já enviados do lote em andamento, antes do fim do debounce
+        final SessionState state;
+        final boolean mediaLimitNotified; // Usuário já foi avisado do limite de mídias pendentes
+        final long lastActivityMillis;
+        final boolean closed;
+
+        Snapshot(List<MediaItem> pendingMedia, SlotList spilled, Album lastAlbum, List<MediaItem> lastBatch,
+                 int flushedAlbums, SessionState state, boolean mediaLimitNotified, long lastActivityMillis,
+                 boolean closed) {
+            this.pendingMedia = pendingMedia;
+            this.spilled = spilled;
+            this.lastAlbum = lastAlbum;
+            this.lastBatch = lastBatch;
+            this.flushedAlbums = flushedAlbums;
+            this.state = state;
+            this.mediaLimitNotified = mediaLimitNotified;
+            this.lastActivityMillis = lastActivityMillis;
+            this.closed = closed;
+        }
+
+        int pendingCount() {
+            return pendingMedia.size() + spilled.size();
+        }
+
+        Snapshot withPendingMedia(List<MediaItem> pendingMedia, SlotList spilled, boolean mediaLimitNotified) {
+            return new Snapshot(pendingMedia, spilled, lastAlbum, lastBatch, flushedAlbums, state,
+                    mediaLimitNotified, lastActivityMillis, closed);
+        }
+
+        Snapshot withBatch(List<MediaItem> pendingMedia, SlotList spilled, List<MediaItem> lastBatch,
+                           int flushedAlbums) {
+            return new Snapshot(pendingMedia, spilled, lastAlbum, lastBatch, flushedAlbums, state,
+                    pendingMedia.size() + spilled.size() < pendingCount() ? false : mediaLimitNotified,
+                    lastActivityMillis, closed);
+        }
+
+        Snapshot withState(SessionState next, long nowMillis) {
+            if (!state.canMoveTo(next)) {
+                throw new IllegalStateException("Transição inválida de sessão: " + state + " -> " + next);
+            }
+            return new Snapshot(pendingMedia, spilled, lastAlbum, lastBatch, flushedAlbums, next,
+                    mediaLimitNotified, nowMillis, closed);
+        }
+
+        Snapshot withLastAlbum(Album album, long nowMillis) {
+            return new Snapshot(pendingMedia, spilled, album, lastBatch, flushedAlbums, state,
+                    mediaLimitNotified, lastActivityMillis, closed)
+                    .withState(SessionState.WAITING_FOR_CAPTION, nowMillis);
+        }
+
+        Snapshot withLastActivity(long nowMillis) {
+            return new Snapshot(pendingMedia, spilled, lastAlbum, lastBatch, flushedAlbums, state,
+                    mediaLimitNotified, nowMillis, closed);
+        }
+
+        Snapshot withMediaLimitNotified(boolean notified) {
+            return new Snapshot(pendingMedia, spilled, lastAlbum, lastBatch, flushedAlbums, state,
+                    notified, lastActivityMillis, closed);
+        }
+
+        Snapshot asClosed() {
+            return new Snapshot(pendingMedia, spilled, lastAlbum, lastBatch, flushedAlbums, state,
+                    mediaLimitNotified, lastActivityMillis, true);
+        }
     }
 
     public UserSession(long chatId) {
+        this(chatId, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock fonte de tempo da atividade e da expiração da sessão
+     */
+    public UserSession(long chatId, Clock clock) {
+        this(chatId, clock, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param spill          armazenamento das mídias pendentes além de {@code heapMediaLimit};
+     *                       null mantém todas no heap
+     * @param heapMediaLimit mídias pendentes mantidas no heap; limita também o último lote
+     *                       guardado para a prévia
+     */
+    public UserSession(long chatId, Clock clock, MediaSpill spill, int heapMediaLimit) {
         this.chatId = chatId;
-        this.pendingMedia = new ArrayList<>();
-        this.lastActivity = LocalDateTime.now();
-        this.state = SessionState.IDLE;
+        this.clock = clock;
+        this.spill = spill;
+        this.heapMediaLimit = spill != null ? heapMediaLimit : Integer.MAX_VALUE;
+        this.snapshot = new AtomicReference<>(new Snapshot(Collections.<MediaItem>emptyList(), SlotList.EMPTY,
+                null, Collections.<MediaItem>emptyList(), 0, SessionState.IDLE, false, clock.millis(), false));
     }
 
     public long getChatId() {
         return chatId;
     }
 
+    /**
+     * Mídias pendentes no momento da chamada, incluindo as transbordadas, que são lidas do
+     * armazenamento. Só para quando a sessão está parada (ex.: gravação no desligamento):
+     * um lote retirado ao mesmo tempo libera os registros que estão sendo lidos.
+     */
     public List<MediaItem> getPendingMedia() {
-        return Collections.unmodifiableList(pendingMedia);
+        Snapshot current = snapshot.get();
+        if (current.spilled.isEmpty()) {
+            return current.pendingMedia;
+        }
+        List<MediaItem> pending = new ArrayList<>(current.pendingCount());
+        pending.addAll(current.pendingMedia);
+        for (int i = 0; i < current.spilled.size(); i++) {
+            pending.add(spill.read(current.spilled.get(i)));
+        }
+        return Collections.unmodifiableList(pending);
+    }
+
+    public int getPendingMediaCount() {
+        return snapshot.get().pendingCount();
     }
 
+    /**
+     * Acrescenta a mídia sem limite de pendências (ex.: mídias restauradas na inicialização)
+     */
     public void addMedia(MediaItem media) {
-        if (pendingMedia == null) {
-            pendingMedia = new ArrayList<>();
+        addMedia(media, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Acrescenta a mídia se ainda houver espaço; a verificação e o acréscimo são atômicos
+     * @param maxPendingMedia limite de mídias pendentes da sessão
+     */
+    public AddResult addMedia(MediaItem media, int maxPendingMedia) {
+        // Gravada no armazenamento uma única vez, mesmo que o compare-and-set se repita
+        int slot = -1;
+        boolean spillTried = false;
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.closed || current.pendingCount() >= maxPendingMedia) {
+                if (slot >= 0) {
+                    spill.free(slot);
+                }
+                return current.closed ? AddResult.CLOSED : AddResult.LIMIT_REACHED;
+            }
+
+            if (!spillTried && spill != null
+                    && (current.pendingMedia.size() >= heapMediaLimit || !current.spilled.isEmpty())) {
+                slot = spill.write(media);
+                spillTried = true;
+            }
+
+            Snapshot next;
+            if (slot >= 0) {
+                next = current.withPendingMedia(current.pendingMedia, current.spilled.append(slot),
+                        current.mediaLimitNotified);
+            } else {
+                List<MediaItem> pending = new ArrayList<>(current.pendingMedia.size() + 1);
+                pending.addAll(current.pendingMedia);
+                pending.add(media);
+                next = current.withPendingMedia(Collections.unmodifiableList(pending), current.spilled,
+                        current.mediaLimitNotified);
+            }
+            next = next.withState(SessionState.COLLECTING_MEDIA, clock.millis());
+            if (snapshot.compareAndSet(current, next)) {
+                return AddResult.ADDED;
+            }
         }
-        pendingMedia.add(media);
-        setState(SessionState.COLLECTING_MEDIA);
-        updateLastActivity();
     }
 
+    /**
+     * Descarta as mídias pendentes e libera os registros transbordados
+     */
     public void clearPendingMedia() {
-        if (pendingMedia != null) {
-            pendingMedia.clear();
+        while (true) {
+            Snapshot current = snapshot.get();
+            Snapshot next = current.withPendingMedia(Collections.<MediaItem>emptyList(), SlotList.EMPTY, false);
+            if (snapshot.compareAndSet(current, next)) {
+                for (int i = 0; i < current.spilled.size(); i++) {
+                    spill.free(current.spilled.get(i));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retira os álbuns completos das primeiras mídias pendentes, enquanto o lote ainda
+     * está chegando, e os soma ao lote em andamento
+     * @param albumSize quantidade de mídias por álbum
+     * @param maxAlbums máximo de álbuns a retirar
+     * @return mídias retiradas, em múltiplos de {@code albumSize}; null se não houver álbum completo
+     */
+    public Batch takeFullAlbums(int albumSize, int maxAlbums) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            int albums = Math.min(current.pendingCount() / albumSize, maxAlbums);
+            if (albums <= 0) {
+                return null;
+            }
+
+            int count = albums * albumSize;
+            int fromHeap = Math.min(count, current.pendingMedia.size());
+            List<MediaItem> taken = Collections.unmodifiableList(
+                    new ArrayList<>(current.pendingMedia.subList(0, fromHeap)));
+            List<MediaItem> remaining = Collections.unmodifiableList(
+                    new ArrayList<>(current.pendingMedia.subList(fromHeap, current.pendingMedia.size())));
+            SlotList takenSpilled = current.spilled.slice(0, count - fromHeap);
+            SlotList remainingSpilled = current.spilled.slice(count - fromHeap, current.spilled.size());
+            List<MediaItem> batch = concat(current.flushedAlbums == 0 ? Collections.<MediaItem>emptyList()
+                    : current.lastBatch, taken, heapMediaLimit);
+            Snapshot next = current.withBatch(remaining, remainingSpilled, batch, current.flushedAlbums + albums);
+            if (snapshot.compareAndSet(current, next)) {
+                return new Batch(taken, takenSpilled, spill, 0, this);
+            }
+        }
+    }
+
+    /**
+     * Retira todas as mídias pendentes e encerra o lote em andamento
+     * @param minItems mínimo de mídias para retirar; com menos, nada muda
+     * @return o lote retirado, ou null se houver menos de {@code minItems} mídias
+     */
+    public Batch drainBatch(int minItems) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.pendingCount() < minItems) {
+                return null;
+            }
+
+            List<MediaItem> items = current.pendingMedia;
+            List<MediaItem> batch = concat(current.flushedAlbums == 0 ? Collections.<MediaItem>emptyList()
+                    : current.lastBatch, items, heapMediaLimit);
+            Snapshot next = current.withBatch(Collections.<MediaItem>emptyList(), SlotList.EMPTY, batch, 0);
+            if (snapshot.compareAndSet(current, next)) {
+                return new Batch(items, current.spilled, spill, current.flushedAlbums, this);
+            }
+        }
+    }
+
+    /**
+     * Retira a sobra de um lote que já teve álbuns enviados antecipadamente e encerra o lote
+     * @param maxItems máximo de mídias que ainda contam como sobra
+     * @return a sobra, ou null se nenhum álbum do lote saiu antes ou houver mais de
+     *         {@code maxItems} mídias pendentes
+     */
+    public Batch takeLeftover(int maxItems) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.flushedAlbums == 0 || current.pendingCount() > maxItems) {
+                return null;
+            }
+            Snapshot next = current.withBatch(Collections.<MediaItem>emptyList(), SlotList.EMPTY,
+                    current.lastBatch, 0);
+            if (snapshot.compareAndSet(current, next)) {
+                return new Batch(current.pendingMedia, current.spilled, spill, current.flushedAlbums, this);
+            }
+        }
+    }
+
+    /**
+     * Encerra o lote em andamento sem retirar mídias (ex.: sobrou uma só)
+     * @return quantidade de álbuns do lote enviados antecipadamente
+     */
+    public int completeBatch() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.flushedAlbums == 0) {
+                return 0;
+            }
+            Snapshot next = current.withBatch(current.pendingMedia, current.spilled, current.lastBatch, 0);
+            if (snapshot.compareAndSet(current, next)) {
+                return current.flushedAlbums;
+            }
+        }
+    }
+
+    /**
+     * Junta as duas listas, até {@code limit} mídias
+     */
+    private static List<MediaItem> concat(List<MediaItem> first, List<MediaItem> second, int limit) {
+        if (first.isEmpty() && second.size() <= limit) {
+            return second;
+        }
+        if (first.size() >= limit) {
+            return first;
+        }
+        int count = Math.min(limit, first.size() + second.size());
+        List<MediaItem> joined = new ArrayList<>(count);
+        joined.addAll(first);
+        joined.addAll(second.subList(0, count - first.size()));
+        return Collections.unmodifiableList(joined);
+    }
+
+    public boolean isMediaLimitNotified() {
+        return snapshot.get().mediaLimitNotified;
+    }
+
+    public void setMediaLimitNotified(boolean mediaLimitNotified) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.mediaLimitNotified == mediaLimitNotified
+                    || snapshot.compareAndSet(current, current.withMediaLimitNotified(mediaLimitNotified))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marca o aviso de limite atingido
+     * @return true só para quem fez a marcação, que deve então avisar o usuário
+     */
+    public boolean markMediaLimitNotified() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.mediaLimitNotified) {
+                return false;
+            }
+            if (snapshot.compareAndSet(current, current.withMediaLimitNotified(true))) {
+                return true;
+            }
         }
     }
 
     public Album getLastAlbum() {
-        return lastAlbum;
+        return snapshot.get().lastAlbum;
     }
 
+    /**
+     * Guarda o álbum enviado e passa a esperar a legenda
+     * @throws IllegalStateException se a sessão não coletou as mídias do álbum (estado inicial)
+     */
     public void setLastAlbum(Album album) {
-        this.lastAlbum = album;
-        setState(SessionState.WAITING_FOR_CAPTION);
-        updateLastActivity();
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (snapshot.compareAndSet(current, current.withLastAlbum(album, clock.millis()))) {
+                return;
+            }
+        }
+    }
+
+    public List<MediaItem> getLastBatch() {
+        return snapshot.get().lastBatch;
+    }
+
+    public void setLastBatch(List<MediaItem> lastBatch) {
+        List<MediaItem> batch = Collections.unmodifiableList(new ArrayList<>(lastBatch));
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (snapshot.compareAndSet(current, current.withBatch(current.pendingMedia, current.spilled, batch, 0))) {
+                return;
+            }
+        }
     }
 
     public LocalDateTime getLastActivity() {
-        return lastActivity;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(snapshot.get().lastActivityMillis), clock.getZone());
     }
 
     public void updateLastActivity() {
-        this.lastActivity = LocalDateTime.now();
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (snapshot.compareAndSet(current, current.withLastActivity(clock.millis()))) {
+                return;
+            }
+        }
     }
 
     public SessionState getState() {
-        return state;
+        return snapshot.get().state;
     }
 
+    /**
+     * Muda o estado da sessão
+     * @throws IllegalStateException se a transição não for válida (ver {@link SessionState#canMoveTo})
+     */
     public void setState(SessionState state) {
-        this.state = state;
-        updateLastActivity();
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (snapshot.compareAndSet(current, current.withState(state, clock.millis()))) {
+                return;
+            }
+        }
     }
 
     public boolean hasEnoughMediaForAlbum() {
-        return pendingMedia != null && pendingMedia.size() >= 2;
+        return getPendingMediaCount() >= 2;
+    }
+
+    /**
+     * Tempo desde a última atividade, em milissegundos
+     */
+    public long getIdleMillis() {
+        return clock.millis() - snapshot.get().lastActivityMillis;
     }
 
     public boolean isExpired(int timeoutMinutes) {
-        return LocalDateTime.now().isAfter(lastActivity.plusMinutes(timeoutMinutes));
+        return isExpired(snapshot.get(), timeoutMinutes);
+    }
+
+    private boolean isExpired(Snapshot current, int timeoutMinutes) {
+        return clock.millis() - current.lastActivityMillis > TimeUnit.MINUTES.toMillis(timeoutMinutes);
+    }
+
+    /**
+     * Fecha a sessão se ela estiver expirada. A verificação e o fechamento são atômicos:
+     * uma mídia acrescentada no meio renova a atividade e mantém a sessão aberta, e depois
+     * de fechada nenhuma mídia é aceita (ver {@link AddResult#CLOSED})
+     * @return true se a sessão está fechada
+     */
+    public boolean closeIfExpired(int timeoutMinutes) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.closed) {
+                return true;
+            }
+            if (!isExpired(current, timeoutMinutes)) {
+                return false;
+            }
+            if (snapshot.compareAndSet(current, current.asClosed())) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return snapshot.get().closed;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,272 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+import org.telegram.model.Album;
+import org.telegram.model.MediaItem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exporta os arquivos de um álbum para um ZIP em disco.
+ *
+ * Vários arquivos são baixados em paralelo, cada um direto para um arquivo temporário,
+ * e copiados para o ZIP na ordem do álbum assim que ficam prontos. Os downloads passam
+ * por um conjunto fixo de buffers compartilhado entre as exportações; a cópia para o ZIP
+ * usa os buffers temporários do próprio NIO, de poucos KB e reaproveitados a cada bloco.
+ * Assim a memória usada não depende do tamanho do álbum.
+ */
+public class AlbumExporter {
+    private static final Logger logger = LoggerFactory.getLogger(AlbumExporter.class);
+    private static final String TEMP_DIR = "export-tmp";
+
+    private final MediaFileSource fileSource;
+    private final MetricsService metrics;
+    private final Path workDir;
+    private final ExecutorService downloadExecutor;
+    private final ExecutorService exportExecutor;
+    private final BlockingQueue<ByteBuffer> bufferPool;
+
+    public AlbumExporter(MediaFileSource fileSource, MetricsService metrics, Path stateDir) {
+        this.fileSource = fileSource;
+        this.metrics = metrics;
+        this.workDir = stateDir.resolve(TEMP_DIR);
+
+        // Orçamento fixo de memória: um buffer por download simultâneo
+        int concurrency = BotConfig.getExportConcurrency();
+        int bufferSize = BotConfig.getExportBufferKb() * 1024;
+        this.bufferPool = new ArrayBlockingQueue<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            bufferPool.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+
+        this.downloadExecutor = Executors.newFixedThreadPool(concurrency, namedDaemonThreads("export-download-"));
+        this.exportExecutor = Executors.newSingleThreadExecutor(namedDaemonThreads("export-zip-"));
+
+        metrics.registerGauge("export.buffers.available", bufferPool::size);
+    }
+
+    private static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Exporta o álbum sem bloquear quem chamou
+     * @return o caminho do ZIP gerado; quem chama é responsável por apagá-lo
+     */
+    public CompletableFuture<Path> exportAsync(Album album) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return export(album);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, exportExecutor);
+    }
+
+    /**
+     * Exporta o álbum para um ZIP no diretório de trabalho
+     */
+    public Path export(Album album) throws IOException {
+        Files.createDirectories(workDir);
+        Path zipFile = workDir.resolve("album_" + album.getAlbumId() + ".zip");
+        List<MediaItem> items = album.getMediaItems();
+
+        // Disparar todos os downloads; a concorrência é limitada pelo pool
+        List<CompletableFuture<Path>> downloads = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            MediaItem item = items.get(i);
+            Path tempFile = workDir.resolve(album.getAlbumId() + "_" + i + ".part");
+            downloads.add(CompletableFuture.supplyAsync(() -> download(item, tempFile), downloadExecutor));
+        }
+
+        long start = System.nanoTime();
+        int exported = 0;
+        try (FileChannel zipChannel = FileChannel.open(zipFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ZipOutputStream zip = new ZipOutputStream(Channels.newOutputStream(zipChannel))) {
+
+            // Fotos e vídeos já são comprimidos; apenas armazenar economiza CPU
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            WritableByteChannel zipOut = Channels.newChannel(new NonClosingOutputStream(zip));
+
+            for (int i = 0; i < items.size(); i++) {
+                Path tempFile;
+                try {
+                    tempFile = downloads.get(i).join();
+                } catch (CompletionException e) {
+                    metrics.increment("export.failed");
+                    logger.warn("Arquivo {} do álbum {} não foi exportado", items.get(i).getFileId(),
+                            album.getAlbumId(), e.getCause());
+                    continue;
+                }
+
+                try {
+                    zip.putNextEntry(new ZipEntry(String.format("%02d_%s", i + 1, entryName(items.get(i)))));
+                    copyToZip(tempFile, zipOut);
+                    zip.closeEntry();
+                    exported++;
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            cancelAndClean(downloads);
+            Files.deleteIfExists(zipFile);
+            throw e;
+        }
+
+        if (exported == 0) {
+            Files.deleteIfExists(zipFile);
+            throw new IOException("Nenhum arquivo do álbum " + album.getAlbumId() + " pôde ser exportado");
+        }
+
+        metrics.increment("export.albums");
+        logger.info("Álbum {} exportado com {} de {} arquivos em {} ms", album.getAlbumId(), exported,
+                items.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return zipFile;
+    }
+
+    /**
+     * Nome do arquivo dentro do ZIP. O nome original vem do usuário: fica só o último
+     * segmento, sem separadores de caminho, caracteres de controle nem "." e "..", para que
+     * nada seja extraído fora da pasta de destino; sem nome aproveitável, usa o padrão.
+     */
+    static String entryName(MediaItem item) {
+        String name = item.getFileName();
+        int separator = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+        name = name.substring(separator + 1);
+
+        StringBuilder safe = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            safe.append(Character.isISOControl(c) || c == ':' ? '_' : c);
+        }
+        String result = safe.toString().trim();
+        if (result.isEmpty() || result.equals(".") || result.equals("..")) {
+            return item.getDefaultFileName();
+        }
+        return result;
+    }
+
+    /**
+     * Baixa um arquivo para o disco usando um buffer emprestado do pool
+     */
+    private Path download(MediaItem item, Path tempFile) {
+        ByteBuffer buffer = null;
+        try (ReadableByteChannel source = fileSource.open(item.getFileId());
+             FileChannel target = FileChannel.open(tempFile,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer = bufferPool.take();
+            long bytes = 0;
+            while (source.read(buffer) >= 0) {
+                ((Buffer) buffer).flip();
+                while (buffer.hasRemaining()) {
+                    bytes += target.write(buffer);
+                }
+                ((Buffer) buffer).clear();
+            }
+            metrics.add("export.bytes", bytes);
+            return tempFile;
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deleteQuietly(tempFile);
+            throw new CompletionException(e);
+        } finally {
+            if (buffer != null) {
+                ((Buffer) buffer).clear();
+                bufferPool.add(buffer);
+            }
+        }
+    }
+
+    private void copyToZip(Path tempFile, WritableByteChannel zipOut) throws IOException {
+        try (FileChannel source = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = source.size();
+            while (position < size) {
+                position += source.transferTo(position, size - position, zipOut);
+            }
+        }
+    }
+
+    private void cancelAndClean(List<CompletableFuture<Path>> downloads) {
+        for (CompletableFuture<Path> download : downloads) {
+            download.thenAccept(AlbumExporter::deleteQuietly);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Não foi possível apagar o arquivo temporário {}", file, e);
+        }
+    }
+
+    /**
+     * Finaliza os pools de exportação
+     */
+    public void shutdown() {
+        exportExecutor.shutdownNow();
+        downloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Impede que o canal de cópia feche o ZIP ao ser descartado
+     */
+    private static final class NonClosingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+
+        NonClosingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            delegate.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
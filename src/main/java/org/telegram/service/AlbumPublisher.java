@@ -0,0 +1,173 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.bot.AlbumMakerBot;
+import org.telegram.config.BotConfig;
+import org.telegram.model.Album;
+import org.telegram.model.PublishReport;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publica um álbum já montado em vários chats e canais.
+ *
+ * A lista de InputMedia é montada uma única vez a partir dos fileIds conhecidos,
+ * então nenhum arquivo é reenviado; apenas o chat de destino muda entre os envios.
+ * Os envios rodam em um pool de tamanho configurável, o que limita a concorrência
+ * contra a API do Telegram, e cada um espera a sua vez no limite de chamadas do bot:
+ * uma publicação em muitos destinos sai espaçada, sem deixar dívida que segure os
+ * envios normais dos chats.
+ */
+public class AlbumPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(AlbumPublisher.class);
+
+    private final AlbumMakerBot bot;
+    private final FairScheduler.Tenant outboundScheduler;
+    private final MetricsService metrics;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param outboundScheduler filas do bot, cujo limite de chamadas espaça os envios
+     */
+    public AlbumPublisher(AlbumMakerBot bot, FairScheduler.Tenant outboundScheduler, MetricsService metrics) {
+        this.bot = bot;
+        this.outboundScheduler = outboundScheduler;
+        this.metrics = metrics;
+
+        int concurrency = BotConfig.getPublishConcurrency();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "publish-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        BotConfig.addChangeListener(this::applyConcurrency);
+        metrics.registerGauge("publish.queue", () -> executor.getQueue().size());
+    }
+
+    private void applyConcurrency() {
+        int concurrency = BotConfig.getPublishConcurrency();
+        if (concurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(concurrency);
+            executor.setCorePoolSize(concurrency);
+        } else {
+            executor.setCorePoolSize(concurrency);
+            executor.setMaximumPoolSize(concurrency);
+        }
+    }
+
+    /**
+     * Publica o álbum em todos os destinos, sem bloquear quem chamou
+     * @param targets chat IDs ou @usernames de canais
+     */
+    public CompletableFuture<PublishReport> publishAsync(Album album, List<String> targets) {
+        long start = System.nanoTime();
+
+        // Montar as mídias uma única vez; o Telegram reaproveita os arquivos pelos fileIds
+        List<InputMedia> inputMedia = InputMediaConverter.convert(album.getMediaItems(), album.getCaption());
+        if (inputMedia.size() < 2) {
+            CompletableFuture<PublishReport> failed = new CompletableFuture<>();
+            failed.completeExceptionally(
+                    new TelegramApiException("Número insuficiente de itens de mídia para publicar o álbum"));
+            return failed;
+        }
+
+        List<CompletableFuture<PublishReport.TargetResult>> futures = new ArrayList<>(targets.size());
+        for (String target : targets) {
+            futures.add(CompletableFuture.supplyAsync(() -> publishToTarget(target, inputMedia), executor));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<PublishReport.TargetResult> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<PublishReport.TargetResult> future : futures) {
+                        results.add(future.join());
+                    }
+
+                    PublishReport report = new PublishReport(album.getAlbumId(), results,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    logger.info("Publicação concluída: {}", report);
+                    return report;
+                });
+    }
+
+    /**
+     * Envia o grupo de mídia para um destino, respeitando uma vez o retry_after do Telegram
+     */
+    private PublishReport.TargetResult publishToTarget(String target, List<InputMedia> inputMedia) {
+        SendMediaGroup mediaGroup = new SendMediaGroup();
+        mediaGroup.setChatId(target);
+        mediaGroup.setMedias(inputMedia);
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<Message> sentMessages = outboundScheduler.callPaced(() -> bot.execute(mediaGroup));
+                metrics.increment("publish.sent");
+                Integer messageId = sentMessages != null && !sentMessages.isEmpty()
+                        ? sentMessages.get(0).getMessageId()
+                        : null;
+                return new PublishReport.TargetResult(target, true, messageId, null);
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (attempt == 1 && retryAfter != null && retryAfter <= BotConfig.getPublishMaxRetryAfterSeconds()) {
+                    logger.info("Limite de envio atingido para {}; nova tentativa em {} segundos", target, retryAfter);
+                    if (sleepSeconds(retryAfter)) {
+                        continue;
+                    }
+                }
+                return failure(target, e);
+            } catch (TelegramApiException e) {
+                return failure(target, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failure(target, new TelegramApiException("Publicação interrompida", e));
+            }
+        }
+    }
+
+    private PublishReport.TargetResult failure(String target, TelegramApiException e) {
+        metrics.increment("publish.failed");
+        logger.warn("Erro ao publicar álbum em {}: {}", target, e.getMessage());
+        return new PublishReport.TargetResult(target, false, null, e.getMessage());
+    }
+
+    private static boolean sleepSeconds(int seconds) {
+        try {
+            TimeUnit.SECONDS.sleep(seconds);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Finaliza o pool de publicação
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
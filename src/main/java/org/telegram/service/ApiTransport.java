@@ -0,0 +1,39 @@
+package org.telegram.service;
+
+import java.io.IOException;
+
+/**
+ * Transporte das chamadas JSON à Bot API.
+ *
+ * Permite trocar o cliente HTTP usado pelo bot sem mexer na serialização das chamadas,
+ * que continua a cargo de quem chama (a biblioteca do Telegram ou o
+ * {@link JsonRequestWriter}, nas chamadas mais frequentes).
+ */
+public interface ApiTransport {
+
+    /**
+     * Tipo da chamada, que determina o tempo limite aplicado
+     */
+    enum CallType {
+        TEXT,  // Mensagens, edições, exclusões
+        MEDIA  // Envio de grupos de mídia
+    }
+
+    /**
+     * Envia o corpo JSON ao endereço e devolve o corpo da resposta. Respostas de erro da
+     * Bot API (status 4xx/5xx) também são devolvidas, pois trazem a descrição do erro.
+     * @throws IOException em falhas de conexão ou de tempo limite
+     */
+    String post(String url, String jsonBody, CallType type) throws IOException;
+
+    /**
+     * Como {@link #post(String, String, CallType)}, com o corpo já codificado em UTF-8.
+     * Os bytes são enviados sem cópia, então o buffer só pode ser reutilizado no retorno.
+     */
+    String post(String url, byte[] jsonBody, int length, CallType type) throws IOException;
+
+    /**
+     * Fecha as conexões abertas
+     */
+    void shutdown();
+}
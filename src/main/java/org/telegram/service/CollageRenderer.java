@@ -0,0 +1,238 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+import org.telegram.model.MediaItem;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gera uma única imagem de prévia (contact sheet) com as fotos de um lote.
+ *
+ * A decodificação e a redução de cada foto rodam em paralelo num ForkJoinPool. Antes
+ * de decodificar, cada tarefa lê só o cabeçalho da imagem, escolhe uma subamostragem
+ * que já entregue algo próximo do tamanho do quadro e reserva a memória desses pixels
+ * num orçamento fixo; o restante espera. A espera é avisada ao pool como bloqueio
+ * gerenciado, para que ele crie threads de compensação em vez de ficar com todos os
+ * workers parados quando várias prévias disputam o orçamento. A imagem final é
+ * codificada uma única vez.
+ */
+public class CollageRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(CollageRenderer.class);
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final Color BACKGROUND = new Color(24, 24, 24);
+
+    private final MediaFileSource fileSource;
+    private final MetricsService metrics;
+    private final ForkJoinPool pool;
+    private final Semaphore pixelBudgetKb;
+    private final int budgetKb;
+
+    public CollageRenderer(MediaFileSource fileSource, MetricsService metrics) {
+        this.fileSource = fileSource;
+        this.metrics = metrics;
+        this.pool = new ForkJoinPool(BotConfig.getCollageParallelism());
+        this.budgetKb = BotConfig.getCollageMemoryBudgetMb() * 1024;
+        this.pixelBudgetKb = new Semaphore(budgetKb, true);
+
+        metrics.registerGauge("collage.budget.availableKb", pixelBudgetKb::availablePermits);
+    }
+
+    /**
+     * Monta a prévia sem bloquear quem chamou
+     */
+    public CompletableFuture<byte[]> renderAsync(List<MediaItem> mediaItems) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return render(mediaItems);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, pool);
+    }
+
+    /**
+     * Monta a prévia com as fotos da lista; outros tipos de mídia são ignorados
+     * @return a imagem JPEG codificada
+     */
+    public byte[] render(List<MediaItem> mediaItems) throws IOException {
+        List<MediaItem> photos = new ArrayList<>();
+        int maxItems = BotConfig.getCollageMaxItems();
+        for (MediaItem item : mediaItems) {
+            if (item.getType() == MediaItem.MediaType.PHOTO && photos.size() < maxItems) {
+                photos.add(item);
+            }
+        }
+        if (photos.isEmpty()) {
+            throw new IOException("Nenhuma foto disponível para a prévia");
+        }
+
+        long start = System.nanoTime();
+        int tileSize = BotConfig.getCollageTileSize();
+        int columns = (int) Math.ceil(Math.sqrt(photos.size()));
+        int rows = (photos.size() + columns - 1) / columns;
+
+        BufferedImage canvas = new BufferedImage(columns * tileSize, rows * tileSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = canvas.createGraphics();
+        try {
+            graphics.setColor(BACKGROUND);
+            graphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+            // Decodificar e reduzir em paralelo; cada quadro é copiado para a tela sob o lock dela
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(photos.size());
+            for (int i = 0; i < photos.size(); i++) {
+                MediaItem photo = photos.get(i);
+                int x = (i % columns) * tileSize;
+                int y = (i / columns) * tileSize;
+                tasks.add(pool.submit(() -> renderTile(photo, tileSize, canvas, graphics, x, y)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(canvas, "jpg", output);
+
+        metrics.increment("collage.rendered");
+        logger.info("Prévia com {} fotos gerada em {} ms", photos.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return output.toByteArray();
+    }
+
+    private void renderTile(MediaItem photo, int tileSize, BufferedImage canvas, Graphics2D graphics, int x, int y) {
+        BufferedImage tile;
+        try {
+            tile = decodeTile(photo, tileSize);
+        } catch (IOException e) {
+            metrics.increment("collage.failed");
+            logger.warn("Não foi possível incluir a foto {} na prévia", photo.getFileId(), e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        synchronized (canvas) {
+            graphics.drawImage(tile, x, y, null);
+        }
+    }
+
+    /**
+     * Decodifica uma foto já subamostrada e recorta o centro no tamanho do quadro
+     */
+    private BufferedImage decodeTile(MediaItem photo, int tileSize) throws IOException, InterruptedException {
+        try (ReadableByteChannel channel = fileSource.open(photo.getFileId());
+             InputStream input = Channels.newInputStream(channel);
+             ImageInputStream imageInput = ImageIO.createImageInputStream(input)) {
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                throw new IOException("Formato de imagem não reconhecido");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                // Subamostrar para que o menor lado fique próximo do quadro, sem ficar menor que ele
+                int subsampling = Math.max(1, Math.min(width, height) / tileSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                long decodedBytes = (long) ceilDiv(width, subsampling) * ceilDiv(height, subsampling) * BYTES_PER_PIXEL;
+                int permits = (int) Math.min(budgetKb, Math.max(1, decodedBytes / 1024));
+
+                acquireBudget(permits);
+                try {
+                    BufferedImage decoded = reader.read(0, param);
+                    return cropToTile(decoded, tileSize);
+                } finally {
+                    pixelBudgetKb.release(permits);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reserva memória do orçamento; fora do pool, é uma espera comum
+     */
+    private void acquireBudget(int permits) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            private boolean acquired;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!acquired) {
+                    pixelBudgetKb.acquire(permits);
+                    acquired = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!acquired) {
+                    acquired = pixelBudgetKb.tryAcquire(permits);
+                }
+                return acquired;
+            }
+        });
+    }
+
+    private static BufferedImage cropToTile(BufferedImage source, int tileSize) {
+        int side = Math.min(source.getWidth(), source.getHeight());
+        int sourceX = (source.getWidth() - side) / 2;
+        int sourceY = (source.getHeight() - side) / 2;
+
+        BufferedImage tile = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = tile.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, tileSize, tileSize,
+                    sourceX, sourceY, sourceX + side, sourceY + side, null);
+        } finally {
+            graphics.dispose();
+        }
+        return tile;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * Finaliza o pool de renderização
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,54 @@
+package org.telegram.service;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Agendador sobre um {@link ScheduledThreadPoolExecutor}, usando o relógio do sistema
+ */
+public class ExecutorTaskScheduler implements TaskScheduler {
+    private final ScheduledThreadPoolExecutor executor;
+
+    public ExecutorTaskScheduler(String threadNamePrefix, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads,
+                runnable -> new Thread(runnable, threadNamePrefix + "-" + threadCount.incrementAndGet()));
+        // Tarefas canceladas a cada nova mídia não devem se acumular na fila
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return executor.schedule(task, delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return executor.scheduleAtFixedRate(task, initialDelay, period, unit);
+    }
+
+    @Override
+    public int getPendingTasks() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void setThreads(int threads) {
+        executor.setCorePoolSize(threads);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Escalonador justo para o trabalho de saída (envio de álbuns, exclusões).
+ *
+ * Cada chat tem sua própria fila e os chats com trabalho pendente são atendidos em
+ * deficit round-robin: a cada volta um chat ganha créditos proporcionais ao seu peso e
+ * só executa tarefas enquanto tiver crédito para o custo delas (em chamadas à API).
+ * Assim, um usuário que envia centenas de mídias não atrasa os álbuns dos demais.
+ * As tarefas de um mesmo chat rodam uma de cada vez e na ordem em que foram enviadas.
+ *
+ * Os bots de um mesmo processo enviam pelo seu {@link Tenant}. O limite de chamadas de
+ * cada bot é aplicado aqui, e não com esperas dentro das tarefas: as filas de um bot sem
+ * fichas são puladas até a próxima ficha, e as threads seguem atendendo os outros bots.
+ */
+public class FairScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(FairScheduler.class);
+    private static final int QUANTUM = 1;
+    private static final int WAIT_SAMPLES_PER_CHAT = 128;
+    private static final int WAIT_SAMPLES_GLOBAL = 4096;
+    private static final int CHATS_IN_REPORT = 5;
+
+    private final MetricsService metrics;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final ArrayDeque<ChatQueue> activeChats = new ArrayDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final WaitTimeStats globalWaits = new WaitTimeStats(WAIT_SAMPLES_GLOBAL);
+    private final Map<Long, WaitTimeStats> chatWaits = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+    private int queuedTasks;
+    // Menor espera até a próxima ficha dos bots pulados na última escolha (com o lock)
+    private long throttledWaitNanos;
+    // Bot da tarefa em execução na thread de saída, cujas chamadas já foram descontadas
+    private static final ThreadLocal<Tenant> RUNNING_TENANT = new ThreadLocal<>();
+
+    private static final class Task {
+        final Runnable action;
+        final int cost;
+        final long enqueuedAt;
+
+        Task(Runnable action, int cost) {
+            this.action = action;
+            this.cost = cost;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private static final class ChatQueue {
+        final Tenant tenant;
+        final long chatId;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        int deficit;
+        boolean inRing;
+        boolean busy; // Uma tarefa deste chat está em execução
+
+        ChatQueue(Tenant tenant, long chatId) {
+            this.tenant = tenant;
+            this.chatId = chatId;
+        }
+    }
+
+    /**
+     * Chamada à API feita fora das filas (ver {@link Tenant#callPaced})
+     */
+    public interface PacedCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Filas de um bot no escalonador. O custo de cada tarefa é descontado do limite de
+     * chamadas do bot quando ela sai da fila.
+     */
+    public final class Tenant {
+        private final RateLimiter rateLimiter;
+        private final MetricsService metrics;
+        private final Map<Long, ChatQueue> queues = new HashMap<>(); // Com o lock do escalonador
+        private boolean throttled;
+
+        private Tenant(RateLimiter rateLimiter, MetricsService metrics) {
+            this.rateLimiter = rateLimiter;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Enfileira uma tarefa para o chat
+         * @param cost custo aproximado em chamadas à API
+         * @return false se o chat já atingiu sua cota de tarefas pendentes
+         */
+        public boolean submit(long chatId, int cost, Runnable action) {
+            return FairScheduler.this.submit(this, chatId, cost, action);
+        }
+
+        /**
+         * Quantidade de tarefas que o chat ainda pode enfileirar antes de atingir a cota
+         */
+        public int getRemainingQuota(long chatId) {
+            lock.lock();
+            try {
+                ChatQueue queue = queues.get(chatId);
+                int queued = queue != null ? queue.tasks.size() : 0;
+                return Math.max(0, BotConfig.getOutboundMaxQueuedPerChat() - queued);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Faz uma chamada na thread de quem chamou, fora das filas, depois de esperar a vez
+         * no limite de chamadas do bot; a chamada não é cobrada de novo. Para pools próprios
+         * que podem esperar (ex.: publicação em massa) sem prender as threads de saída.
+         */
+        public <T, E extends Exception> T callPaced(PacedCall<T, E> call) throws E, InterruptedException {
+            rateLimiter.acquire();
+            Tenant previous = RUNNING_TENANT.get();
+            RUNNING_TENANT.set(this);
+            try {
+                return call.call();
+            } finally {
+                RUNNING_TENANT.set(previous);
+            }
+        }
+
+        /**
+         * Indica se a thread atual executa uma tarefa deste bot; as chamadas feitas nela
+         * já foram descontadas do limite pelo custo da tarefa
+         */
+        public boolean isRunningTask() {
+            return RUNNING_TENANT.get() == this;
+        }
+    }
+
+    public FairScheduler(MetricsService metrics) {
+        this.metrics = metrics;
+
+        int threads = BotConfig.getOutboundThreads();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::workLoop, "outbound-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        metrics.registerGauge("outbound.queue", this::getQueuedTasks);
+        metrics.registerGauge("outbound.activeChats", this::getActiveChats);
+        metrics.registerGauge("outbound.wait.p95Ms", () -> globalWaits.percentiles(95)[0]);
+        metrics.addReporter(this::logWaitReport);
+    }
+
+    /**
+     * Registra um bot no escalonador
+     * @param rateLimiter limite de chamadas do bot
+     * @param metrics     métricas do bot
+     */
+    public Tenant addTenant(RateLimiter rateLimiter, MetricsService metrics) {
+        return new Tenant(rateLimiter, metrics);
+    }
+
+    private boolean submit(Tenant tenant, long chatId, int cost, Runnable action) {
+        if (workers.isEmpty()) {
+            return runInline(chatId, action);
+        }
+
+        lock.lock();
+        try {
+            if (!running) {
+                return false;
+            }
+
+            ChatQueue queue = tenant.queues.get(chatId);
+            if (queue == null) {
+                queue = new ChatQueue(tenant, chatId);
+                tenant.queues.put(chatId, queue);
+            }
+
+            if (queue.tasks.size() >= BotConfig.getOutboundMaxQueuedPerChat()) {
+                metrics.increment("outbound.rejected");
+                return false;
+            }
+
+            queue.tasks.addLast(new Task(action, Math.max(1, cost)));
+            queuedTasks++;
+            if (!queue.inRing) {
+                queue.inRing = true;
+                activeChats.addLast(queue);
+            }
+            workAvailable.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sem threads de saída: executar na thread de quem enviou. Não há fila, então
+     * também não há espera a registrar nem limite de chamadas a aplicar.
+     */
+    private boolean runInline(long chatId, Runnable action) {
+        if (!running) {
+            return false;
+        }
+        try {
+            action.run();
+        } catch (Exception e) {
+            logger.error("Erro em tarefa de saída para o chat ID: {}", chatId, e);
+        }
+        return true;
+    }
+
+    public long getQueuedTasks() {
+        lock.lock();
+        try {
+            return queuedTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long getActiveChats() {
+        lock.lock();
+        try {
+            return activeChats.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workLoop() {
+        while (true) {
+            ChatQueue queue;
+            Task task;
+
+            lock.lock();
+            try {
+                while ((queue = pickNextChat()) == null) {
+                    // Ao desligar, continuar até esvaziar as filas
+                    if (!running && queuedTasks == 0) {
+                        return;
+                    }
+                    // Com bots pulados pelo limite de chamadas, acordar na próxima ficha
+                    if (throttledWaitNanos > 0) {
+                        workAvailable.awaitNanos(throttledWaitNanos);
+                    } else {
+                        workAvailable.await();
+                    }
+                }
+                task = queue.tasks.pollFirst();
+                queue.deficit -= task.cost;
+                queue.busy = true;
+                queue.tenant.rateLimiter.consume(task.cost);
+                queuedTasks--;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            recordWait(queue.chatId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.enqueuedAt));
+            RUNNING_TENANT.set(queue.tenant);
+            try {
+                task.action.run();
+            } catch (Exception e) {
+                logger.error("Erro em tarefa de saída para o chat ID: {}", queue.chatId, e);
+            } finally {
+                RUNNING_TENANT.remove();
+                finish(queue);
+            }
+        }
+    }
+
+    /**
+     * Escolhe o próximo chat em deficit round-robin, pulando os chats ocupados e os dos
+     * bots sem fichas. Deve ser chamado com o lock.
+     */
+    private ChatQueue pickNextChat() {
+        long now = System.nanoTime();
+        int skips = 0;
+        throttledWaitNanos = 0;
+        while (!activeChats.isEmpty() && skips < activeChats.size()) {
+            ChatQueue queue = activeChats.peekFirst();
+
+            if (queue.tasks.isEmpty()) {
+                activeChats.pollFirst();
+                queue.inRing = false;
+                queue.deficit = 0;
+                if (!queue.busy) {
+                    queue.tenant.queues.remove(queue.chatId);
+                }
+                continue;
+            }
+
+            if (queue.busy) {
+                activeChats.addLast(activeChats.pollFirst());
+                skips++;
+                continue;
+            }
+
+            // Bot sem fichas: a vez passa sem gastar o crédito do chat
+            long delayNanos = queue.tenant.rateLimiter.getDelayNanos(now);
+            if (delayNanos > 0) {
+                if (!queue.tenant.throttled) {
+                    queue.tenant.throttled = true;
+                    queue.tenant.metrics.increment("outbound.throttled");
+                }
+                if (throttledWaitNanos == 0 || delayNanos < throttledWaitNanos) {
+                    throttledWaitNanos = delayNanos;
+                }
+                activeChats.addLast(activeChats.pollFirst());
+                skips++;
+                continue;
+            }
+            queue.tenant.throttled = false;
+
+            int cost = queue.tasks.peekFirst().cost;
+            if (queue.deficit < cost) {
+                // Nova volta: creditar o chat conforme o peso e passar a vez
+                queue.deficit += QUANTUM * weightOf(queue.chatId);
+                if (queue.deficit < cost) {
+                    activeChats.addLast(activeChats.pollFirst());
+                    continue;
+                }
+            }
+
+            // O chat continua na frente enquanto tiver crédito; senão vai para o fim da fila
+            if (queue.deficit - cost < QUANTUM) {
+                activeChats.addLast(activeChats.pollFirst());
+            }
+            return queue;
+        }
+        return null;
+    }
+
+    private void finish(ChatQueue queue) {
+        lock.lock();
+        try {
+            queue.busy = false;
+            if (queue.tasks.isEmpty() && !queue.inRing) {
+                queue.tenant.queues.remove(queue.chatId);
+            }
+            if (running) {
+                workAvailable.signal();
+            } else {
+                workAvailable.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int weightOf(long chatId) {
+        return BotConfig.getOutboundPremiumChats().contains(String.valueOf(chatId))
+                ? BotConfig.getOutboundPremiumWeight()
+                : 1;
+    }
+
+    private void recordWait(long chatId, long waitMillis) {
+        globalWaits.record(waitMillis);
+        chatWaits.computeIfAbsent(chatId, id -> new WaitTimeStats(WAIT_SAMPLES_PER_CHAT)).record(waitMillis);
+    }
+
+    /**
+     * Percentis (p50, p95, p99) de espera de um chat no último intervalo de relatório
+     */
+    public long[] getChatWaitPercentiles(long chatId) {
+        WaitTimeStats stats = chatWaits.get(chatId);
+        return stats != null ? stats.percentiles(50, 95, 99) : new long[3];
+    }
+
+    /**
+     * Registra os percentis de espera gerais e dos chats que mais esperaram, e reinicia
+     * as amostras por chat para o próximo intervalo
+     */
+    private void logWaitReport() {
+        long[] global = globalWaits.percentiles(50, 95, 99);
+        logger.info("Espera na fila de saída: p50={} ms, p95={} ms, p99={} ms", global[0], global[1], global[2]);
+
+        List<Map.Entry<Long, long[]>> perChat = new ArrayList<>();
+        for (Map.Entry<Long, WaitTimeStats> entry : chatWaits.entrySet()) {
+            perChat.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().percentiles(50, 95, 99)));
+        }
+        chatWaits.clear();
+
+        perChat.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        for (int i = 0; i < Math.min(CHATS_IN_REPORT, perChat.size()); i++) {
+            long[] values = perChat.get(i).getValue();
+            logger.info("Espera do chat ID {}: p50={} ms, p95={} ms, p99={} ms",
+                    perChat.get(i).getKey(), values[0], values[1], values[2]);
+        }
+    }
+
+    /**
+     * Para de aceitar tarefas e encerra as threads após esvaziar as filas
+     * @return true se todas as tarefas terminaram dentro do prazo
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lock();
+        try {
+            running = false;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        boolean finished = true;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished &= !worker.isAlive();
+        }
+        return finished && getQueuedTasks() == 0;
+    }
+}
@@ -0,0 +1,76 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.model.MediaItem;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaAnimation;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaDocument;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaVideo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversão de itens de mídia para o formato InputMedia do Telegram.
+ * Os itens já possuem fileId, então nada é reenviado ao servidor.
+ */
+public final class InputMediaConverter {
+    private static final Logger logger = LoggerFactory.getLogger(InputMediaConverter.class);
+
+    private InputMediaConverter() {
+    }
+
+    /**
+     * Converte uma lista de itens, descartando tipos não suportados
+     * @param caption legenda aplicada ao primeiro item, ou null
+     */
+    public static List<InputMedia> convert(List<MediaItem> mediaItems, String caption) {
+        List<InputMedia> inputMedia = new ArrayList<>(mediaItems.size());
+
+        // Converter cada item de mídia para o formato do Telegram
+        for (MediaItem item : mediaItems) {
+            InputMedia media = convert(item);
+            if (media != null) {
+                inputMedia.add(media);
+            }
+        }
+
+        if (caption != null && !inputMedia.isEmpty()) {
+            inputMedia.get(0).setCaption(caption);
+        }
+        return inputMedia;
+    }
+
+    /**
+     * Converte um MediaItem para o formato InputMedia do Telegram
+     */
+    public static InputMedia convert(MediaItem item) {
+        switch (item.getType()) {
+            case PHOTO:
+                InputMediaPhoto photo = new InputMediaPhoto();
+                photo.setMedia(item.getFileId());
+                return photo;
+
+            case VIDEO:
+                InputMediaVideo video = new InputMediaVideo();
+                video.setMedia(item.getFileId());
+                return video;
+
+            case ANIMATION:
+                InputMediaAnimation animation = new InputMediaAnimation();
+                animation.setMedia(item.getFileId());
+                return animation;
+
+            case DOCUMENT:
+                InputMediaDocument document = new InputMediaDocument();
+                document.setMedia(item.getFileId());
+                return document;
+
+            default:
+                logger.warn("Tipo de mídia não suportado: {}", item.getType());
+                return null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.telegram.service;
+
+import org.telegram.model.MediaItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Monta diretamente em bytes UTF-8 os corpos JSON das chamadas mais frequentes à Bot API
+ * ({@code sendMediaGroup} e {@code editMessageCaption}), a partir dos dados de
+ * {@link MediaItem}.
+ *
+ * O caminho da biblioteca cria um objeto InputMedia por item e serializa tudo por
+ * reflexão a cada envio; aqui nada é criado além do próprio buffer, que é reaproveitado de
+ * uma chamada para a outra. Cada instância deve ser usada por uma só thread, e o conteúdo
+ * vale até a próxima montagem.
+ */
+public final class JsonRequestWriter {
+    private static final int INITIAL_CAPACITY = 2048;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    /**
+     * Monta o corpo de um {@code sendMediaGroup} com mídias já hospedadas no Telegram
+     * @param caption legenda aplicada ao primeiro item, ou null
+     */
+    public JsonRequestWriter sendMediaGroup(long chatId, List<MediaItem> mediaItems, String caption) {
+        length = 0;
+        writeAscii("{\"chat_id\":\"");
+        writeLong(chatId);
+        writeAscii("\",\"media\":[");
+        for (int i = 0; i < mediaItems.size(); i++) {
+            MediaItem item = mediaItems.get(i);
+            if (i > 0) {
+                writeByte(',');
+            }
+            writeAscii("{\"type\":\"");
+            writeAscii(typeName(item.getType()));
+            writeAscii("\",\"media\":");
+            writeString(item.getFileId());
+            if (i == 0 && caption != null) {
+                writeAscii(",\"caption\":");
+                writeString(caption);
+            }
+            writeByte('}');
+        }
+        writeAscii("]}");
+        return this;
+    }
+
+    /**
+     * Monta o corpo de um {@code editMessageCaption}
+     */
+    public JsonRequestWriter editMessageCaption(long chatId, int messageId, String caption) {
+        length = 0;
+        writeAscii("{\"chat_id\":\"");
+        writeLong(chatId);
+        writeAscii("\",\"message_id\":");
+        writeLong(messageId);
+        if (caption != null) {
+            writeAscii(",\"caption\":");
+            writeString(caption);
+        }
+        writeByte('}');
+        return this;
+    }
+
+    /**
+     * Buffer com o corpo montado; só os primeiros {@link #length()} bytes são válidos
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    private static String typeName(MediaItem.MediaType type) {
+        switch (type) {
+            case PHOTO:
+                return "photo";
+            case VIDEO:
+                return "video";
+            case ANIMATION:
+                return "animation";
+            case DOCUMENT:
+                return "document";
+            default:
+                throw new IllegalArgumentException("Tipo de mídia não suportado: " + type);
+        }
+    }
+
+    private void writeString(String value) {
+        ensureCapacity(value.length() * 6 + 2);
+        byte[] out = buffer;
+        int pos = length;
+        out[pos++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    out[pos++] = '\\';
+                }
+                out[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                out[pos++] = '\\';
+                out[pos++] = 'u';
+                out[pos++] = '0';
+                out[pos++] = '0';
+                out[pos++] = HEX[c >> 4];
+                out[pos++] = HEX[c & 0xF];
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate isolado: o mesmo substituto do encoder UTF-8 do Java
+                out[pos++] = '?';
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        out[pos++] = '"';
+        length = pos;
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            if (value == Long.MIN_VALUE) {
+                writeAscii("9223372036854775808");
+                return;
+            }
+            value = -value;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        // Os dígitos saíram do menos para o mais significativo
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.telegram.service;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Origem do conteúdo dos arquivos de mídia, identificados pelo fileId do Telegram.
+ * Permite trocar o servidor do Telegram por um servidor ou diretório local em testes.
+ */
+public interface MediaFileSource {
+
+    /**
+     * Abre um canal de leitura para o conteúdo do arquivo. Quem chama fecha o canal.
+     */
+    ReadableByteChannel open(String fileId) throws IOException;
+}
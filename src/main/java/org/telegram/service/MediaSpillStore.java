@@ -0,0 +1,218 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.model.MediaItem;
+import org.telegram.model.MediaSpill;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Registros de tamanho fixo, num arquivo mapeado em memória, para as mídias pendentes que
+ * passam do limite em heap das sessões. Um usuário que encaminha milhares de mídias de uma
+ * vez ocupa páginas do arquivo, que o sistema operacional grava ou descarta quando
+ * precisar, em vez de milhares de objetos que o coletor de lixo percorre a cada ciclo.
+ *
+ * O arquivo é temporário: é truncado na abertura e apagado no fechamento, pois as mídias
+ * pendentes no desligamento vão para o {@link PendingMediaStore}. Ele cresce em regiões
+ * de {@link #REGION_RECORDS} registros, mapeadas sob demanda, e os registros liberados
+ * são reaproveitados antes de mapear uma região nova.
+ *
+ * Registro ({@link #RECORD_BYTES} bytes): tipo da mídia + 1 (0 = livre), indicador de
+ * messageId presente, messageId, instante de recebimento (ms), tamanhos do fileId e do
+ * nome original do arquivo e, em seguida, os dois textos em UTF-8. Sem nome original o
+ * registro guarda um nome vazio, e a mídia lida volta a gerar o padrão sob demanda.
+ *
+ * Registros distintos podem ser gravados e lidos por threads diferentes ao mesmo tempo; a
+ * posição gravada chega a quem lê pela própria sessão, que a publica por compare-and-set.
+ */
+public class MediaSpillStore implements MediaSpill {
+    private static final Logger logger = LoggerFactory.getLogger(MediaSpillStore.class);
+
+    public static final int RECORD_BYTES = 1024;
+    public static final int REGION_RECORDS = 1024;
+
+    private static final long REGION_BYTES = (long) REGION_RECORDS * RECORD_BYTES;
+    private static final int TYPE = 0;
+    private static final int HAS_MESSAGE_ID = 1;
+    private static final int MESSAGE_ID = 2;
+    private static final int RECEIVED_AT = 6;
+    private static final int FILE_ID_LENGTH = 14;
+    private static final int FILE_NAME_LENGTH = 16;
+    private static final int DATA = 18;
+    private static final MediaItem.MediaType[] TYPES = MediaItem.MediaType.values();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MetricsService metrics;
+    private final int maxRecords;
+
+    // Regiões mapeadas: o array é trocado por inteiro ao crescer, sob a trava do store
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    // Alocação (protegida pela trava do store)
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+    private int nextSlot;
+    private int recordsInUse;
+    private boolean closed;
+
+    /**
+     * Cria (ou trunca) o arquivo de transbordo
+     * @param maxBytes tamanho máximo do arquivo; cheio, as novas mídias ficam no heap
+     */
+    public MediaSpillStore(Path file, long maxBytes, MetricsService metrics) throws IOException {
+        this.file = file;
+        this.metrics = metrics;
+        this.maxRecords = (int) Math.min(Integer.MAX_VALUE, Math.max(REGION_BYTES, maxBytes) / RECORD_BYTES);
+
+        Files.createDirectories(file.getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        metrics.registerGauge("media.spill.records", this::getRecordsInUse);
+        metrics.registerGauge("media.spill.mappedBytes", () -> regions.length * REGION_BYTES);
+    }
+
+    @Override
+    public int write(MediaItem item) {
+        byte[] fileId = item.getFileId().getBytes(StandardCharsets.UTF_8);
+        String originalName = item.getOriginalFileName();
+        byte[] fileName = originalName != null ? originalName.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (DATA + fileId.length + fileName.length > RECORD_BYTES) {
+            metrics.increment("media.spill.rejected");
+            return -1;
+        }
+
+        int slot = allocate();
+        if (slot < 0) {
+            metrics.increment("media.spill.rejected");
+            return -1;
+        }
+
+        MappedByteBuffer region = regions[slot / REGION_RECORDS];
+        int base = (slot % REGION_RECORDS) * RECORD_BYTES;
+        Integer messageId = item.getMessageId();
+        region.put(base + HAS_MESSAGE_ID, (byte) (messageId != null ? 1 : 0));
+        region.putInt(base + MESSAGE_ID, messageId != null ? messageId : 0);
+        region.putLong(base + RECEIVED_AT, item.getReceivedAtMillis());
+        region.putShort(base + FILE_ID_LENGTH, (short) fileId.length);
+        region.putShort(base + FILE_NAME_LENGTH, (short) fileName.length);
+        int pos = base + DATA;
+        for (byte b : fileId) {
+            region.put(pos++, b);
+        }
+        for (byte b : fileName) {
+            region.put(pos++, b);
+        }
+        // O tipo por último: só então o registro passa a valer
+        region.put(base + TYPE, (byte) (item.getType().ordinal() + 1));
+
+        metrics.increment("media.spill.written");
+        return slot;
+    }
+
+    @Override
+    public MediaItem read(int slot) {
+        MappedByteBuffer region = regions[slot / REGION_RECORDS];
+        int base = (slot % REGION_RECORDS) * RECORD_BYTES;
+        int type = region.get(base + TYPE);
+        if (type == 0) {
+            throw new IllegalStateException("Registro de transbordo livre: " + slot);
+        }
+
+        Integer messageId = region.get(base + HAS_MESSAGE_ID) != 0 ? region.getInt(base + MESSAGE_ID) : null;
+        long receivedAtMillis = region.getLong(base + RECEIVED_AT);
+        byte[] fileId = new byte[region.getShort(base + FILE_ID_LENGTH)];
+        byte[] fileName = new byte[region.getShort(base + FILE_NAME_LENGTH)];
+        int pos = base + DATA;
+        for (int i = 0; i < fileId.length; i++) {
+            fileId[i] = region.get(pos++);
+        }
+        for (int i = 0; i < fileName.length; i++) {
+            fileName[i] = region.get(pos++);
+        }
+
+        metrics.increment("media.spill.read");
+        return new MediaItem(new String(fileId, StandardCharsets.UTF_8), new String(fileName, StandardCharsets.UTF_8),
+                TYPES[type - 1], messageId, receivedAtMillis);
+    }
+
+    @Override
+    public void free(int slot) {
+        regions[slot / REGION_RECORDS].put((slot % REGION_RECORDS) * RECORD_BYTES + TYPE, (byte) 0);
+        synchronized (this) {
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            recordsInUse--;
+        }
+    }
+
+    /**
+     * Reserva um registro, reaproveitando os liberados e mapeando uma região nova quando
+     * as atuais estão cheias
+     * @return posição do registro, ou -1 se o arquivo atingiu o tamanho máximo
+     */
+    private synchronized int allocate() {
+        if (closed) {
+            return -1;
+        }
+        if (freeCount > 0) {
+            recordsInUse++;
+            return freeSlots[--freeCount];
+        }
+        if (nextSlot >= maxRecords) {
+            return -1;
+        }
+        if (nextSlot == regions.length * REGION_RECORDS) {
+            try {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE,
+                        regions.length * REGION_BYTES, REGION_BYTES);
+                MappedByteBuffer[] grown = Arrays.copyOf(regions, regions.length + 1);
+                grown[regions.length] = region;
+                regions = grown;
+            } catch (IOException e) {
+                logger.warn("Não foi possível ampliar o arquivo de transbordo {}", file, e);
+                return -1;
+            }
+        }
+        recordsInUse++;
+        return nextSlot++;
+    }
+
+    /**
+     * Registros ocupados por mídias pendentes
+     */
+    public synchronized int getRecordsInUse() {
+        return recordsInUse;
+    }
+
+    /**
+     * Fecha e apaga o arquivo; chamar só depois de gravadas as mídias pendentes.
+     *
+     * O Java não desfaz um mapeamento explicitamente: o store solta as regiões, que o
+     * coletor de lixo desmapeia quando as recolher. Até lá (no pior caso, até o fim da JVM)
+     * o arquivo já apagado ainda ocupa espaço em disco; em sistemas que não apagam arquivos
+     * mapeados, a exclusão falha e fica só o aviso no log.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            regions = new MappedByteBuffer[0];
+        }
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Não foi possível apagar o arquivo de transbordo {}", file, e);
+        }
+    }
+}
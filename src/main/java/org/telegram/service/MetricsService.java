@@ -0,0 +1,144 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Serviço simples de métricas: contadores e medidores reportados periodicamente no log.
+ *
+ * Visões obtidas com {@link #forTenant(String)} gravam no mesmo registro, com os nomes
+ * prefixados por {@code tenant.<id>.}, e compartilham a thread de relatório.
+ */
+public class MetricsService {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsService.class);
+    private static final int REPORT_INTERVAL_SECONDS = 60;
+
+    private final Map<String, LongAdder> counters;
+    private final Map<String, LongSupplier> gauges;
+    private final List<Runnable> reporters;
+    private final ScheduledExecutorService scheduler;
+    private final String prefix;
+    private final Map<String, String> prefixedNames;
+
+    public MetricsService() {
+        this.counters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        this.reporters = new CopyOnWriteArrayList<>();
+        this.prefix = "";
+        this.prefixedNames = null;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Reportar as métricas periodicamente
+        scheduler.scheduleAtFixedRate(
+                this::logReport,
+                REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private MetricsService(MetricsService root, String prefix) {
+        this.counters = root.counters;
+        this.gauges = root.gauges;
+        this.reporters = root.reporters;
+        this.scheduler = null;
+        this.prefix = prefix;
+        this.prefixedNames = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Visão das métricas de um inquilino (bot hospedado no mesmo processo)
+     */
+    public MetricsService forTenant(String tenantId) {
+        return new MetricsService(this, prefix + "tenant." + tenantId + ".");
+    }
+
+    private String name(String name) {
+        // Os nomes prefixados são montados uma única vez, pois os contadores estão no caminho quente
+        return prefixedNames == null ? name : prefixedNames.computeIfAbsent(name, key -> prefix + key);
+    }
+
+    /**
+     * Incrementa um contador em uma unidade
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Soma um valor a um contador
+     */
+    public void add(String name, long value) {
+        counters.computeIfAbsent(name(name), key -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Obtém o valor atual de um contador
+     */
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name(name));
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Registra um medidor, avaliado a cada relatório
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name(name), gauge);
+    }
+
+    /**
+     * Registra uma ação executada junto com cada relatório, para métricas que
+     * não cabem num único número (percentis por chat, por exemplo)
+     */
+    public void addReporter(Runnable reporter) {
+        reporters.add(reporter);
+    }
+
+    /**
+     * Gera uma fotografia ordenada de todos os contadores e medidores
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    /**
+     * Registra no log o estado atual das métricas
+     */
+    public void logReport() {
+        try {
+            logger.info("Métricas: {}", snapshot());
+            for (Runnable reporter : reporters) {
+                reporter.run();
+            }
+        } catch (Exception e) {
+            logger.warn("Erro ao gerar relatório de métricas", e);
+        }
+    }
+
+    /**
+     * Finaliza o serviço de métricas (nas visões de inquilino, não faz nada)
+     */
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        logReport();
+    }
+}
@@ -0,0 +1,139 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.model.MediaItem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Guarda em disco as mídias que ainda aguardavam a criação de álbuns quando o bot foi
+ * desligado, para que a próxima instância as retome.
+ *
+ * O arquivo é binário e compacto (cabeçalho, e por chat o id seguido dos itens) e é
+ * gravado num temporário trocado atomicamente, como o checkpoint de atualizações.
+ * É lido uma única vez na inicialização e apagado em seguida.
+ */
+public class PendingMediaStore {
+    private static final Logger logger = LoggerFactory.getLogger(PendingMediaStore.class);
+    private static final String PENDING_FILE = "pending-media";
+    private static final int MAGIC = 0x414D5030; // "AMP0"
+    private static final int VERSION = 1;
+
+    private static final MediaItem.MediaType[] MEDIA_TYPES = MediaItem.MediaType.values();
+
+    private final Path pendingFile;
+
+    public PendingMediaStore(Path stateDir) {
+        this.pendingFile = stateDir.resolve(PENDING_FILE);
+    }
+
+    /**
+     * Grava as mídias pendentes de cada chat, substituindo o que houver no disco
+     * @return quantidade de mídias gravadas
+     */
+    public int save(Map<Long, List<MediaItem>> pendingByChat) throws IOException {
+        Files.createDirectories(pendingFile.getParent());
+        Path tempFile = pendingFile.resolveSibling(PENDING_FILE + ".tmp");
+
+        int items = 0;
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(pendingByChat.size());
+
+            for (Map.Entry<Long, List<MediaItem>> entry : pendingByChat.entrySet()) {
+                output.writeLong(entry.getKey());
+                output.writeInt(entry.getValue().size());
+                for (MediaItem item : entry.getValue()) {
+                    writeItem(output, item);
+                    items++;
+                }
+            }
+            output.flush();
+            channel.force(false);
+        }
+        Files.move(tempFile, pendingFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return items;
+    }
+
+    /**
+     * Lê e apaga as mídias gravadas pela instância anterior
+     * @return mídias por chat, na ordem de recebimento; vazio se não houver arquivo
+     */
+    public Map<Long, List<MediaItem>> takeAll() {
+        if (!Files.isRegularFile(pendingFile)) {
+            return Collections.emptyMap();
+        }
+
+        Map<Long, List<MediaItem>> pendingByChat = new LinkedHashMap<>();
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(pendingFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Formato desconhecido");
+            }
+
+            int chats = input.readInt();
+            for (int i = 0; i < chats; i++) {
+                long chatId = input.readLong();
+                int count = input.readInt();
+                List<MediaItem> items = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    items.add(readItem(input));
+                }
+                pendingByChat.put(chatId, items);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Mídias pendentes ilegíveis em {}; descartando", pendingFile, e);
+            pendingByChat.clear();
+        }
+
+        try {
+            Files.delete(pendingFile);
+        } catch (IOException e) {
+            logger.warn("Não foi possível apagar {}", pendingFile, e);
+        }
+        return pendingByChat;
+    }
+
+    private static void writeItem(DataOutputStream output, MediaItem item) throws IOException {
+        output.writeByte(item.getType().ordinal());
+        output.writeUTF(item.getFileId());
+        // Sem nome original grava vazio; a leitura volta a gerar o padrão sob demanda
+        String fileName = item.getOriginalFileName();
+        output.writeUTF(fileName != null ? fileName : "");
+        output.writeLong(item.getReceivedAtMillis());
+        Integer messageId = item.getMessageId();
+        output.writeBoolean(messageId != null);
+        if (messageId != null) {
+            output.writeInt(messageId);
+        }
+    }
+
+    private static MediaItem readItem(DataInputStream input) throws IOException {
+        MediaItem.MediaType type = MEDIA_TYPES[input.readUnsignedByte()];
+        String fileId = input.readUTF();
+        String fileName = input.readUTF();
+        long receivedAtMillis = input.readLong();
+        Integer messageId = input.readBoolean() ? input.readInt() : null;
+        return new MediaItem(fileId, fileName, type, messageId, receivedAtMillis);
+    }
+}
@@ -0,0 +1,178 @@
+package org.telegram.service;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transporte HTTP com pool de conexões persistentes para a Bot API.
+ *
+ * O cliente padrão da biblioteca usa o limite do Apache HttpClient de duas conexões por
+ * rota, e todas as chamadas vão para o mesmo host; aqui o limite é configurável e as
+ * conexões ficam abertas para reuso pelo tempo de keep-alive configurado. As chamadas de
+ * mídia têm um tempo limite próprio, maior que o das chamadas de texto.
+ *
+ * O transporte é compartilhado por todos os bots e sempre conecta direto à Bot API: não
+ * lê as opções de proxy do {@code DefaultBotOptions} (os bots usam as opções padrão, sem
+ * proxy). Para sair por um proxy, desligue o transporte com {@code transport.pooled=false}
+ * e configure o cliente da biblioteca. Respostas de erro da API (ex.: 429) voltam
+ * como corpo, para que a biblioteca as converta em {@code TelegramApiRequestException};
+ * só falhas de rede viram {@link IOException}.
+ */
+public class PooledHttpTransport implements ApiTransport {
+    private static final Logger logger = LoggerFactory.getLogger(PooledHttpTransport.class);
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final MetricsService metrics;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final WaitTimeStats textLatency = new WaitTimeStats(LATENCY_SAMPLES);
+    private final WaitTimeStats mediaLatency = new WaitTimeStats(LATENCY_SAMPLES);
+    private volatile RequestConfig textConfig;
+    private volatile RequestConfig mediaConfig;
+
+    public PooledHttpTransport(MetricsService metrics) {
+        this.metrics = metrics;
+
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+
+        // Contar as conexões abertas para medir o reuso
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = (route, config) -> {
+            metrics.increment("transport.connections.opened");
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+
+        this.connectionManager = new PoolingHttpClientConnectionManager(socketFactories, connectionFactory);
+        // Conexões paradas há algum tempo são verificadas antes do reuso
+        this.connectionManager.setValidateAfterInactivity(2000);
+        applyConfig();
+
+        int keepAliveSeconds = BotConfig.getTransportKeepAliveSeconds();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    long configured = TimeUnit.SECONDS.toMillis(BotConfig.getTransportKeepAliveSeconds());
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, configured) : configured;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveSeconds, TimeUnit.SECONDS)
+                .disableCookieManagement()
+                .disableAutomaticRetries()
+                .build();
+
+        BotConfig.addChangeListener(this::applyConfig);
+
+        metrics.registerGauge("transport.pool.leased", () -> connectionManager.getTotalStats().getLeased());
+        metrics.registerGauge("transport.pool.available", () -> connectionManager.getTotalStats().getAvailable());
+        metrics.registerGauge("transport.pool.pending", () -> connectionManager.getTotalStats().getPending());
+        metrics.registerGauge("transport.pool.max", () -> connectionManager.getTotalStats().getMax());
+        metrics.registerGauge("transport.latency.text.p95Ms", () -> textLatency.percentiles(95)[0]);
+        metrics.registerGauge("transport.latency.media.p95Ms", () -> mediaLatency.percentiles(95)[0]);
+        metrics.addReporter(this::logReuseReport);
+    }
+
+    /**
+     * Aplica o tamanho do pool e os tempos limite atuais da configuração
+     */
+    private void applyConfig() {
+        int maxConnections = BotConfig.getTransportMaxConnections();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        textConfig = buildRequestConfig(BotConfig.getTransportTextTimeoutMillis());
+        mediaConfig = buildRequestConfig(BotConfig.getTransportMediaTimeoutMillis());
+    }
+
+    private static RequestConfig buildRequestConfig(int socketTimeoutMillis) {
+        return RequestConfig.custom()
+                .setConnectTimeout(BotConfig.getTransportConnectTimeoutMillis())
+                .setConnectionRequestTimeout(BotConfig.getTransportPoolWaitMillis())
+                .setSocketTimeout(socketTimeoutMillis)
+                .build();
+    }
+
+    @Override
+    public String post(String url, String jsonBody, CallType type) throws IOException {
+        return execute(url, new StringEntity(jsonBody, ContentType.APPLICATION_JSON), type);
+    }
+
+    @Override
+    public String post(String url, byte[] jsonBody, int length, CallType type) throws IOException {
+        return execute(url, new ByteArrayEntity(jsonBody, 0, length, ContentType.APPLICATION_JSON), type);
+    }
+
+    private String execute(String url, HttpEntity body, CallType type) throws IOException {
+        HttpPost post = new HttpPost(url);
+        post.setConfig(type == CallType.MEDIA ? mediaConfig : textConfig);
+        post.setEntity(body);
+
+        metrics.increment(type == CallType.MEDIA ? "transport.requests.media" : "transport.requests.text");
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            HttpEntity entity = response.getEntity();
+            // Consumir todo o corpo devolve a conexão ao pool para reuso
+            return entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : "";
+        } catch (IOException e) {
+            metrics.increment("transport.errors");
+            throw e;
+        } finally {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            (type == CallType.MEDIA ? mediaLatency : textLatency).record(elapsedMillis);
+        }
+    }
+
+    /**
+     * Registra a taxa de reuso das conexões desde o início
+     */
+    private void logReuseReport() {
+        long requests = metrics.getCount("transport.requests.text") + metrics.getCount("transport.requests.media");
+        long opened = metrics.getCount("transport.connections.opened");
+        if (requests == 0) {
+            return;
+        }
+
+        PoolStats stats = connectionManager.getTotalStats();
+        logger.info("Transporte HTTP: {} requisições em {} conexões ({}% reusadas); pool {}/{} em uso, {} aguardando",
+                requests, opened, Math.max(0, (requests - opened) * 100 / requests),
+                stats.getLeased(), stats.getMax(), stats.getPending());
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Erro ao fechar o transporte HTTP", e);
+        }
+    }
+}
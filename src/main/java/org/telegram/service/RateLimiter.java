@@ -0,0 +1,74 @@
+package org.telegram.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Limite de chamadas por segundo no estilo balde de fichas: permite rajadas de até um
+ * segundo de chamadas e, depois disso, espaça as chamadas uniformemente.
+ *
+ * O limite nunca espera: quem consome fichas só avança o próximo horário livre, e quem
+ * distribui o trabalho (o {@link FairScheduler}) deixa de atender o bot até esse horário.
+ * Assim nenhuma thread compartilhada fica parada por causa do limite de um único bot; só
+ * {@link #acquire()}, para pools próprios, espera pela vez.
+ */
+public class RateLimiter {
+    private final IntSupplier permitsPerSecond;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond limite consultado a cada chamada, para acompanhar a recarga da configuração
+     */
+    public RateLimiter(IntSupplier permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    /**
+     * Tempo até a próxima chamada ser liberada, sem reservá-la
+     * @param now instante atual ({@link System#nanoTime()})
+     * @return espera em nanossegundos; 0 se já há ficha
+     */
+    public synchronized long getDelayNanos(long now) {
+        refill(now);
+        return Math.max(0, nextFreeNanos - now);
+    }
+
+    /**
+     * Desconta chamadas do limite sem esperar; sem fichas, a dívida adia as próximas
+     */
+    public synchronized void consume(int permits) {
+        refill(System.nanoTime());
+        nextFreeNanos += permits * intervalNanos();
+    }
+
+    /**
+     * Reserva uma chamada e espera pela vez dela. Só para threads próprias, que podem
+     * esperar sem atrasar outros bots (ver {@link FairScheduler.Tenant#callPaced})
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            waitNanos = Math.max(0, nextFreeNanos - now);
+            nextFreeNanos += intervalNanos();
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Fichas acumuladas em períodos ociosos valem no máximo um segundo de rajada
+     */
+    private void refill(long now) {
+        long earliest = now - TimeUnit.SECONDS.toNanos(1) + intervalNanos();
+        if (nextFreeNanos - earliest < 0) {
+            nextFreeNanos = earliest;
+        }
+    }
+
+    private long intervalNanos() {
+        return TimeUnit.SECONDS.toNanos(1) / Math.max(permitsPerSecond.getAsInt(), 1);
+    }
+}
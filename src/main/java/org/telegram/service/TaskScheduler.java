@@ -0,0 +1,39 @@
+package org.telegram.service;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agendador dos temporizadores do bot (criação automática de álbuns, limpeza de sessões).
+ *
+ * Em produção é apoiado por um {@link java.util.concurrent.ScheduledThreadPoolExecutor}
+ * ({@link ExecutorTaskScheduler}); simulações usam uma implementação em tempo virtual,
+ * junto com um {@link java.time.Clock} correspondente.
+ */
+public interface TaskScheduler {
+
+    /**
+     * Executa a tarefa uma vez após o atraso. Tarefas canceladas saem da fila.
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Executa a tarefa periodicamente, a partir do atraso inicial
+     */
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Quantidade de tarefas agendadas que ainda não foram executadas
+     */
+    int getPendingTasks();
+
+    /**
+     * Ajusta o número de threads, sem perder as tarefas agendadas
+     */
+    void setThreads(int threads);
+
+    /**
+     * Para de aceitar tarefas e aguarda as que estão em execução
+     */
+    void shutdown();
+}
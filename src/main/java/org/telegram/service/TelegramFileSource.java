@@ -0,0 +1,59 @@
+package org.telegram.service;
+
+import org.telegram.bot.AlbumMakerBot;
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Baixa arquivos do Telegram: resolve o fileId com GetFile e lê o conteúdo
+ * a partir de um endereço base configurável ({@code export.fileBaseUrl})
+ */
+public class TelegramFileSource implements MediaFileSource {
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+
+    private final AlbumMakerBot bot;
+    private final String baseUrl;
+
+    /**
+     * @param baseUrl endereço ao qual são concatenados o token e o caminho do arquivo,
+     *                por exemplo {@code https://api.telegram.org/file/bot}
+     */
+    public TelegramFileSource(AlbumMakerBot bot, String baseUrl) {
+        this.bot = bot;
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public ReadableByteChannel open(String fileId) throws IOException {
+        File file;
+        try {
+            file = bot.execute(new GetFile(fileId));
+        } catch (TelegramApiException e) {
+            throw new IOException("Não foi possível resolver o arquivo " + fileId, e);
+        }
+
+        if (file == null || file.getFilePath() == null) {
+            throw new IOException("O Telegram não informou o caminho do arquivo " + fileId);
+        }
+
+        URL url = new URL(baseUrl + bot.getBotToken() + "/" + file.getFilePath());
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Falha ao baixar o arquivo " + fileId + ": HTTP " + status);
+        }
+        return Channels.newChannel(connection.getInputStream());
+    }
+}
@@ -0,0 +1,193 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registro durável do último update_id totalmente processado.
+ *
+ * O Telegram reenvia, após uma queda, as atualizações que ainda não tinham sido
+ * confirmadas pelo long polling. Este serviço descarta essas repetições: ids até o
+ * checkpoint salvo em disco e ids já vistos numa janela recente são ignorados em O(1).
+ * O checkpoint só avança até antes da atualização mais antiga ainda em processamento
+ * e é gravado em lotes periódicos, para não custar uma escrita por atualização. Uma
+ * mídia conta como processada quando a sessão a aceita, sem esperar pelo álbum: segurar
+ * o checkpoint não traria a atualização de volta, e a janela em memória se perde na queda.
+ */
+public class UpdateCheckpointService {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateCheckpointService.class);
+    private static final String CHECKPOINT_FILE = "update-offset";
+
+    private static final byte SLOT_IN_FLIGHT = 1;
+    private static final byte SLOT_DONE = 2;
+
+    private final Path checkpointFile;
+    private final ScheduledFuture<?> flushTask;
+    private final Object flushLock = new Object();
+
+    // Janela circular das atualizações recentes, indexada por update_id & mask
+    private final int[] windowIds;
+    private final byte[] windowStates;
+    private final int windowMask;
+
+    private int highestSeen;
+    private int committedOffset;
+    private int persistedOffset;
+
+    /**
+     * @param scheduler agendador das gravações periódicas, que pode ser compartilhado
+     *                  com outros serviços de manutenção
+     */
+    public UpdateCheckpointService(Path stateDir, TaskScheduler scheduler) {
+        this.checkpointFile = stateDir.resolve(CHECKPOINT_FILE);
+
+        int windowSize = Integer.highestOneBit(Math.max(BotConfig.getCheckpointWindowSize(), 64) - 1) << 1;
+        this.windowIds = new int[windowSize];
+        this.windowStates = new byte[windowSize];
+        this.windowMask = windowSize - 1;
+
+        this.persistedOffset = readCheckpoint();
+        this.committedOffset = persistedOffset;
+        this.highestSeen = persistedOffset;
+
+        long interval = BotConfig.getCheckpointFlushIntervalMillis();
+        this.flushTask = scheduler.scheduleAtFixedRate(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registra o início do processamento de uma atualização
+     * @return false se a atualização já foi processada e deve ser descartada
+     */
+    public synchronized boolean begin(int updateId) {
+        // Após uma semana sem atualizações o Telegram sorteia um novo update_id inicial
+        if (updateId < committedOffset - windowIds.length) {
+            logger.warn("Sequência de update_id reiniciada ({} após {}); reiniciando o checkpoint",
+                    updateId, committedOffset);
+            committedOffset = updateId - 1;
+            highestSeen = updateId - 1;
+            Arrays.fill(windowStates, (byte) 0);
+        }
+
+        if (updateId <= committedOffset || updateId <= highestSeen - windowIds.length) {
+            return false;
+        }
+
+        int slot = updateId & windowMask;
+        if (windowStates[slot] != 0 && windowIds[slot] == updateId) {
+            return false;
+        }
+
+        windowIds[slot] = updateId;
+        windowStates[slot] = SLOT_IN_FLIGHT;
+        if (updateId > highestSeen) {
+            highestSeen = updateId;
+        }
+        return true;
+    }
+
+    /**
+     * Registra o fim do processamento (ou o descarte) de uma atualização
+     */
+    public synchronized void complete(int updateId) {
+        int slot = updateId & windowMask;
+        if (windowIds[slot] == updateId) {
+            windowStates[slot] = SLOT_DONE;
+        }
+    }
+
+    /**
+     * Avança o checkpoint até antes da atualização mais antiga ainda em processamento.
+     * As atualizações chegam em ordem, então ids ausentes da janela nunca chegarão.
+     */
+    private synchronized int advanceCommittedOffset() {
+        // Ids que já saíram da janela não podem mais ser acompanhados
+        int candidate = Math.max(committedOffset, highestSeen - windowIds.length);
+        while (candidate < highestSeen) {
+            int next = candidate + 1;
+            int slot = next & windowMask;
+            if (windowIds[slot] == next && windowStates[slot] == SLOT_IN_FLIGHT) {
+                break;
+            }
+            candidate = next;
+        }
+        committedOffset = candidate;
+        return candidate;
+    }
+
+    /**
+     * Grava o checkpoint em disco se ele avançou desde a última gravação
+     */
+    public void flush() {
+        // Trava própria: a gravação não deve segurar o registro das atualizações
+        synchronized (flushLock) {
+            int offset = advanceCommittedOffset();
+            if (offset == persistedOffset) {
+                return;
+            }
+
+            try {
+                writeCheckpoint(offset);
+                persistedOffset = offset;
+            } catch (IOException e) {
+                logger.warn("Não foi possível gravar o checkpoint de atualizações em {}", checkpointFile, e);
+            }
+        }
+    }
+
+    public synchronized int getCommittedOffset() {
+        return committedOffset;
+    }
+
+    private int readCheckpoint() {
+        if (!Files.isRegularFile(checkpointFile)) {
+            return 0;
+        }
+
+        try {
+            String content = new String(Files.readAllBytes(checkpointFile), StandardCharsets.US_ASCII).trim();
+            int offset = Integer.parseInt(content);
+            logger.info("Retomando a partir do update_id {}", offset);
+            return offset;
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Checkpoint de atualizações ilegível em {}; iniciando do zero", checkpointFile, e);
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(int offset) throws IOException {
+        Files.createDirectories(checkpointFile.getParent());
+        Path tempFile = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+
+        // Gravar num arquivo temporário e trocar atomicamente, para nunca deixar um checkpoint parcial
+        ByteBuffer buffer = ByteBuffer.wrap(Integer.toString(offset).getBytes(StandardCharsets.US_ASCII));
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Finaliza o serviço gravando o checkpoint final
+     */
+    public void shutdown() {
+        flushTask.cancel(false);
+        flush();
+    }
+}
@@ -0,0 +1,316 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+import org.telegram.model.UpdateKind;
+import org.telegram.model.UpdateKind.Priority;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fila de entrada limitada entre o long polling e os manipuladores.
+ *
+ * Cada chat é sempre atendido pela mesma faixa (lane), o que preserva a ordem das
+ * mensagens de um usuário. Quando uma faixa enche, o trabalho de menor valor é
+ * descartado primeiro. O trabalho prioritário nunca é descartado nem espera: ele entra
+ * além da capacidade da faixa, contado em {@code ingress.overflow.high}. Não há
+ * backpressure sobre o long polling (a biblioteca continua lendo para a própria fila),
+ * e a thread que entrega as atualizações, única para todos os chats, nunca é bloqueada.
+ * Uma única instância pode atender vários bots: cada atualização leva o seu destino, e a
+ * capacidade de cada faixa é contada por destino, para que um bot sobrecarregado não
+ * provoque descartes nos outros.
+ */
+public class UpdateDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    // Percentual da capacidade a partir do qual cada prioridade é descartada
+    private static final int NORMAL_ADMIT_PERCENT = 80;
+    private static final int LOW_ADMIT_PERCENT = 50;
+
+    private static final int INITIAL_LANE_BUFFER = 64;
+
+    /**
+     * Resultado da entrega de uma atualização à fila
+     */
+    public enum Admission {
+        ACCEPTED,
+        SHED,    // Descartada por sobrecarga; pode ser confirmada
+        REFUSED  // Não entrou por desligamento; não confirmar, para ser reenviada
+    }
+
+    /**
+     * Destino das atualizações retiradas da fila
+     */
+    public interface UpdateHandler {
+        void handle(Update update, UpdateKind kind);
+    }
+
+    private final MetricsService metrics;
+    private final Lane[] lanes;
+    private final String[] shedCounterNames;
+    private volatile boolean accepting = true;
+
+    public UpdateDispatcher(MetricsService metrics) {
+        this.metrics = metrics;
+        this.lanes = new Lane[BotConfig.getIngressLanes()];
+        this.shedCounterNames = new String[Priority.values().length];
+
+        for (Priority priority : Priority.values()) {
+            shedCounterNames[priority.ordinal()] = "ingress.shed." + priority.name().toLowerCase();
+        }
+
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i);
+            lanes[i].start();
+        }
+
+        metrics.registerGauge("ingress.queue.depth", this::getQueueDepth);
+        metrics.registerGauge("ingress.queue.maxLaneDepth", this::getMaxLaneDepth);
+    }
+
+    /**
+     * Enfileira uma atualização para processamento
+     * @param handler destino da atualização (o bot que a recebeu)
+     * @return {@link Admission#SHED} só quando a atualização foi descartada de propósito;
+     *         {@link Admission#REFUSED} quando ela não chegou a ser avaliada
+     */
+    public Admission submit(UpdateHandler handler, long chatId, Update update, UpdateKind kind) {
+        if (!accepting) {
+            metrics.increment("ingress.rejected.shutdown");
+            return Admission.REFUSED;
+        }
+
+        if (lanes.length == 0) {
+            // Sem faixas: processar na thread de recebimento
+            metrics.increment("ingress.accepted");
+            try {
+                handler.handle(update, kind);
+            } catch (Exception e) {
+                logger.error("Erro ao processar update do chat ID: {}", chatId, e);
+            }
+            return Admission.ACCEPTED;
+        }
+
+        Lane lane = lanes[Math.floorMod(Long.hashCode(chatId), lanes.length)];
+        Priority priority = kind.getPriority();
+
+        boolean accepted = lane.offer(handler, update, kind);
+        if (!accepted) {
+            metrics.increment(shedCounterNames[priority.ordinal()]);
+            logger.warn("Atualização descartada por sobrecarga. Chat ID: {}, prioridade: {}", chatId, priority);
+            return Admission.SHED;
+        }
+        metrics.increment("ingress.accepted");
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * Total de atualizações aguardando processamento
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    private long getMaxLaneDepth() {
+        long max = 0;
+        for (Lane lane : lanes) {
+            max = Math.max(max, lane.size());
+        }
+        return max;
+    }
+
+    /**
+     * Para de aceitar atualizações e aguarda as faixas processarem o que já está na fila.
+     * Faixas que não terminarem no prazo são interrompidas.
+     * @return true se todas as atualizações enfileiradas foram processadas
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        accepting = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : lanes) {
+            lane.close();
+        }
+
+        boolean drained = true;
+        for (Lane lane : lanes) {
+            try {
+                lane.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (lane.isAlive()) {
+                drained = false;
+                logger.warn("Faixa {} não esvaziou no prazo; {} atualizações abandonadas", lane.getName(), lane.size());
+                lane.interrupt();
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Faixa de processamento: uma fila limitada por bot, atendida por uma única thread.
+     * As atualizações, seus destinos e classificações ficam em buffers circulares paralelos,
+     * que só crescem quando a capacidade configurada ou a quantidade de bots aumenta.
+     */
+    private final class Lane extends Thread {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private UpdateHandler[] handlers = new UpdateHandler[INITIAL_LANE_BUFFER];
+        private Update[] updates = new Update[INITIAL_LANE_BUFFER];
+        private UpdateKind[] kinds = new UpdateKind[INITIAL_LANE_BUFFER];
+        private int head;
+        private int count;
+        // Atualizações enfileiradas por destino; a admissão compara só as do próprio bot
+        private final Map<UpdateHandler, int[]> queuedByHandler = new IdentityHashMap<>();
+        private boolean closing;
+
+        Lane(int index) {
+            super("ingress-" + index);
+            setDaemon(true);
+        }
+
+        boolean offer(UpdateHandler handler, Update update, UpdateKind kind) {
+            int capacity = BotConfig.getIngressLaneCapacity();
+
+            lock.lock();
+            try {
+                switch (kind.getPriority()) {
+                    case LOW:
+                        if (queued(handler) >= capacity * LOW_ADMIT_PERCENT / 100) {
+                            return false;
+                        }
+                        break;
+
+                    case NORMAL:
+                        if (queued(handler) >= capacity * NORMAL_ADMIT_PERCENT / 100) {
+                            return false;
+                        }
+                        break;
+
+                    default:
+                        // Descartar uma mídia ou um /cancel perderia o que o usuário enviou, e
+                        // esperar por espaço travaria a entrega de todos os chats: entra mesmo assim
+                        if (queued(handler) >= capacity) {
+                            metrics.increment("ingress.overflow.high");
+                        }
+                        break;
+                }
+
+                if (count == updates.length) {
+                    grow();
+                }
+                int tail = (head + count) % updates.length;
+                handlers[tail] = handler;
+                updates[tail] = update;
+                kinds[tail] = kind;
+                count++;
+                int[] queued = queuedByHandler.get(handler);
+                if (queued == null) {
+                    queuedByHandler.put(handler, new int[] {1});
+                } else {
+                    queued[0]++;
+                }
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Atualizações do bot nesta faixa. Deve ser chamado com o lock.
+         */
+        private int queued(UpdateHandler handler) {
+            int[] queued = queuedByHandler.get(handler);
+            return queued != null ? queued[0] : 0;
+        }
+
+        private void grow() {
+            UpdateHandler[] newHandlers = new UpdateHandler[handlers.length * 2];
+            Update[] newUpdates = new Update[updates.length * 2];
+            UpdateKind[] newKinds = new UpdateKind[kinds.length * 2];
+            for (int i = 0; i < count; i++) {
+                int index = (head + i) % updates.length;
+                newHandlers[i] = handlers[index];
+                newUpdates[i] = updates[index];
+                newKinds[i] = kinds[index];
+            }
+            handlers = newHandlers;
+            updates = newUpdates;
+            kinds = newKinds;
+            head = 0;
+        }
+
+        /**
+         * Encerra a faixa assim que a fila esvaziar
+         */
+        void close() {
+            lock.lock();
+            try {
+                closing = true;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                UpdateHandler handler;
+                Update update;
+                UpdateKind kind;
+
+                lock.lock();
+                try {
+                    while (count == 0) {
+                        if (closing) {
+                            return;
+                        }
+                        notEmpty.await();
+                    }
+                    handler = handlers[head];
+                    update = updates[head];
+                    kind = kinds[head];
+                    handlers[head] = null;
+                    updates[head] = null;
+                    head = (head + 1) % updates.length;
+                    count--;
+                    int[] queued = queuedByHandler.get(handler);
+                    if (--queued[0] == 0) {
+                        queuedByHandler.remove(handler);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    handler.handle(update, kind);
+                } catch (Exception e) {
+                    logger.error("Erro ao processar update na faixa {}", getName(), e);
+                }
+            }
+        }
+    }
+}
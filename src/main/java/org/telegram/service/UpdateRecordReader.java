@@ -0,0 +1,115 @@
+package org.telegram.service;
+
+import org.telegram.model.Command;
+import org.telegram.model.UpdateKind;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Lê sequencialmente um registro gravado pelo {@link UpdateRecorder}.
+ * Os campos do registro atual ficam disponíveis após cada {@link #next()}.
+ */
+public class UpdateRecordReader implements Closeable {
+    private static final UpdateKind[] KINDS = UpdateKind.values();
+    private static final Command[] COMMANDS = Command.values();
+
+    private final DataInputStream input;
+    private final long startMillis;
+
+    private long offsetMillis;
+    private long chatId;
+    private UpdateKind kind;
+    private int messageId;
+    private Command command;
+
+    public UpdateRecordReader(Path file) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        if (input.readInt() != UpdateRecorder.MAGIC || input.readUnsignedByte() != UpdateRecorder.VERSION) {
+            input.close();
+            throw new IOException("Arquivo não é uma gravação de atualizações: " + file);
+        }
+        this.startMillis = input.readLong();
+    }
+
+    /**
+     * Avança para o próximo registro
+     * @return false no fim do arquivo (um último registro truncado é ignorado)
+     */
+    public boolean next() throws IOException {
+        try {
+            offsetMillis += readVarLong();
+            chatId = readVarLong();
+            kind = KINDS[input.readUnsignedByte()];
+            messageId = (int) readVarLong();
+            command = kind == UpdateKind.COMMAND || kind == UpdateKind.CANCEL_COMMAND
+                    ? COMMANDS[input.readUnsignedByte()]
+                    : null;
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IOException("Varint inválido na gravação");
+            }
+        }
+    }
+
+    /**
+     * Instante do início da gravação, em milissegundos desde a época
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Instante do registro atual em relação ao início da gravação
+     */
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    /**
+     * Pseudônimo do chat (não é o id real)
+     */
+    public long getChatId() {
+        return chatId;
+    }
+
+    public UpdateKind getKind() {
+        return kind;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Comando reconhecido, ou null se o registro não for um comando
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
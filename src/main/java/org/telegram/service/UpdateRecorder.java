@@ -0,0 +1,193 @@
+package org.telegram.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.model.Command;
+import org.telegram.model.UpdateKind;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grava as atualizações recebidas num registro binário compacto, só de acréscimo, para
+ * reproduzir depois o formato real do tráfego (ver {@code tools.UpdateReplay}).
+ *
+ * Nada identifica o usuário: o chat vira um pseudônimo de 40 bits derivado de um sal
+ * aleatório que nunca é gravado, e textos, legendas e arquivos não são registrados —
+ * apenas o instante, o tipo da atualização, o id da mensagem e o comando reconhecido.
+ *
+ * Quem recebe a atualização só codifica alguns bytes num buffer em memória, sob uma
+ * trava curta; a gravação em disco acontece em outra thread, que troca o buffer cheio por
+ * um vazio. Se o disco não acompanhar e o buffer encher, o registro é descartado e
+ * contado, mas o atendimento nunca espera.
+ *
+ * Formato: cabeçalho ({@link #MAGIC}, versão, instante inicial em ms) seguido de
+ * registros com varints: intervalo desde o registro anterior (ms), pseudônimo do chat,
+ * tipo ({@link UpdateKind#ordinal()}), id da mensagem e, para comandos,
+ * {@link Command#ordinal()}.
+ */
+public class UpdateRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateRecorder.class);
+
+    public static final int MAGIC = 0x414D5231; // "AMR1"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 1 + 8;
+    private static final int MAX_RECORD_BYTES = 5 + 6 + 1 + 5 + 1;
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MetricsService metrics;
+    private final long salt = new SecureRandom().nextLong();
+    private final long maxBytes;
+    private final ScheduledFuture<?> flushTask;
+    private final Object flushLock = new Object();
+
+    // Buffer ativo (protegido pela trava do recorder) e buffer livre (só da thread de gravação)
+    private ByteBuffer active;
+    private ByteBuffer spare;
+    private long lastRecordMillis;
+    private long bytesWritten;
+    private boolean full;
+
+    /**
+     * Cria o arquivo de gravação e agenda a escrita periódica
+     * @param bufferBytes tamanho de cada um dos dois buffers em memória
+     * @param maxBytes    tamanho máximo do arquivo; ao atingi-lo a gravação para
+     */
+    public UpdateRecorder(Path file, int bufferBytes, long maxBytes, long startMillis,
+                          MetricsService metrics, TaskScheduler scheduler) throws IOException {
+        this.file = file;
+        this.metrics = metrics;
+        this.maxBytes = maxBytes;
+        this.active = ByteBuffer.allocate(bufferBytes);
+        this.spare = ByteBuffer.allocate(bufferBytes);
+        this.lastRecordMillis = startMillis;
+
+        Files.createDirectories(file.getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).put((byte) VERSION).putLong(startMillis);
+        ((Buffer) header).flip();
+        writeFully(header);
+
+        this.flushTask = scheduler.scheduleAtFixedRate(this::flush,
+                FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        logger.info("Gravando atualizações em {}", file);
+    }
+
+    /**
+     * Acrescenta uma atualização ao registro sem bloquear
+     * @param command comando reconhecido, para COMMAND e CANCEL_COMMAND
+     */
+    public void record(long timeMillis, long chatId, UpdateKind kind, int messageId, Command command) {
+        synchronized (this) {
+            if (full) {
+                return;
+            }
+            if (active.remaining() >= MAX_RECORD_BYTES) {
+                putVarLong(active, Math.min(Math.max(0, timeMillis - lastRecordMillis), 0xFFFFFFFFL));
+                putVarLong(active, pseudonym(chatId));
+                active.put((byte) kind.ordinal());
+                putVarLong(active, messageId & 0xFFFFFFFFL);
+                if (kind == UpdateKind.COMMAND || kind == UpdateKind.CANCEL_COMMAND) {
+                    active.put((byte) (command != null ? command : Command.UNKNOWN).ordinal());
+                }
+                lastRecordMillis = Math.max(lastRecordMillis, timeMillis);
+                return;
+            }
+        }
+        metrics.increment("recorder.dropped");
+    }
+
+    /**
+     * Pseudônimo estável dentro da gravação e irreversível sem o sal
+     */
+    private long pseudonym(long chatId) {
+        long z = chatId ^ salt;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) >>> 24;
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Troca o buffer ativo pelo livre e grava o conteúdo em disco
+     */
+    private void flush() {
+        // O fechamento pode coincidir com a gravação periódica; o buffer livre é de uma só por vez
+        synchronized (flushLock) {
+            ByteBuffer filled;
+            synchronized (this) {
+                if (active.position() == 0) {
+                    return;
+                }
+                filled = active;
+                active = spare;
+            }
+
+            ((Buffer) filled).flip();
+            int length = filled.remaining();
+            try {
+                writeFully(filled);
+                metrics.add("recorder.bytes", length);
+            } catch (IOException e) {
+                logger.warn("Erro ao gravar atualizações em {}; gravação interrompida", file, e);
+                stop();
+            }
+            ((Buffer) filled).clear();
+
+            synchronized (this) {
+                spare = filled;
+                bytesWritten += length;
+                if (bytesWritten >= maxBytes && !full) {
+                    logger.warn("Gravação de atualizações atingiu o limite de {} bytes em {}", maxBytes, file);
+                    full = true;
+                }
+            }
+        }
+    }
+
+    private synchronized void stop() {
+        full = true;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Grava o que restar em memória e fecha o arquivo
+     */
+    public void close() {
+        flushTask.cancel(false);
+        flush();
+        synchronized (this) {
+            full = true;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Erro ao fechar a gravação de atualizações {}", file, e);
+        }
+    }
+}
@@ -2,12 +2,19 @@ package org.telegram.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+import org.telegram.event.SessionEvictedEvent;
+import org.telegram.model.MediaItem;
+import org.telegram.model.MediaSpill;
 import org.telegram.model.UserSession;
 
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -15,26 +22,79 @@ import java.util.concurrent.TimeUnit;
  */
 public class UserSessionService {
     private static final Logger logger = LoggerFactory.getLogger(UserSessionService.class);
-    private static final int SESSION_TIMEOUT_MINUTES = 30;
 
     private final Map<Long, UserSession> sessions;
-    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+    private final TaskScheduler scheduler;
+    private final boolean ownsScheduler;
+    private final MediaSpill spill;
+    private ScheduledFuture<?> cleanupTask;
+    private int cleanupIntervalMinutes;
 
     public UserSessionService() {
+        this(Clock.systemDefaultZone(), new ExecutorTaskScheduler("session-cleanup", 1), true, null);
+    }
+
+    /**
+     * @param clock     fonte de tempo das sessões criadas
+     * @param scheduler agendador da limpeza periódica, que pode ser compartilhado
+     */
+    public UserSessionService(Clock clock, TaskScheduler scheduler) {
+        this(clock, scheduler, false, null);
+    }
+
+    /**
+     * @param spill armazenamento das mídias pendentes além do limite em heap de cada sessão,
+     *              ou null para manter todas no heap
+     */
+    public UserSessionService(Clock clock, TaskScheduler scheduler, MediaSpill spill) {
+        this(clock, scheduler, false, spill);
+    }
+
+    private UserSessionService(Clock clock, TaskScheduler scheduler, boolean ownsScheduler, MediaSpill spill) {
         this.sessions = new ConcurrentHashMap<>();
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.spill = spill;
+
+        // Agendar limpeza de sessões expiradas no intervalo configurado
+        scheduleCleanup();
+        BotConfig.addChangeListener(this::scheduleCleanup);
+    }
+
+    /**
+     * (Re)agenda a limpeza periódica se o intervalo configurado mudou
+     */
+    private synchronized void scheduleCleanup() {
+        int interval = BotConfig.getSessionCleanupIntervalMinutes();
+        if (cleanupTask != null) {
+            if (interval == cleanupIntervalMinutes) {
+                return;
+            }
+            cleanupTask.cancel(false);
+            logger.info("Intervalo de limpeza de sessões alterado para {} minutos", interval);
+        }
 
-        // Agendar limpeza de sessões expiradas a cada 10 minutos
-        scheduler.scheduleAtFixedRate(
+        cleanupIntervalMinutes = interval;
+        cleanupTask = scheduler.scheduleAtFixedRate(
                 this::cleanExpiredSessions,
-                10, 10, TimeUnit.MINUTES);
+                interval, interval, TimeUnit.MINUTES);
     }
 
     /**
-     * Obtém a sessão do usuário ou cria uma nova se não existir
+     * Obtém a sessão do usuário ou cria uma nova se não existir. Uma sessão que acabou de
+     * expirar, mas ainda não saiu do mapa, também é substituída.
      */
     public UserSession getOrCreateSession(long chatId) {
-        return sessions.computeIfAbsent(chatId, UserSession::new);
+        UserSession session = sessions.get(chatId);
+        if (session != null && !session.isClosed()) {
+            return session;
+        }
+        return sessions.compute(chatId, (id, current) ->
+                current == null || current.isClosed()
+                        ? new UserSession(id, clock, spill, BotConfig.getSessionHeapMediaLimit())
+                        : current);
     }
 
     /**
@@ -52,17 +112,52 @@ public class UserSessionService {
         logger.info("Sessão removida para o chat ID: {}", chatId);
     }
 
+    /**
+     * Quantidade de sessões ativas
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Cópia das mídias pendentes de cada sessão que ainda tem alguma, incluindo as
+     * transbordadas (ver {@link UserSession#getPendingMedia()})
+     */
+    public Map<Long, List<MediaItem>> getPendingMediaByChat() {
+        Map<Long, List<MediaItem>> pending = new LinkedHashMap<>();
+        for (UserSession session : sessions.values()) {
+            List<MediaItem> pendingMedia = session.getPendingMedia();
+            if (!pendingMedia.isEmpty()) {
+                pending.put(session.getChatId(), new ArrayList<>(pendingMedia));
+            }
+        }
+        return pending;
+    }
+
     /**
      * Limpa as sessões expiradas
      */
     private void cleanExpiredSessions() {
         logger.info("Iniciando limpeza de sessões expiradas...");
+        int timeoutMinutes = BotConfig.getSessionTimeoutMinutes();
 
         sessions.entrySet()
                 .removeIf(entry -> {
-                    boolean expired = entry.getValue().isExpired(SESSION_TIMEOUT_MINUTES);
+                    UserSession session = entry.getValue();
+                    // Fechar antes de remover: uma mídia que chegue agora vai para uma sessão nova
+                    boolean expired = session.closeIfExpired(timeoutMinutes);
                     if (expired) {
                         logger.info("Removendo sessão expirada para o chat ID: {}", entry.getKey());
+
+                        SessionEvictedEvent event = new SessionEvictedEvent();
+                        if (event.shouldCommit()) {
+                            event.chatId = entry.getKey();
+                            event.idleMillis = session.getIdleMillis();
+                            event.pendingCount = session.getPendingMediaCount();
+                            event.commit();
+                        }
+                        // Ninguém mais retira mídias de uma sessão removida: liberar os registros
+                        session.clearPendingMedia();
                     }
                     return expired;
                 });
@@ -71,17 +166,12 @@ public class UserSessionService {
     }
 
     /**
-     * Finaliza o serviço de sessões
+     * Finaliza o serviço de sessões; um agendador compartilhado continua ativo
      */
-    public void shutdown() {
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
+    public synchronized void shutdown() {
+        cleanupTask.cancel(false);
+        if (ownsScheduler) {
+            scheduler.shutdown();
         }
     }
 }
\ No newline at end of file
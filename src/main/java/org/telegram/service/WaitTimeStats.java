@@ -0,0 +1,52 @@
+package org.telegram.service;
+
+import java.util.Arrays;
+
+/**
+ * Amostras recentes de tempo de espera, com cálculo de percentis sob demanda.
+ * Guarda apenas as últimas amostras num buffer circular de tamanho fixo.
+ */
+public class WaitTimeStats {
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public WaitTimeStats(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long waitMillis) {
+        samples[next] = waitMillis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Calcula vários percentis de uma vez
+     * @param percentiles valores entre 0 e 100
+     * @return os tempos correspondentes, em milissegundos (zeros se não houver amostras)
+     */
+    public long[] percentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+
+        long[] values = new long[percentiles.length];
+        if (sorted.length == 0) {
+            return values;
+        }
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length) - 1;
+            values[i] = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+        return values;
+    }
+}
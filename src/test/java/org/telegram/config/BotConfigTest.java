@@ -0,0 +1,69 @@
+package org.telegram.config;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BotConfigTest {
+
+    @Before
+    public void configure() throws Exception {
+        TestConfig.apply("album.delaySeconds", "5", "album.eagerFlush", "true", "outbound.premiumChats", "1, 2");
+    }
+
+    @Test
+    public void reloadAppliesNewTuningValues() throws Exception {
+        assertEquals(5, BotConfig.getAutoAlbumDelaySeconds());
+        assertEquals(2, BotConfig.getOutboundPremiumChats().size());
+
+        TestConfig.apply("album.delaySeconds", "7", "outbound.premiumChats", "5");
+
+        assertEquals(7, BotConfig.getAutoAlbumDelaySeconds());
+        assertEquals(1, BotConfig.getOutboundPremiumChats().size());
+        assertEquals("5", BotConfig.getOutboundPremiumChats().get(0));
+    }
+
+    @Test
+    public void reloadNotifiesListeners() throws Exception {
+        AtomicInteger seenDelay = new AtomicInteger();
+        BotConfig.addChangeListener(() -> seenDelay.set(BotConfig.getAutoAlbumDelaySeconds()));
+
+        TestConfig.apply("album.delaySeconds", "9");
+
+        // O ouvinte já enxerga os valores novos
+        assertEquals(9, seenDelay.get());
+    }
+
+    @Test
+    public void truncatedFileKeepsCurrentValues() throws Exception {
+        // Editores costumam truncar o arquivo antes de gravar o conteúdo novo
+        TestConfig.write(new Properties());
+        BotConfig.reload();
+
+        assertEquals(5, BotConfig.getAutoAlbumDelaySeconds());
+    }
+
+    @Test
+    public void invalidOrTooSmallValuesAreReplaced() throws Exception {
+        TestConfig.apply("album.delaySeconds", "abc", "outbound.maxQueuedPerChat", "0");
+
+        // Valor ilegível volta ao padrão; abaixo do mínimo, fica no mínimo
+        assertEquals(3, BotConfig.getAutoAlbumDelaySeconds());
+        assertEquals(1, BotConfig.getOutboundMaxQueuedPerChat());
+    }
+
+    @Test
+    public void credentialsOnlyChangeOnRestart() throws Exception {
+        TestConfig.apply("bot.username", "other_bot", "album.eagerFlush", "false");
+
+        assertEquals("test_bot", BotConfig.getBotUsername());
+        assertEquals("test_bot", BotConfig.getTenants().get(0).getUsername());
+        assertFalse(BotConfig.isEagerAlbumFlushEnabled());
+        assertEquals(1, BotConfig.getTenants().size());
+    }
+}
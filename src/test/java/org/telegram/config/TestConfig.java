@@ -0,0 +1,58 @@
+package org.telegram.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Configuração dos testes num arquivo temporário. O {@link BotConfig} é lido uma vez por
+ * JVM (o surefire usa uma JVM por classe de teste): a primeira chamada aponta a leitura
+ * para o arquivo, e as seguintes o regravam e recarregam.
+ */
+public final class TestConfig {
+    private static Path configFile;
+
+    private TestConfig() {
+    }
+
+    /**
+     * Aplica a configuração mínima de um bot de teste mais as propriedades informadas
+     * @param keyValues pares chave, valor
+     */
+    public static synchronized void apply(String... keyValues) throws IOException {
+        if (configFile == null) {
+            configFile = Files.createTempFile("albummaker-test", ".properties");
+            configFile.toFile().deleteOnExit();
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("bot.username", "test_bot");
+        properties.setProperty("bot.token", "0:test");
+        properties.setProperty("recorder.enabled", "false");
+        properties.setProperty("state.dir", configFile.resolveSibling(configFile.getFileName() + ".state").toString());
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            properties.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        write(properties);
+
+        if (System.getProperty("albummaker.config") == null) {
+            System.setProperty("albummaker.config", configFile.toString());
+        }
+        BotConfig.reload();
+    }
+
+    /**
+     * Grava as propriedades no arquivo sem recarregar, para testar a recarga em si. A troca
+     * é atômica: o observador do arquivo nunca lê uma gravação pela metade.
+     */
+    public static synchronized void write(Properties properties) throws IOException {
+        Path tempFile = configFile.resolveSibling(configFile.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(tempFile)) {
+            properties.store(output, "Configuração de teste");
+        }
+        Files.move(tempFile, configFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,230 @@
+package org.telegram.handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.config.TestConfig;
+import org.telegram.model.Album;
+import org.telegram.model.UserSession;
+import org.telegram.service.FairScheduler;
+import org.telegram.service.RateLimiter;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.tools.SimulatedBot;
+import org.telegram.tools.VirtualTimeScheduler;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Respostas seguidas ao mesmo álbum viram uma única edição, com a legenda mais recente.
+ * Tudo roda em tempo virtual na thread do teste (ingress.lanes=0, outbound.threads=0).
+ */
+public class CaptionHandlerTest {
+    private static final long CHAT_ID = 77;
+    private static final int ALBUM_MESSAGE_ID = 500;
+    private static final long COALESCE_MILLIS = 1000;
+    // O offset confirmado fica no diretório de estado, compartilhado entre os testes
+    private static int nextUpdateId = 1;
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler(0);
+    // Escritas também pelas threads de saída no teste da cota cheia
+    private final List<String> editedCaptions = new CopyOnWriteArrayList<>();
+    private final List<String> sentTexts = new CopyOnWriteArrayList<>();
+    private RecordingBot bot;
+    private Album album;
+    private int nextMessageId = 1000;
+
+    /**
+     * Guarda as legendas editadas e os textos enviados
+     */
+    private final class RecordingBot extends SimulatedBot {
+        RecordingBot() {
+            super(scheduler);
+        }
+
+        @Override
+        public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) {
+            if (method instanceof EditMessageCaption) {
+                editedCaptions.add(((EditMessageCaption) method).getCaption());
+            } else if (method instanceof SendMessage) {
+                sentTexts.add(((SendMessage) method).getText());
+            }
+            return super.execute(method);
+        }
+    }
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        configure("0");
+    }
+
+    private static void configure(String outboundThreads) throws Exception {
+        TestConfig.apply("ingress.lanes", "0",
+                "outbound.threads", outboundThreads,
+                "outbound.maxQueuedPerChat", "2",
+                "caption.coalesceMillis", String.valueOf(COALESCE_MILLIS));
+    }
+
+    @Before
+    public void sendAlbum() {
+        bot = new RecordingBot();
+        album = new Album();
+        album.setSentMessageId(ALBUM_MESSAGE_ID);
+
+        UserSession session = bot.getSessionService().getOrCreateSession(CHAT_ID);
+        session.setState(UserSession.SessionState.COLLECTING_MEDIA);
+        session.setLastAlbum(album);
+    }
+
+    @After
+    public void stop() {
+        bot.shutdown();
+        scheduler.shutdown();
+    }
+
+    private static Message replyMessage(int replyToMessageId, String text, int messageId) {
+        Message original = new Message();
+        original.setMessageId(replyToMessageId);
+
+        Message message = new Message();
+        message.setMessageId(messageId);
+        message.setChat(new Chat(CHAT_ID, "private"));
+        message.setText(text);
+        message.setReplyToMessage(original);
+        return message;
+    }
+
+    private void reply(int replyToMessageId, String text) {
+        Update update = new Update();
+        update.setUpdateId(nextUpdateId++);
+        update.setMessage(replyMessage(replyToMessageId, text, nextMessageId++));
+        bot.onUpdateReceived(update);
+    }
+
+    private void advance(long millis) {
+        scheduler.advance(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void burstOfRepliesBecomesOneEditWithTheLatestCaption() {
+        reply(ALBUM_MESSAGE_ID, "primeira");
+        advance(COALESCE_MILLIS / 2);
+        reply(ALBUM_MESSAGE_ID, "segunda");
+        advance(COALESCE_MILLIS / 2);
+        reply(ALBUM_MESSAGE_ID, "terceira");
+
+        // Cada resposta reagenda: nada sai antes de o usuário parar
+        advance(COALESCE_MILLIS - 1);
+        assertTrue(editedCaptions.isEmpty());
+
+        advance(1);
+        assertEquals(1, editedCaptions.size());
+        assertEquals("terceira", editedCaptions.get(0));
+        assertEquals("terceira", album.getCaption());
+        assertEquals(1, bot.getMetrics().getCount("caption.edits"));
+        assertEquals(2, bot.getMetrics().getCount("caption.edits.coalesced"));
+        assertEquals(1, sentTexts.stream().filter(text -> text.startsWith("✅")).count());
+    }
+
+    @Test
+    public void repliesAfterTheQuietPeriodAreSeparateEdits() {
+        reply(ALBUM_MESSAGE_ID, "primeira");
+        advance(COALESCE_MILLIS);
+        reply(ALBUM_MESSAGE_ID, "segunda");
+        advance(COALESCE_MILLIS);
+
+        assertEquals(2, editedCaptions.size());
+        assertEquals("primeira", editedCaptions.get(0));
+        assertEquals("segunda", editedCaptions.get(1));
+        assertEquals(0, bot.getMetrics().getCount("caption.edits.coalesced"));
+    }
+
+    @Test
+    public void replyToAnotherMessageIsNotAnEdit() {
+        reply(ALBUM_MESSAGE_ID + 1, "outra");
+        advance(COALESCE_MILLIS);
+
+        assertTrue(editedCaptions.isEmpty());
+        assertNull(album.getCaption());
+        assertEquals(1, sentTexts.size());
+        assertTrue(sentTexts.get(0).startsWith("❌"));
+    }
+
+    @Test
+    public void drainSendsTheWaitingEditRightAway() {
+        reply(ALBUM_MESSAGE_ID, "primeira");
+        reply(ALBUM_MESSAGE_ID, "segunda");
+
+        assertEquals(1, bot.flushPendingAlbums(1, TimeUnit.SECONDS));
+        assertEquals(1, editedCaptions.size());
+        assertEquals("segunda", editedCaptions.get(0));
+
+        // O temporizador cancelado não envia de novo
+        advance(COALESCE_MILLIS);
+        assertEquals(1, editedCaptions.size());
+    }
+
+    @Test
+    public void fullChatQuotaDelaysTheEditInsteadOfDroppingIt() throws Exception {
+        // Uma fila de saída real, com uma thread, montada à parte do bot (que roda inline)
+        configure("1");
+        FairScheduler outbound;
+        try {
+            outbound = new FairScheduler(bot.getMetrics());
+        } finally {
+            configure("0");
+        }
+        FairScheduler.Tenant tenant = outbound.addTenant(new RateLimiter(() -> 1000), bot.getMetrics());
+        CaptionHandler handler = new CaptionHandler(bot, bot.getSessionService(), bot.getMetrics(), tenant, scheduler);
+
+        // Prender a thread e ocupar a cota do chat com envios anteriores
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(tenant.submit(CHAT_ID, 1, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(tenant.submit(CHAT_ID, 1, () -> { }));
+        assertTrue(tenant.submit(CHAT_ID, 1, () -> { }));
+
+        try {
+            handler.handleCaption(replyMessage(ALBUM_MESSAGE_ID, "legenda", nextMessageId++));
+            advance(COALESCE_MILLIS);
+            assertEquals(1, bot.getMetrics().getCount("caption.edits.retried"));
+
+            // Com a cota livre, a nova tentativa entra na fila e a edição sai
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (tenant.getRemainingQuota(CHAT_ID) < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            advance(1000);
+            while (editedCaptions.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, editedCaptions.size());
+            assertEquals("legenda", editedCaptions.get(0));
+        } finally {
+            release.countDown();
+            outbound.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.telegram.handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.config.TestConfig;
+import org.telegram.model.UpdateKind;
+import org.telegram.service.FairScheduler;
+import org.telegram.service.RateLimiter;
+import org.telegram.service.TaskScheduler;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.tools.SimulatedBot;
+import org.telegram.tools.VirtualTimeScheduler;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Envio antecipado de álbuns completos disputando o lote com o temporizador do debounce.
+ * Os temporizadores ficam retidos no teste, que decide quando e em qual thread cada um roda.
+ */
+public class MediaHandlerTest {
+    private static final int ALBUM_SIZE = 10;
+
+    private final VirtualTimeScheduler virtualTime = new VirtualTimeScheduler(0);
+    private final ManualScheduler timers = new ManualScheduler();
+    // Arquivos de cada álbum enviado, por chat; escritos pelas duas threads da disputa
+    private final Map<Long, List<List<String>>> sentAlbums = new ConcurrentHashMap<>();
+    private RecordingBot bot;
+    private FairScheduler outbound;
+    private MediaHandler handler;
+
+    /**
+     * Guarda os arquivos de cada álbum enviado
+     */
+    private final class RecordingBot extends SimulatedBot {
+        RecordingBot() {
+            super(virtualTime);
+        }
+
+        @Override
+        public List<Message> execute(SendMediaGroup sendMediaGroup) {
+            List<String> files = new ArrayList<>();
+            for (InputMedia media : sendMediaGroup.getMedias()) {
+                files.add(media.getMedia());
+            }
+            sentAlbums.computeIfAbsent(Long.parseLong(sendMediaGroup.getChatId()),
+                    chatId -> new CopyOnWriteArrayList<>()).add(files);
+            return super.execute(sendMediaGroup);
+        }
+    }
+
+    /**
+     * Retém as tarefas agendadas até o teste rodá-las; canceladas não rodam
+     */
+    private static final class ManualScheduler implements TaskScheduler {
+        private final Queue<ManualTask> tasks = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+            ManualTask scheduled = new ManualTask(task);
+            tasks.add(scheduled);
+            return scheduled;
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Retira a tarefa ativa mais recente, descartando as canceladas
+         */
+        ManualTask takeLatest() {
+            ManualTask latest = null;
+            for (ManualTask task : tasks) {
+                if (!task.isCancelled() && !task.isDone()) {
+                    latest = task;
+                }
+            }
+            tasks.remove(latest);
+            return latest;
+        }
+
+        /**
+         * Roda, na thread atual, as tarefas pendentes até não sobrar nenhuma
+         */
+        void runAll() {
+            ManualTask task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        @Override
+        public int getPendingTasks() {
+            return tasks.size();
+        }
+
+        @Override
+        public void setThreads(int threads) {
+        }
+
+        @Override
+        public void shutdown() {
+            tasks.clear();
+        }
+    }
+
+    private static final class ManualTask extends FutureTask<Void> implements ScheduledFuture<Void> {
+        ManualTask(Runnable task) {
+            super(task, null);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return 0;
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return 0;
+        }
+    }
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        TestConfig.apply("ingress.lanes", "0",
+                "outbound.threads", "0",
+                "album.maxMedia", String.valueOf(ALBUM_SIZE),
+                "tenant.maxCallsPerSecond", "100000");
+    }
+
+    @Before
+    public void start() {
+        bot = new RecordingBot();
+        outbound = new FairScheduler(bot.getMetrics());
+        FairScheduler.Tenant tenant = outbound.addTenant(new RateLimiter(() -> 100_000), bot.getMetrics());
+        Clock clock = virtualTime.getClock();
+        handler = new MediaHandler(bot, bot.getSessionService(), bot.getMetrics(), tenant, clock, timers);
+    }
+
+    @After
+    public void stop() {
+        outbound.shutdown(1, TimeUnit.SECONDS);
+        bot.shutdown();
+        virtualTime.shutdown();
+    }
+
+    private static Message photo(long chatId, int messageId) {
+        PhotoSize size = new PhotoSize();
+        size.setFileId(fileId(chatId, messageId));
+        size.setFileSize(1000);
+
+        Message message = new Message();
+        message.setMessageId(messageId);
+        message.setChat(new Chat(chatId, "private"));
+        message.setPhoto(Collections.singletonList(size));
+        return message;
+    }
+
+    private static String fileId(long chatId, int messageId) {
+        return "file-" + chatId + "-" + messageId;
+    }
+
+    @Test
+    public void fullAlbumIsSentBeforeTheDebounce() {
+        long chatId = 1;
+        for (int i = 1; i <= ALBUM_SIZE; i++) {
+            handler.handleMedia(photo(chatId, i), UpdateKind.PHOTO);
+        }
+
+        // O décimo item já levou o álbum; o temporizador só fecha o lote
+        assertEquals(1, sentAlbums.get(chatId).size());
+        assertEquals(ALBUM_SIZE, sentAlbums.get(chatId).get(0).size());
+        assertEquals(1, bot.getMetrics().getCount("media.albums.eager"));
+
+        timers.runAll();
+        assertEquals(1, sentAlbums.get(chatId).size());
+        assertEquals(0, bot.getSessionService().getSession(chatId).getPendingMediaCount());
+    }
+
+    @Test
+    public void tenthItemAndTimerFiringTogetherSendTheBatchOnce() throws Exception {
+        CyclicBarrier start = new CyclicBarrier(2);
+        for (long chatId = 100; chatId < 300; chatId++) {
+            for (int i = 1; i < ALBUM_SIZE; i++) {
+                handler.handleMedia(photo(chatId, i), UpdateKind.PHOTO);
+            }
+            ManualTask timer = timers.takeLatest();
+
+            long raceChatId = chatId;
+            Thread tenthItem = new Thread(() -> {
+                await(start);
+                handler.handleMedia(photo(raceChatId, ALBUM_SIZE), UpdateKind.PHOTO);
+            });
+            tenthItem.start();
+            await(start);
+            timer.run();
+            tenthItem.join(5000);
+
+            // O que a disputa deixou para depois (sobra e exclusões) roda em seguida
+            timers.runAll();
+
+            // Quem retirar o lote primeiro o envia inteiro: um único álbum com as nove
+            // primeiras mídias, em ordem, e a décima nele ou fora de qualquer álbum
+            List<List<String>> albums = sentAlbums.get(chatId);
+            assertEquals("chat " + chatId, 1, albums.size());
+            List<String> files = albums.get(0);
+            assertTrue("chat " + chatId, files.size() == ALBUM_SIZE || files.size() == ALBUM_SIZE - 1);
+            for (int i = 0; i < files.size(); i++) {
+                assertEquals(fileId(chatId, i + 1), files.get(i));
+            }
+            // Fora do álbum, a décima fica esperando uma companheira
+            assertEquals(ALBUM_SIZE - files.size(),
+                    bot.getSessionService().getSession(chatId).getPendingMediaCount());
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.telegram.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CommandTest {
+    private static final String BOT = "AlbumMakerBot";
+
+    @Test
+    public void parsesNamesAndAliasesIgnoringCase() {
+        assertEquals(Command.START, Command.parse("/start", BOT));
+        assertEquals(Command.HELP, Command.parse("/HELP argumento", BOT));
+        assertEquals(Command.PUBLISH, Command.parse("/publicar", BOT));
+        assertEquals(Command.UNKNOWN, Command.parse("/nada", BOT));
+        assertEquals(Command.UNKNOWN, Command.parse("/um_comando_muito_comprido", BOT));
+        assertNull(Command.parse("texto", BOT));
+        assertNull(Command.parse("", BOT));
+        assertNull(Command.parse(null, BOT));
+    }
+
+    @Test
+    public void acceptsMentionOfThisBot() {
+        assertEquals(Command.START, Command.parse("/start@AlbumMakerBot", BOT));
+        assertEquals(Command.PUBLISH, Command.parse("/publish@albummakerbot agora", BOT));
+        assertEquals(Command.CANCEL, Command.parse("/cancel@AlbumMakerBot", "@AlbumMakerBot"));
+    }
+
+    @Test
+    public void ignoresCommandsForOtherBots() {
+        assertNull(Command.parse("/start@otherbot", BOT));
+        assertNull(Command.parse("/publish@otherbot", BOT));
+        assertNull(Command.parse("/start@AlbumMakerBot2", BOT));
+        assertNull(Command.parse("/start@AlbumMaker", BOT));
+        assertNull(Command.parse("/nada@otherbot", BOT));
+    }
+
+    @Test
+    public void acceptsAnyMentionWithoutUsername() {
+        assertEquals(Command.START, Command.parse("/start@otherbot", null));
+        assertEquals(Command.START, Command.parse("/start@otherbot", ""));
+    }
+}
@@ -0,0 +1,93 @@
+package org.telegram.model;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserSessionTest {
+    private final Clock clock = Clock.fixed(Instant.ofEpochMilli(1_000_000L), ZoneOffset.UTC);
+
+    private MediaItem photo(int messageId) {
+        return new MediaItem("file-" + messageId, null, MediaItem.MediaType.PHOTO, messageId, clock.millis());
+    }
+
+    private Album album() {
+        return new Album(Arrays.asList(photo(1), photo(2)), clock);
+    }
+
+    @Test
+    public void idleCannotWaitForCaptionDirectly() {
+        assertFalse(UserSession.SessionState.IDLE.canMoveTo(UserSession.SessionState.WAITING_FOR_CAPTION));
+        assertTrue(UserSession.SessionState.IDLE.canMoveTo(UserSession.SessionState.COLLECTING_MEDIA));
+        assertTrue(UserSession.SessionState.COLLECTING_MEDIA.canMoveTo(UserSession.SessionState.WAITING_FOR_CAPTION));
+        assertTrue(UserSession.SessionState.WAITING_FOR_CAPTION.canMoveTo(UserSession.SessionState.COLLECTING_MEDIA));
+        assertTrue(UserSession.SessionState.WAITING_FOR_CAPTION.canMoveTo(UserSession.SessionState.IDLE));
+    }
+
+    @Test
+    public void setStateRejectsInvalidTransition() {
+        UserSession session = new UserSession(1L, clock);
+        try {
+            session.setState(UserSession.SessionState.WAITING_FOR_CAPTION);
+            fail("IDLE -> WAITING_FOR_CAPTION deveria ser rejeitada");
+        } catch (IllegalStateException expected) {
+            assertEquals(UserSession.SessionState.IDLE, session.getState());
+        }
+    }
+
+    @Test
+    public void lastAlbumOnIdleSessionIsRejected() {
+        UserSession session = new UserSession(1L, clock);
+        try {
+            session.setLastAlbum(album());
+            fail("Álbum numa sessão que não coletou mídias deveria ser rejeitado");
+        } catch (IllegalStateException expected) {
+            assertEquals(null, session.getLastAlbum());
+            assertEquals(UserSession.SessionState.IDLE, session.getState());
+        }
+    }
+
+    @Test
+    public void collectedBatchMovesToWaitingForCaption() {
+        UserSession session = new UserSession(1L, clock);
+        session.addMedia(photo(1));
+        session.addMedia(photo(2));
+        assertEquals(UserSession.SessionState.COLLECTING_MEDIA, session.getState());
+
+        UserSession.Batch batch = session.drainBatch(2);
+        assertSame(session, batch.getSession());
+        Album album = new Album(batch.read(0, batch.size()), clock);
+        session.setLastAlbum(album);
+
+        assertEquals(UserSession.SessionState.WAITING_FOR_CAPTION, session.getState());
+        assertSame(album, session.getLastAlbum());
+    }
+
+    @Test
+    public void leftoverIsTakenOnlyAfterEagerAlbums() {
+        UserSession session = new UserSession(1L, clock);
+        session.addMedia(photo(1));
+        assertEquals(null, session.takeLeftover(1));
+        assertEquals(1, session.getPendingMediaCount());
+
+        session.addMedia(photo(2));
+        session.addMedia(photo(3));
+        UserSession.Batch album = session.takeFullAlbums(2, 1);
+        assertEquals(2, album.size());
+
+        UserSession.Batch leftover = session.takeLeftover(1);
+        assertEquals(1, leftover.size());
+        assertEquals(1, leftover.getFlushedAlbums());
+        assertEquals(0, session.getPendingMediaCount());
+        assertEquals(0, session.completeBatch());
+    }
+}
@@ -0,0 +1,50 @@
+package org.telegram.service;
+
+import org.junit.Test;
+import org.telegram.model.MediaItem;
+
+import static org.junit.Assert.assertEquals;
+
+public class AlbumExporterTest {
+
+    private static String entryName(String fileName) {
+        return AlbumExporter.entryName(new MediaItem("ABCDEFGHIJKLMNOP", fileName, MediaItem.MediaType.DOCUMENT, 1, 0L));
+    }
+
+    @Test
+    public void keepsPlainNames() {
+        assertEquals("relatorio final.pdf", entryName("relatorio final.pdf"));
+    }
+
+    @Test
+    public void dropsParentDirectorySegments() {
+        assertEquals("x", entryName("../../x"));
+        assertEquals("passwd", entryName("../../../etc/passwd"));
+    }
+
+    @Test
+    public void dropsAbsolutePaths() {
+        assertEquals("x.jpg", entryName("/tmp/x.jpg"));
+        assertEquals("x.jpg", entryName("C:\\Windows\\x.jpg"));
+        assertEquals("C_x.jpg", entryName("C:x.jpg"));
+    }
+
+    @Test
+    public void dropsBackslashSegments() {
+        assertEquals("x", entryName("..\\..\\x"));
+        assertEquals("x", entryName("a/b\\..\\x"));
+    }
+
+    @Test
+    public void replacesControlCharacters() {
+        assertEquals("a_b.txt", entryName("a\nb.txt"));
+    }
+
+    @Test
+    public void fallsBackToDefaultNameWhenNothingIsLeft() {
+        assertEquals("document_ABCDEFGHIJ", entryName(".."));
+        assertEquals("document_ABCDEFGHIJ", entryName("../.."));
+        assertEquals("document_ABCDEFGHIJ", entryName("dir/"));
+        assertEquals("document_ABCDEFGHIJ", entryName("  "));
+    }
+}
@@ -0,0 +1,143 @@
+package org.telegram.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.bot.AlbumMakerBot;
+import org.telegram.bot.BotHost;
+import org.telegram.config.BotConfig;
+import org.telegram.config.TestConfig;
+import org.telegram.model.Album;
+import org.telegram.model.MediaItem;
+import org.telegram.model.PublishReport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Publicação por um bot completo sobre um transporte falso, que responde na hora e
+ * registra quando cada envio chegou.
+ */
+public class AlbumPublisherTest {
+    private static final int CALLS_PER_SECOND = 10;
+    private static final String BUSY_TARGET = "@ocupado";
+
+    private final FakeTransport transport = new FakeTransport();
+    private BotHost host;
+    private AlbumMakerBot bot;
+
+    /**
+     * Responde sucesso a todo grupo de mídia, menos ao primeiro envio para {@link #BUSY_TARGET},
+     * que recebe um 429 com retry_after
+     */
+    private static final class FakeTransport implements ApiTransport {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        final List<Long> sendNanos = new CopyOnWriteArrayList<>();
+        final List<String> targets = new CopyOnWriteArrayList<>();
+        private final Set<String> limited = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public String post(String url, String jsonBody, CallType type) throws IOException {
+            sendNanos.add(System.nanoTime());
+            String target = objectMapper.readTree(jsonBody).get("chat_id").asText();
+            targets.add(target);
+            if (target.equals(BUSY_TARGET) && limited.add(target)) {
+                return "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 1\","
+                        + "\"parameters\":{\"retry_after\":1}}";
+            }
+            return "{\"ok\":true,\"result\":[{\"message_id\":7,\"date\":0,\"chat\":{\"id\":1,\"type\":\"private\"}}]}";
+        }
+
+        @Override
+        public String post(String url, byte[] jsonBody, int length, CallType type) throws IOException {
+            return post(url, new String(jsonBody, 0, length, StandardCharsets.UTF_8), type);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        TestConfig.apply("ingress.lanes", "0",
+                "outbound.threads", "1",
+                "tenant.maxCallsPerSecond", String.valueOf(CALLS_PER_SECOND),
+                "publish.concurrency", "4",
+                "publish.maxRetryAfterSeconds", "1");
+    }
+
+    @Before
+    public void start() {
+        host = new BotHost(new MetricsService(), Clock.systemUTC(), new ExecutorTaskScheduler("test-media", 1),
+                new ExecutorTaskScheduler("test-maintenance", 1), transport);
+        bot = host.createBot(BotConfig.getTenants().get(0));
+    }
+
+    @After
+    public void stop() {
+        host.shutdown();
+    }
+
+    private static Album album() {
+        return new Album(Arrays.asList(
+                new MediaItem("PHOTO-A", null, MediaItem.MediaType.PHOTO, 1, 0L),
+                new MediaItem("PHOTO-B", null, MediaItem.MediaType.PHOTO, 2, 0L)));
+    }
+
+    private static List<String> targets(int count) {
+        List<String> targets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            targets.add(String.valueOf(1000 + i));
+        }
+        return targets;
+    }
+
+    @Test
+    public void sendsArePacedByTheBotLimit() throws Exception {
+        int count = 2 * CALLS_PER_SECOND;
+        PublishReport report = bot.getAlbumPublisher().publishAsync(album(), targets(count)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(count, report.getSuccessCount());
+        assertEquals(count, transport.sendNanos.size());
+
+        // Com 4 threads, sem o limite tudo sairia de uma vez; com ele, uma chamada a cada 100 ms
+        long spanMillis = TimeUnit.NANOSECONDS.toMillis(
+                transport.sendNanos.get(count - 1) - transport.sendNanos.get(0));
+        assertTrue("Intervalo: " + spanMillis, spanMillis >= (count - 2) * 1000L / CALLS_PER_SECOND);
+        for (int i = CALLS_PER_SECOND; i < count; i++) {
+            long gapMillis = TimeUnit.NANOSECONDS.toMillis(
+                    transport.sendNanos.get(i) - transport.sendNanos.get(i - CALLS_PER_SECOND));
+            assertTrue("Janela de " + CALLS_PER_SECOND + " envios: " + gapMillis, gapMillis >= 800);
+        }
+    }
+
+    @Test
+    public void retryAfterIsHonouredOnce() throws Exception {
+        List<String> targets = Arrays.asList("1000", BUSY_TARGET, "1001");
+        PublishReport report = bot.getAlbumPublisher().publishAsync(album(), targets).get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, report.getSuccessCount());
+        assertEquals(4, transport.targets.size());
+
+        int first = transport.targets.indexOf(BUSY_TARGET);
+        int retry = transport.targets.lastIndexOf(BUSY_TARGET);
+        assertTrue(retry > first);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(
+                transport.sendNanos.get(retry) - transport.sendNanos.get(first));
+        assertTrue("Espera: " + waitedMillis, waitedMillis >= 1000);
+    }
+}
@@ -0,0 +1,122 @@
+package org.telegram.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.config.TestConfig;
+import org.telegram.model.MediaItem;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class CollageRendererTest {
+    private static final int TILE = 64;
+
+    private final MetricsService metrics = new MetricsService();
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private CollageRenderer renderer;
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        TestConfig.apply("collage.parallelism", "2",
+                "collage.tileSize", String.valueOf(TILE),
+                "collage.memoryBudgetMb", "8");
+    }
+
+    @Before
+    public void start() {
+        // Origem em memória: fileIds desconhecidos falham como um download que não chegou
+        renderer = new CollageRenderer(fileId -> {
+            byte[] content = files.get(fileId);
+            if (content == null) {
+                throw new IOException("Arquivo inexistente: " + fileId);
+            }
+            return Channels.newChannel(new ByteArrayInputStream(content));
+        }, metrics);
+    }
+
+    @After
+    public void stop() {
+        renderer.shutdown();
+    }
+
+    private MediaItem photo(String fileId, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.ORANGE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        files.put(fileId, output.toByteArray());
+        return new MediaItem(fileId, null, MediaItem.MediaType.PHOTO, 1, 0L);
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(image);
+        return image;
+    }
+
+    @Test
+    public void laysPhotosOutInASquareGrid() throws Exception {
+        List<MediaItem> items = Arrays.asList(photo("a", 200, 100), photo("b", 100, 300), photo("c", 640, 480),
+                new MediaItem("video", null, MediaItem.MediaType.VIDEO, 4, 0L));
+
+        BufferedImage collage = decode(renderer.render(items));
+
+        // Três fotos (o vídeo é ignorado): grade 2x2
+        assertEquals(2 * TILE, collage.getWidth());
+        assertEquals(2 * TILE, collage.getHeight());
+        assertEquals(1, metrics.getCount("collage.rendered"));
+    }
+
+    @Test
+    public void missingPhotoLeavesAnEmptyTile() throws Exception {
+        List<MediaItem> items = Arrays.asList(photo("a", 100, 100),
+                new MediaItem("sumiu", null, MediaItem.MediaType.PHOTO, 2, 0L));
+
+        BufferedImage collage = decode(renderer.render(items));
+
+        assertEquals(2 * TILE, collage.getWidth());
+        assertEquals(1, metrics.getCount("collage.failed"));
+    }
+
+    @Test
+    public void concurrentRendersShareTheBudgetWithoutStalling() throws Exception {
+        // Fotos estreitas não são subamostradas: cada decodificação reserva o orçamento inteiro
+        List<MediaItem> items = Arrays.asList(photo("alta-1", TILE, 40_000), photo("alta-2", TILE, 40_000));
+
+        List<CompletableFuture<byte[]>> renders = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            renders.add(renderer.renderAsync(items));
+        }
+        for (CompletableFuture<byte[]> render : renders) {
+            assertEquals(2 * TILE, decode(render.get(30, TimeUnit.SECONDS)).getWidth());
+        }
+        assertEquals(8192, (long) metrics.snapshot().get("collage.budget.availableKb"));
+    }
+}
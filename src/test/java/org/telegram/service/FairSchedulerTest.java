@@ -0,0 +1,160 @@
+package org.telegram.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.config.TestConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FairSchedulerTest {
+    private static final int MAX_QUEUED = 32;
+    private static final long BLOCKER_CHAT = 100L;
+    private static final long PREMIUM_CHAT = 3L;
+
+    private final MetricsService metrics = new MetricsService();
+    private final CountDownLatch blockerRunning = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Long> executed = new CopyOnWriteArrayList<>();
+    private FairScheduler scheduler;
+    private FairScheduler.Tenant tenant;
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        // Uma thread de saída: a ordem de execução é exatamente a ordem de escolha
+        TestConfig.apply("outbound.threads", "1",
+                "outbound.maxQueuedPerChat", String.valueOf(MAX_QUEUED),
+                "outbound.premiumChats", String.valueOf(PREMIUM_CHAT),
+                "outbound.premiumWeight", "4");
+    }
+
+    @Before
+    public void start() throws Exception {
+        scheduler = new FairScheduler(metrics);
+        tenant = scheduler.addTenant(new RateLimiter(() -> 100000), metrics);
+
+        // Prender a única thread, para que as tarefas seguintes se acumulem nas filas
+        assertTrue(tenant.submit(BLOCKER_CHAT, 1, () -> {
+            blockerRunning.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(blockerRunning.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void stop() {
+        release.countDown();
+        scheduler.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    private CountDownLatch submitAll(long chatId, int count, CountDownLatch done) {
+        for (int i = 0; i < count; i++) {
+            assertTrue(tenant.submit(chatId, 1, () -> {
+                executed.add(chatId);
+                done.countDown();
+            }));
+        }
+        return done;
+    }
+
+    private List<Long> runQueued(int expected, CountDownLatch done) throws InterruptedException {
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(expected, executed.size());
+        return new ArrayList<>(executed);
+    }
+
+    @Test
+    public void lightChatIsNotStarvedByHeavyChat() throws Exception {
+        CountDownLatch done = new CountDownLatch(23);
+        submitAll(1L, 20, done);
+        submitAll(2L, 3, done);
+
+        List<Long> order = runQueued(23, done);
+
+        // As três tarefas do chat leve intercalam com as do pesado, em vez de esperar as 20
+        assertTrue("Ordem: " + order, order.lastIndexOf(2L) < 8);
+    }
+
+    @Test
+    public void premiumChatGetsItsWeightPerRound() throws Exception {
+        CountDownLatch done = new CountDownLatch(24);
+        submitAll(1L, 12, done);
+        submitAll(PREMIUM_CHAT, 12, done);
+
+        List<Long> order = runQueued(24, done);
+
+        int premium = 0;
+        for (long chatId : order.subList(0, 10)) {
+            if (chatId == PREMIUM_CHAT) {
+                premium++;
+            }
+        }
+        assertTrue("Ordem: " + order, premium >= 7);
+        assertTrue("Ordem: " + order, order.subList(0, 10).contains(1L));
+    }
+
+    @Test
+    public void tasksOfAChatRunInSubmissionOrder() throws Exception {
+        List<Integer> sequence = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            int index = i;
+            assertTrue(tenant.submit(1L, 1 + i % 3, () -> {
+                sequence.add(index);
+                done.countDown();
+            }));
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) sequence.get(i));
+        }
+    }
+
+    @Test
+    public void chatQuotaRejectsBeyondTheLimit() throws Exception {
+        assertEquals(MAX_QUEUED, tenant.getRemainingQuota(1L));
+        CountDownLatch done = new CountDownLatch(MAX_QUEUED);
+        submitAll(1L, MAX_QUEUED, done);
+        assertEquals(0, tenant.getRemainingQuota(1L));
+
+        assertFalse(tenant.submit(1L, 1, () -> executed.add(1L)));
+        assertEquals(1, metrics.getCount("outbound.rejected"));
+
+        // A cota é por chat: os outros continuam aceitando
+        assertEquals(MAX_QUEUED, tenant.getRemainingQuota(2L));
+        runQueued(MAX_QUEUED, done);
+    }
+
+    @Test
+    public void throttledTenantDoesNotHoldTheOthers() throws Exception {
+        FairScheduler.Tenant slow = scheduler.addTenant(new RateLimiter(() -> 2), metrics);
+        CountDownLatch slowDone = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(slow.submit(5L, 1, slowDone::countDown));
+        }
+        CountDownLatch fastDone = new CountDownLatch(1);
+        assertTrue(tenant.submit(6L, 1, fastDone::countDown));
+
+        // O bot lento só libera uma chamada a cada 500 ms; o outro não espera por ele
+        release.countDown();
+        assertTrue(fastDone.await(1, TimeUnit.SECONDS));
+        assertTrue(slowDone.getCount() > 0);
+        assertTrue(slowDone.await(5, TimeUnit.SECONDS));
+    }
+}
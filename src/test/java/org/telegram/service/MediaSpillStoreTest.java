@@ -0,0 +1,93 @@
+package org.telegram.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.model.MediaItem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaSpillStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MetricsService metrics = new MetricsService();
+    private Path file;
+    private MediaSpillStore store;
+
+    @Before
+    public void open() throws Exception {
+        file = folder.getRoot().toPath().resolve("spill").resolve("media-spill.bin");
+        store = new MediaSpillStore(file, 0, metrics);
+    }
+
+    @After
+    public void close() {
+        store.close();
+    }
+
+    @Test
+    public void roundTripsAllFields() {
+        MediaItem item = new MediaItem("ABCDEFGHIJKLMNOP", "relatório.pdf", MediaItem.MediaType.DOCUMENT, 42, 1234L);
+        int slot = store.write(item);
+
+        MediaItem read = store.read(slot);
+        assertEquals("ABCDEFGHIJKLMNOP", read.getFileId());
+        assertEquals("relatório.pdf", read.getFileName());
+        assertEquals(MediaItem.MediaType.DOCUMENT, read.getType());
+        assertEquals(42, (int) read.getMessageId());
+        assertEquals(1234L, read.getReceivedAtMillis());
+        assertEquals(1, store.getRecordsInUse());
+    }
+
+    @Test
+    public void keepsTheDefaultNameLazy() {
+        MediaItem item = new MediaItem("ABCDEFGHIJKLMNOP", null, MediaItem.MediaType.PHOTO, null, 1L);
+        // O nome padrão já gerado não vai para o registro
+        assertEquals("photo_ABCDEFGHIJ.jpg", item.getFileName());
+        int slot = store.write(item);
+
+        MediaItem read = store.read(slot);
+        assertNull(read.getOriginalFileName());
+        assertNull(read.getMessageId());
+        assertEquals("photo_ABCDEFGHIJ.jpg", read.getFileName());
+    }
+
+    @Test
+    public void reusesFreedRecords() {
+        int first = store.write(new MediaItem("A", null, MediaItem.MediaType.PHOTO, 1, 1L));
+        store.free(first);
+        assertEquals(0, store.getRecordsInUse());
+
+        assertEquals(first, store.write(new MediaItem("B", null, MediaItem.MediaType.VIDEO, 2, 2L)));
+        assertEquals("B", store.read(first).getFileId());
+    }
+
+    @Test
+    public void rejectsRecordsThatDoNotFit() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < MediaSpillStore.RECORD_BYTES; i++) {
+            name.append('x');
+        }
+        assertEquals(-1, store.write(new MediaItem("A", name.toString(), MediaItem.MediaType.DOCUMENT, 1, 1L)));
+        assertEquals(1, metrics.getCount("media.spill.rejected"));
+    }
+
+    @Test
+    public void closeDeletesTheFileAndRefusesNewRecords() {
+        store.write(new MediaItem("A", null, MediaItem.MediaType.PHOTO, 1, 1L));
+        assertTrue(Files.exists(file));
+
+        store.close();
+        assertFalse(Files.exists(file));
+        assertEquals(-1, store.write(new MediaItem("B", null, MediaItem.MediaType.PHOTO, 2, 2L)));
+    }
+}
@@ -0,0 +1,212 @@
+package org.telegram.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.bot.AlbumMakerBot;
+import org.telegram.bot.BotHost;
+import org.telegram.config.BotConfig;
+import org.telegram.config.TestConfig;
+import org.telegram.model.MediaItem;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Chamadas de um bot completo pelo transporte com pool, contra um servidor HTTP local que
+ * faz o papel da Bot API: confere o corpo enviado e a conversão das respostas de erro.
+ */
+public class PooledHttpTransportTest {
+    private static final String API_HOST = "https://api.telegram.org";
+    private static final String TOO_MANY_REQUESTS = "{\"ok\":false,\"error_code\":429,"
+            + "\"description\":\"Too Many Requests: retry after 3\",\"parameters\":{\"retry_after\":3}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MetricsService transportMetrics = new MetricsService();
+    // Caminho, tipo de conteúdo e corpo de cada requisição recebida
+    private final List<String[]> requests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private PooledHttpTransport transport;
+    private BotHost host;
+    private AlbumMakerBot bot;
+
+    /**
+     * Troca o endereço da Bot API pelo do servidor local, mantendo o transporte real
+     */
+    private static final class LocalTransport implements ApiTransport {
+        private final ApiTransport delegate;
+        private final String baseUrl;
+
+        LocalTransport(ApiTransport delegate, String baseUrl) {
+            this.delegate = delegate;
+            this.baseUrl = baseUrl;
+        }
+
+        @Override
+        public String post(String url, String jsonBody, CallType type) throws IOException {
+            return delegate.post(url.replace(API_HOST, baseUrl), jsonBody, type);
+        }
+
+        @Override
+        public String post(String url, byte[] jsonBody, int length, CallType type) throws IOException {
+            return delegate.post(url.replace(API_HOST, baseUrl), jsonBody, length, type);
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+    }
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        TestConfig.apply("ingress.lanes", "0",
+                "outbound.threads", "0");
+    }
+
+    @Before
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::respond);
+        server.start();
+
+        transport = new PooledHttpTransport(transportMetrics);
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        host = new BotHost(new MetricsService(), Clock.systemUTC(), new ExecutorTaskScheduler("test-media", 1),
+                new ExecutorTaskScheduler("test-maintenance", 1), new LocalTransport(transport, baseUrl));
+        bot = host.createBot(BotConfig.getTenants().get(0));
+    }
+
+    @After
+    public void stop() {
+        host.shutdown();
+        transport.shutdown();
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Envios de mensagem dão certo; grupos de mídia recebem 429 com retry_after
+     */
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.add(new String[] {path, exchange.getRequestHeaders().getFirst("Content-Type"), readBody(exchange)});
+
+        int status;
+        String response;
+        if (path.endsWith("/" + SendMessage.PATH)) {
+            status = 200;
+            response = "{\"ok\":true,\"result\":{\"message_id\":7,\"date\":0,\"chat\":{\"id\":42,\"type\":\"private\"}}}";
+        } else {
+            status = 429;
+            response = TOO_MANY_REQUESTS;
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream input = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void methodIsPostedAsJsonWithBotApiFieldNames() throws Exception {
+        SendMessage sendMessage = new SendMessage("42", "olá, álbum");
+        sendMessage.setReplyToMessageId(5);
+
+        Message message = bot.execute(sendMessage);
+
+        assertEquals(Integer.valueOf(7), message.getMessageId());
+        assertEquals(1, requests.size());
+        assertEquals("/bot0:test/" + SendMessage.PATH, requests.get(0)[0]);
+        assertTrue(requests.get(0)[1].startsWith("application/json"));
+
+        JsonNode body = objectMapper.readTree(requests.get(0)[2]);
+        assertEquals("42", body.get("chat_id").asText());
+        assertEquals("olá, álbum", body.get("text").asText());
+        assertEquals(5, body.get("reply_to_message_id").asInt());
+        assertEquals(1, transportMetrics.getCount("transport.requests.text"));
+    }
+
+    @Test
+    public void tooManyRequestsBecomesRequestExceptionWithRetryAfter() throws Exception {
+        List<MediaItem> items = Arrays.asList(
+                new MediaItem("PHOTO-A", null, MediaItem.MediaType.PHOTO, 1, 0L),
+                new MediaItem("VIDEO-B", "clipe.mp4", MediaItem.MediaType.VIDEO, 2, 0L));
+
+        try {
+            bot.sendMediaGroup(42, items);
+            fail("Um 429 deveria virar TelegramApiRequestException");
+        } catch (TelegramApiRequestException e) {
+            assertEquals(Integer.valueOf(429), e.getErrorCode());
+            assertEquals(Integer.valueOf(3), e.getParameters().getRetryAfter());
+        }
+
+        // O corpo montado direto dos itens, sem passar pelos objetos da biblioteca
+        assertEquals("/bot0:test/" + SendMediaGroup.PATH, requests.get(0)[0]);
+        JsonNode body = objectMapper.readTree(requests.get(0)[2]);
+        assertEquals(42, body.get("chat_id").asLong());
+        JsonNode media = body.get("media");
+        assertEquals(2, media.size());
+        assertEquals("photo", media.get(0).get("type").asText());
+        assertEquals("PHOTO-A", media.get(0).get("media").asText());
+        assertEquals("video", media.get(1).get("type").asText());
+        assertEquals("VIDEO-B", media.get(1).get("media").asText());
+
+        // Um erro da API não é falha de transporte
+        assertEquals(1, transportMetrics.getCount("transport.requests.media"));
+        assertEquals(0, transportMetrics.getCount("transport.errors"));
+    }
+
+    @Test
+    public void unreachableServerBecomesApiExceptionAndIsCounted() throws Exception {
+        server.stop(0);
+        server = null;
+
+        try {
+            bot.execute(new SendMessage("42", "sem servidor"));
+            fail("Sem servidor a chamada deveria falhar");
+        } catch (TelegramApiRequestException e) {
+            fail("Falha de rede não é resposta da API: " + e);
+        } catch (TelegramApiException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, transportMetrics.getCount("transport.errors"));
+    }
+}
@@ -0,0 +1,65 @@
+package org.telegram.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private static long delayMillis(RateLimiter limiter) {
+        return TimeUnit.NANOSECONDS.toMillis(limiter.getDelayNanos(System.nanoTime()));
+    }
+
+    @Test
+    public void freshLimiterHasNoDelay() {
+        assertEquals(0, delayMillis(new RateLimiter(() -> 10)));
+    }
+
+    @Test
+    public void consumingSpacesTheNextCalls() {
+        RateLimiter limiter = new RateLimiter(() -> 10);
+        limiter.consume(5);
+
+        long delay = delayMillis(limiter);
+        assertTrue("Espera: " + delay, delay > 400 && delay <= 500);
+    }
+
+    @Test
+    public void debtBeyondTheBurstNeverBlocks() {
+        RateLimiter limiter = new RateLimiter(() -> 10);
+
+        long start = System.nanoTime();
+        limiter.consume(30);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+
+        // A dívida fica para as próximas chamadas: três segundos a 10 por segundo
+        long delay = delayMillis(limiter);
+        assertTrue("Espera: " + delay, delay > 2900 && delay <= 3000);
+    }
+
+    @Test
+    public void limitFollowsTheSupplier() {
+        AtomicInteger permitsPerSecond = new AtomicInteger(10);
+        RateLimiter limiter = new RateLimiter(permitsPerSecond::get);
+        limiter.consume(1);
+
+        // Após a recarga, cada chamada custa 1 ms em vez de 100 ms
+        permitsPerSecond.set(1000);
+        limiter.consume(10);
+
+        long delay = delayMillis(limiter);
+        assertTrue("Espera: " + delay, delay > 80 && delay <= 110);
+    }
+
+    @Test
+    public void idleCreditIsCappedAtOneSecond() {
+        RateLimiter limiter = new RateLimiter(() -> 10);
+        long later = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        assertEquals(0, limiter.getDelayNanos(later));
+    }
+}
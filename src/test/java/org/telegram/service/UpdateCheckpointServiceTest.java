@@ -0,0 +1,128 @@
+package org.telegram.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.config.TestConfig;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UpdateCheckpointServiceTest {
+    private static final int WINDOW = 64;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorTaskScheduler scheduler = new ExecutorTaskScheduler("checkpoint-test", 1);
+    private Path stateDir;
+    private UpdateCheckpointService checkpoint;
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        // Gravação só quando o teste chamar flush()
+        TestConfig.apply("checkpoint.windowSize", String.valueOf(WINDOW),
+                "checkpoint.flushIntervalMillis", "3600000");
+    }
+
+    @Before
+    public void open() throws Exception {
+        stateDir = folder.newFolder("state").toPath();
+        checkpoint = new UpdateCheckpointService(stateDir, scheduler);
+    }
+
+    @After
+    public void close() {
+        checkpoint.shutdown();
+        scheduler.shutdown();
+    }
+
+    private void process(int... updateIds) {
+        for (int updateId : updateIds) {
+            assertTrue(checkpoint.begin(updateId));
+            checkpoint.complete(updateId);
+        }
+    }
+
+    @Test
+    public void dropsUpdatesAlreadySeen() {
+        assertTrue(checkpoint.begin(10));
+        assertFalse(checkpoint.begin(10));
+
+        checkpoint.complete(10);
+        assertFalse(checkpoint.begin(10));
+
+        checkpoint.flush();
+        assertEquals(10, checkpoint.getCommittedOffset());
+        assertFalse(checkpoint.begin(9));
+    }
+
+    @Test
+    public void offsetStopsBeforeOldestUpdateInFlight() {
+        for (int id = 1; id <= 5; id++) {
+            assertTrue(checkpoint.begin(id));
+        }
+        checkpoint.complete(1);
+        checkpoint.complete(2);
+        checkpoint.complete(4);
+        checkpoint.complete(5);
+
+        checkpoint.flush();
+        assertEquals(2, checkpoint.getCommittedOffset());
+
+        checkpoint.complete(3);
+        checkpoint.flush();
+        assertEquals(5, checkpoint.getCommittedOffset());
+    }
+
+    @Test
+    public void skippedIdsDoNotHoldTheOffset() {
+        // O Telegram não garante ids consecutivos
+        process(1, 3, 7);
+        checkpoint.flush();
+        assertEquals(7, checkpoint.getCommittedOffset());
+    }
+
+    @Test
+    public void offsetSurvivesRestart() {
+        process(1, 2, 3);
+        checkpoint.shutdown();
+
+        checkpoint = new UpdateCheckpointService(stateDir, scheduler);
+        assertEquals(3, checkpoint.getCommittedOffset());
+        assertFalse(checkpoint.begin(3));
+        assertTrue(checkpoint.begin(4));
+    }
+
+    @Test
+    public void dropsIdsOlderThanTheWindow() {
+        assertTrue(checkpoint.begin(1));
+        process(200);
+
+        // Ainda em processamento, mas já fora da janela: não segura o checkpoint
+        checkpoint.flush();
+        assertEquals(200, checkpoint.getCommittedOffset());
+        assertFalse(checkpoint.begin(200 - WINDOW));
+        assertTrue(checkpoint.begin(201));
+    }
+
+    @Test
+    public void restartsWhenTelegramResetsTheSequence() {
+        process(5000, 5001);
+        checkpoint.flush();
+        assertEquals(5001, checkpoint.getCommittedOffset());
+
+        // Após uma semana sem atualizações o update_id recomeça de um valor sorteado
+        assertTrue(checkpoint.begin(10));
+        checkpoint.complete(10);
+        checkpoint.flush();
+        assertEquals(10, checkpoint.getCommittedOffset());
+        assertFalse(checkpoint.begin(10));
+    }
+}
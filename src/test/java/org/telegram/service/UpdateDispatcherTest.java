@@ -0,0 +1,119 @@
+package org.telegram.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.config.TestConfig;
+import org.telegram.model.UpdateKind;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UpdateDispatcherTest {
+    private static final int CAPACITY = 10;
+
+    private final MetricsService metrics = new MetricsService();
+    private final CountDownLatch firstHandled = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Integer> handled = new CopyOnWriteArrayList<>();
+    private UpdateDispatcher dispatcher;
+
+    private final UpdateDispatcher.UpdateHandler handler = (update, kind) -> {
+        firstHandled.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        handled.add(update.getUpdateId());
+    };
+
+    @BeforeClass
+    public static void configure() throws Exception {
+        TestConfig.apply("ingress.lanes", "1",
+                "ingress.laneCapacity", String.valueOf(CAPACITY));
+    }
+
+    @Before
+    public void occupyLane() throws Exception {
+        dispatcher = new UpdateDispatcher(metrics);
+        // A primeira atualização prende a faixa, para que as seguintes fiquem na fila
+        assertEquals(UpdateDispatcher.Admission.ACCEPTED, dispatcher.submit(handler, 1L, update(0), UpdateKind.PHOTO));
+        assertTrue(firstHandled.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void drain() {
+        release.countDown();
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    private static Update update(int id) {
+        Update update = new Update();
+        update.setUpdateId(id);
+        return update;
+    }
+
+    @Test
+    public void shedsLowPriorityFirstThenNormal() {
+        int id = 1;
+        // Texto sem comando entra até metade da capacidade
+        for (int i = 0; i < CAPACITY / 2; i++) {
+            assertEquals(UpdateDispatcher.Admission.ACCEPTED, dispatcher.submit(handler, 1L, update(id++), UpdateKind.TEXT));
+        }
+        assertEquals(UpdateDispatcher.Admission.SHED, dispatcher.submit(handler, 1L, update(id++), UpdateKind.TEXT));
+
+        // Comandos e legendas entram até 80%
+        for (int i = CAPACITY / 2; i < CAPACITY * 8 / 10; i++) {
+            assertEquals(UpdateDispatcher.Admission.ACCEPTED, dispatcher.submit(handler, 1L, update(id++), UpdateKind.COMMAND));
+        }
+        assertEquals(UpdateDispatcher.Admission.SHED, dispatcher.submit(handler, 1L, update(id++), UpdateKind.CAPTION_REPLY));
+
+        assertEquals(1, metrics.getCount("ingress.shed.low"));
+        assertEquals(1, metrics.getCount("ingress.shed.normal"));
+        assertEquals(CAPACITY * 8 / 10, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void highPriorityIsNeverShed() {
+        int id = 1;
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(UpdateDispatcher.Admission.ACCEPTED, dispatcher.submit(handler, 1L, update(id++), UpdateKind.PHOTO));
+        }
+        assertEquals(0, metrics.getCount("ingress.overflow.high"));
+
+        // Faixa cheia: entra além da capacidade sem prender a thread que entrega as atualizações
+        long start = System.nanoTime();
+        assertEquals(UpdateDispatcher.Admission.ACCEPTED, dispatcher.submit(handler, 1L, update(id++), UpdateKind.CANCEL_COMMAND));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        assertEquals(UpdateDispatcher.Admission.ACCEPTED, dispatcher.submit(handler, 1L, update(id++), UpdateKind.VIDEO));
+
+        assertEquals(2, metrics.getCount("ingress.overflow.high"));
+        assertEquals(0, metrics.getCount("ingress.shed.high"));
+        assertEquals(CAPACITY + 2, dispatcher.getQueueDepth());
+
+        // Nada do que foi aceito se perde, e a ordem do chat é preservada
+        release.countDown();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(CAPACITY + 3, handled.size());
+        for (int i = 0; i < handled.size(); i++) {
+            assertEquals(i, (int) handled.get(i));
+        }
+    }
+
+    @Test
+    public void submitAfterShutdownIsRefused() {
+        release.countDown();
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(UpdateDispatcher.Admission.REFUSED, dispatcher.submit(handler, 1L, update(1), UpdateKind.PHOTO));
+        assertEquals(1, metrics.getCount("ingress.rejected.shutdown"));
+    }
+}
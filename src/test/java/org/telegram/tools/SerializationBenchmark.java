@@ -0,0 +1,165 @@
+package org.telegram.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.telegram.model.MediaItem;
+import org.telegram.service.InputMediaConverter;
+import org.telegram.service.JsonRequestWriter;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageCaption;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compara o custo por chamada da montagem dos corpos JSON de {@code sendMediaGroup} e
+ * {@code editMessageCaption}: o caminho da biblioteca (objetos InputMedia serializados
+ * por reflexão) contra o {@link JsonRequestWriter}. Mede o tempo de CPU e os bytes
+ * alocados pela thread, até os bytes UTF-8 prontos para o envio.
+ *
+ * Uso: {@code java -cp target/test-classes:target/classes:<dependências> org.telegram.tools.SerializationBenchmark iterations=200000};
+ * o {@code mvn test} roda uma versão curta (ver {@code SerializationBenchmarkTest}).
+ */
+public final class SerializationBenchmark {
+    private static final int ALBUM_SIZE = 10;
+    private static final String CAPTION = "Viagem à praia — dia 3 🌅 \"pôr do sol\"";
+    private static final long CHAT_ID = 123456789L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonRequestWriter writer = new JsonRequestWriter();
+    private final List<MediaItem> mediaItems = new ArrayList<>(ALBUM_SIZE);
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private long sink;
+
+    private SerializationBenchmark() {
+        MediaItem.MediaType[] types = MediaItem.MediaType.values();
+        for (int i = 0; i < ALBUM_SIZE; i++) {
+            mediaItems.add(new MediaItem("AgACAgEAAxkBAAIBY2Vx" + i + "Qm9vZ2xlLWZpbGUtaWQtZXhhbXBsZQ",
+                    null, types[i % types.length], 1000 + i, 0));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        execute(args);
+    }
+
+    /**
+     * Confere os dois caminhos e mede
+     * @throws IllegalStateException se os corpos gerados divergirem
+     */
+    static void execute(String... args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "200000"));
+
+        SerializationBenchmark benchmark = new SerializationBenchmark();
+        benchmark.verify();
+        benchmark.run(iterations);
+    }
+
+    /**
+     * Os dois caminhos precisam produzir o mesmo conteúdo para os campos enviados
+     */
+    private void verify() throws Exception {
+        JsonNode library = objectMapper.readTree(libraryMediaGroup());
+        writer.sendMediaGroup(CHAT_ID, mediaItems, CAPTION);
+        JsonNode direct = objectMapper.readTree(new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8));
+        for (int i = 0; i < ALBUM_SIZE; i++) {
+            JsonNode expected = library.get("media").get(i);
+            JsonNode actual = direct.get("media").get(i);
+            if (!expected.get("type").equals(actual.get("type")) || !expected.get("media").equals(actual.get("media"))
+                    || (i == 0 && !expected.get("caption").equals(actual.get("caption")))) {
+                throw new IllegalStateException("Item " + i + " diverge: " + expected + " / " + actual);
+            }
+        }
+        if (!library.get("chat_id").equals(direct.get("chat_id"))) {
+            throw new IllegalStateException("chat_id diverge");
+        }
+
+        JsonNode libraryEdit = objectMapper.readTree(libraryEditCaption());
+        writer.editMessageCaption(CHAT_ID, 42, CAPTION);
+        JsonNode directEdit = objectMapper.readTree(new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8));
+        for (String field : new String[]{"chat_id", "message_id", "caption"}) {
+            if (!libraryEdit.get(field).equals(directEdit.get(field))) {
+                throw new IllegalStateException("Campo " + field + " diverge na edição de legenda");
+            }
+        }
+        System.out.println("Conteúdo equivalente nos dois caminhos");
+    }
+
+    private void run(int iterations) throws Exception {
+        System.out.printf("%d iterações por caminho, álbuns de %d itens%n%n", iterations, ALBUM_SIZE);
+        System.out.printf("%-34s %12s %14s%n", "caminho", "CPU ns/chamada", "bytes/chamada");
+
+        // Duas rodadas: a primeira só aquece o JIT
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            measure("sendMediaGroup (biblioteca)", iterations, print, () -> sink += libraryMediaGroup().length);
+            measure("sendMediaGroup (direto)", iterations, print,
+                    () -> sink += writer.sendMediaGroup(CHAT_ID, mediaItems, CAPTION).length());
+            measure("editMessageCaption (biblioteca)", iterations, print, () -> sink += libraryEditCaption().length);
+            measure("editMessageCaption (direto)", iterations, print,
+                    () -> sink += writer.editMessageCaption(CHAT_ID, 42, CAPTION).length());
+        }
+        if (sink == 0) {
+            System.out.println("Nenhum byte produzido");
+        }
+    }
+
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    private void measure(String name, int iterations, boolean print, Call call) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (print) {
+            System.out.printf("%-34s %12d %14d%n", name, cpu / iterations, allocated / iterations);
+        }
+    }
+
+    /**
+     * Caminho anterior do envio de álbuns: InputMedia por item e corpo serializado pelo Jackson
+     */
+    private byte[] libraryMediaGroup() throws Exception {
+        SendMediaGroup mediaGroup = new SendMediaGroup();
+        mediaGroup.setChatId(String.valueOf(CHAT_ID));
+        mediaGroup.setMedias(InputMediaConverter.convert(mediaItems, CAPTION));
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("chat_id", mediaGroup.getChatId());
+        body.set("media", objectMapper.valueToTree(mediaGroup.getMedias()));
+        return objectMapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] libraryEditCaption() throws Exception {
+        EditMessageCaption editCaption = new EditMessageCaption();
+        editCaption.setChatId(String.valueOf(CHAT_ID));
+        editCaption.setMessageId(42);
+        editCaption.setCaption(CAPTION);
+        return objectMapper.writeValueAsString(editCaption).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Opção inválida (use chave=valor): " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+}
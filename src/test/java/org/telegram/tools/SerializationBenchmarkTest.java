@@ -0,0 +1,15 @@
+package org.telegram.tools;
+
+import org.junit.Test;
+
+/**
+ * Versão curta do {@link SerializationBenchmark}: falha se o corpo montado direto divergir
+ * do serializado pela biblioteca
+ */
+public class SerializationBenchmarkTest {
+
+    @Test
+    public void directWriterMatchesLibrarySerialization() throws Exception {
+        SerializationBenchmark.execute("iterations=1000");
+    }
+}
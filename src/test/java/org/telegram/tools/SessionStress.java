@@ -0,0 +1,342 @@
+package org.telegram.tools;
+
+import org.telegram.model.Album;
+import org.telegram.model.MediaItem;
+import org.telegram.model.UserSession;
+import org.telegram.service.MediaSpillStore;
+import org.telegram.service.MetricsService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Teste de estresse das operações atômicas de {@link UserSession}.
+ *
+ * Várias threads acrescentam mídias (como as faixas de entrada) a poucos chats, outras
+ * retiram álbuns completos e lotes inteiros (como os envios antecipados e os
+ * temporizadores) e registram álbuns, e uma última avança o relógio e expira sessões
+ * (como a limpeza), tudo ao mesmo tempo. No fim, cada mídia produzida precisa ter sido
+ * retirada ou continuar pendente em exatamente uma sessão: nenhuma perdida, nenhuma
+ * duplicada, e nenhuma transição de estado inválida.
+ *
+ * As mídias além de {@code heapLimit} por sessão vão para um {@link MediaSpillStore} num
+ * arquivo temporário; ao final, depois de retirado o que sobrou, nenhum registro pode
+ * continuar ocupado.
+ *
+ * As sessões são mantidas aqui como no {@link org.telegram.service.UserSessionService}:
+ * sessões fechadas são substituídas na criação e removidas na limpeza.
+ *
+ * Uso: {@code java -cp target/test-classes:target/classes:<dependências> org.telegram.tools.SessionStress items=2000000 producers=4
+ * consumers=2 chats=32 heapLimit=16}; o {@code mvn test} roda uma versão curta (ver {@code SessionStressTest}).
+ */
+public final class SessionStress {
+    private static final int ALBUM_SIZE = 10;
+    private static final int MAX_PENDING = 200;
+    private static final int TIMEOUT_MINUTES = 30;
+
+    private final int items;
+    private final int producers;
+    private final int consumers;
+    private final int chats;
+    private final int heapLimit;
+    private final MediaSpillStore spill;
+
+    private final StressClock clock = new StressClock();
+    private final Map<Long, UserSession> sessions = new ConcurrentHashMap<>();
+    private final Queue<UserSession> allSessions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextItem = new AtomicInteger();
+    private final LongAdder limitRetries = new LongAdder();
+    private final LongAdder closedRetries = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder fullAlbums = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder invalidTransitions = new LongAdder();
+    private volatile boolean producing = true;
+
+    private SessionStress(int items, int producers, int consumers, int chats, int heapLimit, MediaSpillStore spill) {
+        this.items = items;
+        this.producers = producers;
+        this.consumers = consumers;
+        this.chats = chats;
+        this.heapLimit = heapLimit;
+        this.spill = spill;
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        System.exit(execute(args) ? 0 : 1);
+    }
+
+    /**
+     * @return true se nenhuma mídia se perdeu, repetiu ou saiu fora de ordem
+     */
+    static boolean execute(String... args) throws InterruptedException, IOException {
+        Map<String, String> options = parseOptions(args);
+        Path spillFile = Files.createTempFile("session-stress", ".spill");
+        MediaSpillStore spill = new MediaSpillStore(spillFile, 64L * 1024 * 1024, new MetricsService());
+        SessionStress stress = new SessionStress(
+                Integer.parseInt(options.getOrDefault("items", "2000000")),
+                Integer.parseInt(options.getOrDefault("producers", "4")),
+                Integer.parseInt(options.getOrDefault("consumers", "2")),
+                Integer.parseInt(options.getOrDefault("chats", "32")),
+                Integer.parseInt(options.getOrDefault("heapLimit", "16")),
+                spill);
+        try {
+            return stress.run();
+        } finally {
+            spill.close();
+        }
+    }
+
+    private boolean run() throws InterruptedException {
+        System.out.printf("%d mídias, %d produtores, %d consumidores, %d chats, %d em heap por sessão%n",
+                items, producers, consumers, chats, heapLimit);
+        long start = System.nanoTime();
+
+        List<Thread> producerThreads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            producerThreads.add(start("produtor-" + i, this::produce));
+        }
+
+        List<List<MediaItem>> taken = new ArrayList<>();
+        List<Thread> consumerThreads = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            List<MediaItem> consumed = new ArrayList<>();
+            taken.add(consumed);
+            consumerThreads.add(start("consumidor-" + i, () -> consume(consumed)));
+        }
+        Thread expirer = start("limpeza", this::expire);
+
+        for (Thread thread : producerThreads) {
+            thread.join();
+        }
+        producing = false;
+        for (Thread thread : consumerThreads) {
+            thread.join();
+        }
+        expirer.join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        return report(taken, elapsedMillis);
+    }
+
+    private static Thread start(String name, Runnable action) {
+        Thread thread = new Thread(action, name);
+        thread.start();
+        return thread;
+    }
+
+    private UserSession getOrCreateSession(long chatId) {
+        UserSession session = sessions.get(chatId);
+        if (session != null && !session.isClosed()) {
+            return session;
+        }
+        return sessions.compute(chatId, (id, current) -> {
+            if (current != null && !current.isClosed()) {
+                return current;
+            }
+            UserSession created = new UserSession(id, clock, spill, heapLimit);
+            allSessions.add(created);
+            return created;
+        });
+    }
+
+    private void produce() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id;
+        while ((id = nextItem.getAndIncrement()) < items) {
+            MediaItem item = new MediaItem("file-" + id, null, MediaItem.MediaType.PHOTO, id, 0);
+            long chatId = random.nextInt(chats);
+            while (true) {
+                UserSession.AddResult result = getOrCreateSession(chatId).addMedia(item, MAX_PENDING);
+                if (result == UserSession.AddResult.ADDED) {
+                    break;
+                }
+                if (result == UserSession.AddResult.CLOSED) {
+                    closedRetries.increment();
+                } else {
+                    // Sessão cheia: esperar os consumidores, como o usuário faria
+                    limitRetries.increment();
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private void consume(List<MediaItem> consumed) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (producing || hasPendingMedia()) {
+            UserSession session = sessions.get((long) random.nextInt(chats));
+            if (session == null) {
+                continue;
+            }
+            try {
+                UserSession.Batch batch;
+                if (random.nextBoolean()) {
+                    batch = session.takeFullAlbums(ALBUM_SIZE, 1 + random.nextInt(3));
+                    if (batch != null) {
+                        fullAlbums.increment();
+                    }
+                } else {
+                    batch = session.drainBatch(producing ? 2 : 1);
+                    if (batch != null) {
+                        batches.increment();
+                        session.completeBatch();
+                    }
+                }
+                // Ler álbum a álbum, como os envios
+                for (int from = 0; batch != null && from < batch.size(); from += ALBUM_SIZE) {
+                    List<MediaItem> albumItems = batch.read(from, Math.min(from + ALBUM_SIZE, batch.size()));
+                    consumed.addAll(albumItems);
+                    session.setLastAlbum(new Album(albumItems, clock));
+                }
+            } catch (IllegalStateException e) {
+                invalidTransitions.increment();
+            }
+        }
+    }
+
+    /**
+     * Mídias ainda por retirar; as de sessões expiradas ficam onde estão e entram na conta final
+     */
+    private boolean hasPendingMedia() {
+        for (UserSession session : sessions.values()) {
+            if (session.getPendingMediaCount() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void expire() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (producing) {
+            // Às vezes o tempo passa do limite de inatividade, como num chat abandonado
+            clock.advance(random.nextInt(10) == 0
+                    ? TimeUnit.MINUTES.toMillis(TIMEOUT_MINUTES + 1)
+                    : random.nextInt(1000));
+            sessions.entrySet().removeIf(entry -> {
+                boolean closed = entry.getValue().closeIfExpired(TIMEOUT_MINUTES);
+                if (closed) {
+                    expired.increment();
+                }
+                return closed;
+            });
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean report(List<List<MediaItem>> taken, long elapsedMillis) {
+        BitSet seen = new BitSet(items);
+        long duplicates = 0;
+        long consumedCount = 0;
+        for (List<MediaItem> consumed : taken) {
+            for (MediaItem item : consumed) {
+                consumedCount++;
+                if (seen.get(item.getMessageId())) {
+                    duplicates++;
+                }
+                seen.set(item.getMessageId());
+            }
+        }
+
+        long pendingCount = 0;
+        for (UserSession session : allSessions) {
+            for (MediaItem item : session.getPendingMedia()) {
+                pendingCount++;
+                if (seen.get(item.getMessageId())) {
+                    duplicates++;
+                }
+                seen.set(item.getMessageId());
+            }
+        }
+        long lost = items - seen.cardinality();
+
+        // Retirar o que sobrou: todos os registros do transbordo devem voltar a ficar livres
+        for (UserSession session : allSessions) {
+            UserSession.Batch batch = session.drainBatch(1);
+            if (batch != null) {
+                batch.release(0, batch.size());
+            }
+        }
+        int leakedRecords = spill.getRecordsInUse();
+
+        System.out.printf("Concluído em %.1f s (%.0f mídias/s)%n", elapsedMillis / 1000.0,
+                items * 1000.0 / Math.max(1, elapsedMillis));
+        System.out.printf("Retiradas: %d em %d lotes e %d retiradas de álbuns completos; ainda pendentes: %d%n",
+                consumedCount, batches.sum(), fullAlbums.sum(), pendingCount);
+        System.out.printf("Sessões: %d criadas, %d expiradas; novas tentativas: %d por limite, %d por sessão fechada%n",
+                allSessions.size(), expired.sum(), limitRetries.sum(), closedRetries.sum());
+        System.out.printf("Perdidas: %d, duplicadas: %d, transições inválidas: %d, registros de transbordo presos: %d%n",
+                lost, duplicates, invalidTransitions.sum(), leakedRecords);
+
+        boolean passed = lost == 0 && duplicates == 0 && invalidTransitions.sum() == 0 && leakedRecords == 0;
+        System.out.println(passed ? "RESULTADO: OK" : "RESULTADO: FALHOU");
+        return passed;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Opção inválida (use chave=valor): " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Relógio que só anda quando a thread de limpeza manda, visível a todas as threads
+     */
+    private static final class StressClock extends Clock {
+        private final AtomicLong nowMillis = new AtomicLong(1_700_000_000_000L);
+
+        void advance(long millis) {
+            nowMillis.addAndGet(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return nowMillis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+    }
+}
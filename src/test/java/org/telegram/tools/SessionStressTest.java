@@ -0,0 +1,16 @@
+package org.telegram.tools;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Versão curta do {@link SessionStress}, com transbordo para o arquivo mapeado
+ */
+public class SessionStressTest {
+
+    @Test
+    public void concurrentProducersAndConsumersKeepEveryMediaInOrder() throws Exception {
+        assertTrue(SessionStress.execute("items=200000", "producers=4", "consumers=2", "chats=32", "heapLimit=16"));
+    }
+}
@@ -0,0 +1,84 @@
+package org.telegram.tools;
+
+import org.telegram.bot.AlbumMakerBot;
+import org.telegram.bot.BotHost;
+import org.telegram.config.BotConfig;
+import org.telegram.service.MetricsService;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bot completo com as chamadas à API do Telegram substituídas por respostas locais
+ * imediatas. Conta as chamadas para conferência; pode rodar em tempo virtual ou sobre
+ * as threads reais de uma {@link BotHost}.
+ */
+public class SimulatedBot extends AlbumMakerBot {
+    private final AtomicInteger nextMessageId = new AtomicInteger(1);
+    private final LongAdder apiCalls = new LongAdder();
+    private final LongAdder mediaGroups = new LongAdder();
+    private final LongAdder mediaGroupItems = new LongAdder();
+    private final LongAdder deletedMessages = new LongAdder();
+
+    public SimulatedBot(VirtualTimeScheduler scheduler) {
+        this(new BotHost(new MetricsService(), scheduler.getClock(), scheduler, scheduler, null));
+    }
+
+    public SimulatedBot(BotHost host) {
+        super(host, BotConfig.getTenants().get(0));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) {
+        apiCalls.increment();
+        if (method instanceof DeleteMessage) {
+            deletedMessages.increment();
+            return (T) Boolean.TRUE;
+        }
+        // SendMessage, EditMessageCaption e afins respondem com a mensagem
+        return (T) newMessage();
+    }
+
+    @Override
+    public List<Message> execute(SendMediaGroup sendMediaGroup) {
+        apiCalls.increment();
+        mediaGroups.increment();
+        mediaGroupItems.add(sendMediaGroup.getMedias().size());
+
+        List<Message> messages = new ArrayList<>(sendMediaGroup.getMedias().size());
+        for (int i = 0; i < sendMediaGroup.getMedias().size(); i++) {
+            messages.add(newMessage());
+        }
+        return messages;
+    }
+
+    private Message newMessage() {
+        Message message = new Message();
+        message.setMessageId(nextMessageId.getAndIncrement());
+        return message;
+    }
+
+    public long getApiCalls() {
+        return apiCalls.sum();
+    }
+
+    public long getMediaGroups() {
+        return mediaGroups.sum();
+    }
+
+    public long getMediaGroupItems() {
+        return mediaGroupItems.sum();
+    }
+
+    public long getDeletedMessages() {
+        return deletedMessages.sum();
+    }
+}
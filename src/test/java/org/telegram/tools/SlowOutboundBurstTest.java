@@ -0,0 +1,151 @@
+package org.telegram.tools;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.telegram.bot.BotHost;
+import org.telegram.service.ExecutorTaskScheduler;
+import org.telegram.service.MetricsService;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rajada de um único chat, quase toda transbordada para o arquivo mapeado, contra uma fila
+ * de saída lenta e com cota pequena: o lote inteiro nunca cabe na cota de uma vez, então
+ * os álbuns precisam sair aos poucos, em ordem, e as mensagens originais serem excluídas.
+ */
+public class SlowOutboundBurstTest {
+    private static final long CHAT_ID = 4242;
+    private static final int MEDIA = 400;
+    private static final long API_DELAY_MILLIS = 10;
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(90);
+
+    private static Path workDir;
+
+    @BeforeClass
+    public static void prepareConfig() throws Exception {
+        workDir = Files.createTempDirectory("albummaker-burst");
+        Properties properties = new Properties();
+        properties.setProperty("bot.username", "burst_bot");
+        properties.setProperty("bot.token", "0:burst");
+        properties.setProperty("state.dir", workDir.resolve("state").toString());
+        properties.setProperty("ingress.lanes", "0");
+        properties.setProperty("outbound.threads", "2");
+        properties.setProperty("outbound.maxQueuedPerChat", "4");
+        properties.setProperty("album.delaySeconds", "1");
+        properties.setProperty("session.maxPendingMedia", String.valueOf(MEDIA));
+        properties.setProperty("session.heapMediaLimit", "20");
+
+        Path configFile = workDir.resolve("burst.properties");
+        try (OutputStream output = Files.newOutputStream(configFile)) {
+            properties.store(output, "Configuração do teste de rajada");
+        }
+        System.setProperty("albummaker.config", configFile.toString());
+    }
+
+    @AfterClass
+    public static void clearConfig() {
+        System.clearProperty("albummaker.config");
+    }
+
+    @Test
+    public void spilledBurstLargerThanTheQuotaIsSentInOrderAndDeleted() throws Exception {
+        MetricsService metrics = new MetricsService();
+        BotHost host = new BotHost(metrics, Clock.systemDefaultZone(),
+                new ExecutorTaskScheduler("media-scheduler", 1), new ExecutorTaskScheduler("maintenance", 1), null);
+        SlowBot bot = host.register(new SlowBot(host));
+
+        for (int i = 0; i < MEDIA; i++) {
+            bot.onUpdateReceived(photoUpdate(i));
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while ((bot.getMediaGroupItems() < MEDIA || bot.getDeletedMessages() < MEDIA)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        long spillRecords = metrics.snapshot().getOrDefault("media.spill.records", 0L);
+        host.shutdown();
+
+        assertEquals("mídias enviadas em álbuns", MEDIA, bot.getMediaGroupItems());
+        assertEquals("mensagens originais excluídas", MEDIA, bot.getDeletedMessages());
+        List<String> sent = bot.sentFileIds();
+        for (int i = 0; i < MEDIA; i++) {
+            assertEquals("ordem dos álbuns", fileId(i), sent.get(i));
+        }
+        assertEquals("registros de transbordo presos", 0, spillRecords);
+        assertTrue("adiamentos por cota", metrics.snapshot().getOrDefault("media.albums.deferred", 0L)
+                + metrics.snapshot().getOrDefault("media.albums.eager.deferred", 0L) > 0);
+    }
+
+    private static Update photoUpdate(int sequence) {
+        PhotoSize photo = new PhotoSize();
+        photo.setFileId(fileId(sequence));
+        photo.setWidth(1280);
+        photo.setHeight(960);
+        photo.setFileSize(250_000);
+
+        Message message = new Message();
+        message.setMessageId(sequence + 1);
+        message.setChat(new Chat(CHAT_ID, "private"));
+        message.setPhoto(Collections.singletonList(photo));
+
+        Update update = new Update();
+        update.setUpdateId(sequence + 1);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static String fileId(int sequence) {
+        return String.format("burst-%05d", sequence);
+    }
+
+    /**
+     * Bot simulado cujos envios de álbum demoram, como uma API sob carga
+     */
+    private static final class SlowBot extends SimulatedBot {
+        private final List<String> sentFileIds = new ArrayList<>();
+
+        SlowBot(BotHost host) {
+            super(host);
+        }
+
+        @Override
+        public List<Message> execute(SendMediaGroup sendMediaGroup) {
+            try {
+                Thread.sleep(API_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (sentFileIds) {
+                for (InputMedia media : sendMediaGroup.getMedias()) {
+                    sentFileIds.add(media.getMedia());
+                }
+            }
+            return super.execute(sendMediaGroup);
+        }
+
+        List<String> sentFileIds() {
+            synchronized (sentFileIds) {
+                return new ArrayList<>(sentFileIds);
+            }
+        }
+    }
+}
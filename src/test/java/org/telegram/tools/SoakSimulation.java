@@ -0,0 +1,344 @@
+package org.telegram.tools;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.telegram.config.BotConfig;
+import org.telegram.service.UserSessionService;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Teste de resistência em tempo simulado.
+ *
+ * Conduz milhões de chats sintéticos pelo {@code onUpdateReceived} de um bot completo, com
+ * as chamadas ao Telegram respondidas localmente e todos os temporizadores num relógio
+ * virtual. Um dia de tráfego roda em minutos e o relatório mostra o crescimento do heap,
+ * a fila de temporizadores e se as sessões expiraram no prazo (nem antes, nem depois).
+ *
+ * Uso: {@code java -cp target/test-classes:target/classes:<dependências> org.telegram.tools.SoakSimulation chats=1000000 hours=24
+ * seed=42}; o {@code mvn test} roda uma versão curta (ver {@code SoakSimulationTest}).
+ * Um arquivo indicado em {@code -Dalbummaker.config} serve de base para a configuração; a
+ * simulação força {@code ingress.lanes=0} e {@code outbound.threads=0} para rodar numa única
+ * thread, de forma determinística.
+ */
+public final class SoakSimulation {
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    private static final long CHAT_ID_BASE = 1_000_000_000L;
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // Perfil do tráfego: rajadas de mídias com intervalos curtos, algumas com um comando antes
+    private static final int MAX_BURST = 25;
+    private static final int SINGLE_ITEM_PERCENT = 10;
+    private static final int COMMAND_PERCENT = 5;
+    private static final int MIN_GAP_MILLIS = 100;
+    private static final int MAX_GAP_MILLIS = 1500;
+
+    private final int chats;
+    private final long durationMillis;
+    private final Random random;
+    private final VirtualTimeScheduler scheduler;
+    private final SimulatedBot bot;
+    private final UserSessionService sessionService;
+    private final long[] lastUpdateMillis;
+
+    private int nextUpdateId = 1;
+    private int nextMessageId = 1;
+    private long updatesDelivered;
+    private long expectedAlbums;
+    private long expectedDeletions;
+    private long prematureEvictions;
+    private int expiryViolations;
+    private int maxPendingTimers;
+    private long baselineHeap;
+    private long peakHeap;
+
+    private static final class Burst implements Comparable<Burst> {
+        final int chatIndex;
+        final int size;
+        final boolean startsWithCommand;
+        long nextAtMillis;
+        int sent;
+
+        Burst(int chatIndex, int size, boolean startsWithCommand, long nextAtMillis) {
+            this.chatIndex = chatIndex;
+            this.size = size;
+            this.startsWithCommand = startsWithCommand;
+            this.nextAtMillis = nextAtMillis;
+        }
+
+        @Override
+        public int compareTo(Burst other) {
+            int byTime = Long.compare(nextAtMillis, other.nextAtMillis);
+            return byTime != 0 ? byTime : Integer.compare(chatIndex, other.chatIndex);
+        }
+    }
+
+    private SoakSimulation(int chats, int hours, long seed) {
+        this.chats = chats;
+        this.durationMillis = hours * HOUR_MILLIS;
+        this.random = new Random(seed);
+        this.scheduler = new VirtualTimeScheduler(START_MILLIS);
+        this.bot = new SimulatedBot(scheduler);
+        this.sessionService = bot.getSessionService();
+        this.lastUpdateMillis = new long[chats];
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.exit(execute(args) ? 0 : 1);
+    }
+
+    /**
+     * @return true se todos os álbuns e exclusões esperados saíram sem vazamentos
+     */
+    static boolean execute(String... args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        int chats = Integer.parseInt(options.getOrDefault("chats", "1000000"));
+        int hours = Integer.parseInt(options.getOrDefault("hours", "24"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        // A configuração precisa estar pronta antes do primeiro acesso ao BotConfig
+        Path workDir = Files.createTempDirectory("albummaker-soak");
+        prepareConfig(workDir);
+        setLogLevel(options.getOrDefault("logLevel", "ERROR"));
+
+        SoakSimulation simulation = new SoakSimulation(chats, hours, seed);
+        return simulation.run();
+    }
+
+    private boolean run() {
+        long wallStart = System.nanoTime();
+        baselineHeap = usedHeap();
+        peakHeap = baselineHeap;
+        System.out.printf("Simulando %d chats em %d h de tempo virtual (heap inicial: %.1f MB)%n",
+                chats, durationMillis / HOUR_MILLIS, baselineHeap / 1048576.0);
+        System.out.println("hora  sessões  temporizadores  heap(MB)");
+
+        PriorityQueue<Burst> active = new PriorityQueue<>();
+        int nextChat = 0;
+        long nextSample = START_MILLIS + HOUR_MILLIS;
+
+        while (nextChat < chats || !active.isEmpty()) {
+            long nextStart = nextChat < chats
+                    ? START_MILLIS + nextChat * durationMillis / chats
+                    : Long.MAX_VALUE;
+            long nextSend = active.isEmpty() ? Long.MAX_VALUE : active.peek().nextAtMillis;
+            long time = Math.min(nextStart, nextSend);
+
+            while (time >= nextSample) {
+                scheduler.advanceTo(nextSample);
+                sample();
+                nextSample += HOUR_MILLIS;
+            }
+            scheduler.advanceTo(time);
+            maxPendingTimers = Math.max(maxPendingTimers, scheduler.getPendingTasks());
+
+            if (nextStart <= nextSend) {
+                active.add(newBurst(nextChat++, nextStart));
+                continue;
+            }
+
+            Burst burst = active.poll();
+            deliver(burst);
+            if (burst.sent < burst.size + (burst.startsWithCommand ? 1 : 0)) {
+                burst.nextAtMillis += MIN_GAP_MILLIS + random.nextInt(MAX_GAP_MILLIS - MIN_GAP_MILLIS);
+                active.add(burst);
+            }
+        }
+
+        // Deixar disparar os últimos temporizadores e passar do prazo de expiração de todas as sessões
+        long drainMillis = TimeUnit.SECONDS.toMillis(BotConfig.getAutoAlbumDelaySeconds() + 2)
+                + TimeUnit.MINUTES.toMillis(BotConfig.getSessionTimeoutMinutes()
+                + 2L * BotConfig.getSessionCleanupIntervalMinutes());
+        scheduler.advance(drainMillis, TimeUnit.MILLISECONDS);
+        sample();
+
+        return report(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart));
+    }
+
+    private Burst newBurst(int chatIndex, long startMillis) {
+        int size = random.nextInt(100) < SINGLE_ITEM_PERCENT ? 1 : 2 + random.nextInt(MAX_BURST - 1);
+        boolean command = random.nextInt(100) < COMMAND_PERCENT;
+
+        // Álbuns e exclusões que o bot deve produzir para esta rajada
+        int maxPerAlbum = BotConfig.getMaxMediaPerAlbum();
+        if (size >= 2) {
+            int remainder = size % maxPerAlbum;
+            expectedAlbums += size / maxPerAlbum + (remainder >= 2 ? 1 : 0);
+            if (BotConfig.isEagerAlbumFlushEnabled()) {
+                // Álbuns completos saem (e apagam os originais) antes do fim do lote;
+                // uma mídia que sobre sozinha continua pendente
+                expectedDeletions += size - (remainder == 1 ? 1 : 0);
+            } else if (remainder != 1) {
+                expectedDeletions += size;
+            }
+        }
+        return new Burst(chatIndex, size, command, startMillis);
+    }
+
+    private void deliver(Burst burst) {
+        long chatId = CHAT_ID_BASE + burst.chatIndex;
+
+        // Uma sessão ativa não pode sumir no meio de uma rajada
+        if (burst.sent > 0 && sessionService.getSession(chatId) == null) {
+            prematureEvictions++;
+        }
+
+        Message message = new Message();
+        message.setMessageId(nextMessageId++);
+        message.setChat(new Chat(chatId, "private"));
+        if (burst.startsWithCommand && burst.sent == 0) {
+            message.setText("/start");
+        } else {
+            PhotoSize photo = new PhotoSize();
+            photo.setFileId("sim-" + chatId + "-" + burst.sent);
+            photo.setWidth(1280);
+            photo.setHeight(960);
+            photo.setFileSize(250_000);
+            message.setPhoto(Collections.singletonList(photo));
+        }
+
+        Update update = new Update();
+        update.setUpdateId(nextUpdateId++);
+        update.setMessage(message);
+
+        bot.onUpdateReceived(update);
+        burst.sent++;
+        updatesDelivered++;
+        lastUpdateMillis[burst.chatIndex] = scheduler.currentTimeMillis();
+    }
+
+    /**
+     * Registra uma linha do relatório e confere os limites de expiração das sessões
+     */
+    private void sample() {
+        long now = scheduler.currentTimeMillis();
+        long heap = usedHeap();
+        peakHeap = Math.max(peakHeap, heap);
+        int sessions = sessionService.getSessionCount();
+
+        // Chats ativos dentro do prazo precisam de sessão; os que passaram do prazo mais um
+        // ciclo de limpeza (e o disparo do álbum, que renova a atividade) não podem ter
+        long timeoutMillis = TimeUnit.MINUTES.toMillis(BotConfig.getSessionTimeoutMinutes());
+        long graceMillis = TimeUnit.MINUTES.toMillis(BotConfig.getSessionCleanupIntervalMinutes())
+                + TimeUnit.SECONDS.toMillis(BotConfig.getAutoAlbumDelaySeconds() + 1);
+        int mustExist = 0;
+        int mayExist = 0;
+        for (long last : lastUpdateMillis) {
+            if (last == 0) {
+                continue;
+            }
+            if (now - last < timeoutMillis) {
+                mustExist++;
+            }
+            if (now - last <= timeoutMillis + graceMillis) {
+                mayExist++;
+            }
+        }
+        if (sessions < mustExist || sessions > mayExist) {
+            expiryViolations++;
+            System.out.printf("  ! sessões fora do esperado: %d (entre %d e %d)%n", sessions, mustExist, mayExist);
+        }
+
+        System.out.printf("%4d  %7d  %14d  %8.1f%n",
+                (now - START_MILLIS) / HOUR_MILLIS, sessions, scheduler.getPendingTasks(), heap / 1048576.0);
+    }
+
+    private boolean report(long wallMillis) {
+        long finalHeap = usedHeap();
+        int sessions = sessionService.getSessionCount();
+        // Após a drenagem só devem restar a limpeza de sessões e a gravação do checkpoint
+        int leftoverTimers = scheduler.getPendingTasks() - 2;
+
+        System.out.println();
+        System.out.printf("Atualizações: %d em %.1f s (%.0f/s), %d tarefas agendadas executadas%n",
+                updatesDelivered, wallMillis / 1000.0, updatesDelivered * 1000.0 / Math.max(1, wallMillis),
+                scheduler.getExecutedTasks());
+        System.out.printf("Álbuns: %d enviados, %d esperados; exclusões: %d, %d esperadas; %d chamadas à API%n",
+                bot.getMediaGroups(), expectedAlbums, bot.getDeletedMessages(), expectedDeletions, bot.getApiCalls());
+        System.out.printf("Heap: inicial %.1f MB, pico %.1f MB, final %.1f MB (crescimento %.1f MB)%n",
+                baselineHeap / 1048576.0, peakHeap / 1048576.0, finalHeap / 1048576.0,
+                (finalHeap - baselineHeap) / 1048576.0);
+        System.out.printf("Temporizadores: pico %d, restantes %d; sessões restantes: %d%n",
+                maxPendingTimers, leftoverTimers, sessions);
+        System.out.printf("Expiração: %d remoções prematuras, %d amostras fora do esperado%n",
+                prematureEvictions, expiryViolations);
+
+        boolean passed = sessions == 0
+                && leftoverTimers == 0
+                && prematureEvictions == 0
+                && expiryViolations == 0
+                && bot.getMediaGroups() == expectedAlbums
+                && bot.getDeletedMessages() == expectedDeletions;
+        System.out.println(passed ? "RESULTADO: OK" : "RESULTADO: FALHOU");
+        return passed;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Opção inválida (use chave=valor): " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Grava a configuração da simulação sobre a configuração base, se houver
+     */
+    private static void prepareConfig(Path workDir) throws IOException {
+        Properties properties = new Properties();
+        String base = System.getProperty("albummaker.config");
+        if (base != null && Files.isRegularFile(Paths.get(base))) {
+            try (InputStream input = Files.newInputStream(Paths.get(base))) {
+                properties.load(input);
+            }
+        }
+
+        properties.putIfAbsent("bot.username", "soak_simulation_bot");
+        properties.putIfAbsent("bot.token", "0:soak");
+        properties.remove("tenants");
+        properties.setProperty("recorder.enabled", "false");
+        // Em tempo virtual cada gravação do checkpoint vira um fsync real
+        properties.setProperty("checkpoint.flushIntervalMillis", "60000");
+        properties.setProperty("ingress.lanes", "0");
+        properties.setProperty("outbound.threads", "0");
+        properties.setProperty("state.dir", workDir.resolve("state").toString());
+
+        Path configFile = workDir.resolve("soak.properties");
+        try (OutputStream output = Files.newOutputStream(configFile)) {
+            properties.store(output, "Configuração gerada pela simulação");
+        }
+        System.setProperty("albummaker.config", configFile.toString());
+    }
+
+    private static void setLogLevel(String level) {
+        ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger)
+                LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.toLevel(level, Level.WARN));
+    }
+}
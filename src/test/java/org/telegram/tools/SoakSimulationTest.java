@@ -0,0 +1,16 @@
+package org.telegram.tools;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Versão curta da {@link SoakSimulation}, em tempo virtual
+ */
+public class SoakSimulationTest {
+
+    @Test
+    public void everyAlbumAndDeletionGoesOutWithoutLeaks() throws Exception {
+        assertTrue(SoakSimulation.execute("chats=2000", "hours=1", "seed=42"));
+    }
+}
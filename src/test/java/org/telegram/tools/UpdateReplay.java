@@ -0,0 +1,327 @@
+package org.telegram.tools;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+import org.telegram.bot.BotHost;
+import org.telegram.config.BotConfig;
+import org.telegram.model.Album;
+import org.telegram.model.UpdateKind;
+import org.telegram.model.UserSession;
+import org.telegram.service.ExecutorTaskScheduler;
+import org.telegram.service.MetricsService;
+import org.telegram.service.UpdateRecordReader;
+import org.telegram.service.WaitTimeStats;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Document;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.Video;
+import org.telegram.telegrambots.meta.api.objects.games.Animation;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reproduz uma gravação do {@link org.telegram.service.UpdateRecorder} pela pilha
+ * completa de manipuladores, com as chamadas ao Telegram respondidas localmente.
+ *
+ * Ao contrário da {@link SoakSimulation}, roda com as threads e o relógio reais: as faixas
+ * de entrada, os temporizadores e a fila de saída se comportam como em produção, e o
+ * relatório mostra a vazão e a latência de cada mídia até sair num álbum.
+ *
+ * Uso: {@code java -cp target/test-classes:target/classes:<dependências> org.telegram.tools.UpdateReplay file=updates.amr speed=10}.
+ * {@code speed} aceita um multiplicador (1 = tempo real) ou {@code max}, que entrega as
+ * atualizações sem pausas. Um arquivo indicado em {@code -Dalbummaker.config} serve de base
+ * para a configuração.
+ */
+public final class UpdateReplay {
+    private static final long QUIET_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final int LATENCY_SAMPLES = 1 << 20;
+    private static final String FILE_ID_PREFIX = "replay-";
+
+    private final Path file;
+    private final double speed;
+    private final BotHost host;
+    private final ReplayBot bot;
+    private final WaitTimeStats mediaLatency = new WaitTimeStats(LATENCY_SAMPLES);
+    private final WaitTimeStats feederLag = new WaitTimeStats(LATENCY_SAMPLES);
+
+    // Instante (nanoTime) em que cada mídia foi entregue ao bot, indexado pela sequência
+    private volatile long[] fedAtNanos = new long[1024];
+    private int mediaFed;
+    private long updatesFed;
+
+    private UpdateReplay(Path file, double speed) {
+        this.file = file;
+        this.speed = speed;
+        this.host = new BotHost(new MetricsService(), Clock.systemDefaultZone(),
+                new ExecutorTaskScheduler("media-scheduler", BotConfig.getMediaSchedulerThreads()),
+                new ExecutorTaskScheduler("maintenance", 1), null);
+        this.bot = host.register(new ReplayBot(host));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (parseOptions(args).get("file") == null) {
+            System.err.println("Uso: UpdateReplay file=<gravação.amr> [speed=1|10|max] [logLevel=ERROR]");
+            System.exit(2);
+        }
+        execute(args);
+        System.exit(0);
+    }
+
+    /**
+     * @return true se o bot ficou ocioso (sem mídias, temporizadores nem envios pendentes)
+     *         dentro do prazo
+     */
+    static boolean execute(String... args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        String file = options.get("file");
+        String speedOption = options.getOrDefault("speed", "max");
+        double speed = "max".equalsIgnoreCase(speedOption) ? 0 : Double.parseDouble(speedOption);
+
+        // A configuração precisa estar pronta antes do primeiro acesso ao BotConfig
+        prepareConfig(Files.createTempDirectory("albummaker-replay"));
+        setLogLevel(options.getOrDefault("logLevel", "ERROR"));
+
+        UpdateReplay replay = new UpdateReplay(Paths.get(file), speed);
+        return replay.run();
+    }
+
+    private boolean run() throws IOException {
+        System.out.printf("Reproduzindo %s %s%n", file, speed > 0 ? "a " + speed + "x" : "sem pausas");
+
+        long startNanos = System.nanoTime();
+        long recordedMillis;
+        try (UpdateRecordReader reader = new UpdateRecordReader(file)) {
+            while (reader.next()) {
+                if (speed > 0) {
+                    long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(reader.getOffsetMillis()) / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    } else {
+                        feederLag.record(TimeUnit.NANOSECONDS.toMillis(-waitNanos));
+                    }
+                }
+                deliver(reader);
+            }
+            recordedMillis = reader.getOffsetMillis();
+        }
+        long feedNanos = System.nanoTime() - startNanos;
+
+        // Esperar os últimos temporizadores e envios, depois desligar como em produção
+        boolean quiet = awaitQuiet();
+        long totalNanos = System.nanoTime() - startNanos;
+        Map<String, Long> metrics = host.getMetrics().snapshot();
+        host.shutdown();
+
+        report(recordedMillis, feedNanos, totalNanos, quiet, metrics);
+        return quiet;
+    }
+
+    private void deliver(UpdateRecordReader reader) {
+        Message message = new Message();
+        message.setMessageId(reader.getMessageId());
+        message.setChat(new Chat(reader.getChatId(), "private"));
+
+        UpdateKind kind = reader.getKind();
+        switch (kind) {
+            case PHOTO:
+                PhotoSize photo = new PhotoSize();
+                photo.setFileId(nextMediaFileId());
+                photo.setWidth(1280);
+                photo.setHeight(960);
+                photo.setFileSize(250_000);
+                message.setPhoto(Collections.singletonList(photo));
+                break;
+
+            case VIDEO:
+                Video video = new Video();
+                video.setFileId(nextMediaFileId());
+                message.setVideo(video);
+                break;
+
+            case ANIMATION:
+                Animation animation = new Animation();
+                animation.setFileId(nextMediaFileId());
+                message.setAnimation(animation);
+                break;
+
+            case DOCUMENT:
+                Document document = new Document();
+                document.setFileId(nextMediaFileId());
+                message.setDocument(document);
+                break;
+
+            case COMMAND:
+            case CANCEL_COMMAND:
+                String name = reader.getCommand() != null ? reader.getCommand().getName() : null;
+                message.setText(name != null ? name : "/desconhecido");
+                break;
+
+            case CAPTION_REPLY:
+                message.setText("legenda reproduzida");
+                message.setReplyToMessage(replyTarget(reader.getChatId(), reader.getMessageId()));
+                break;
+
+            case TEXT:
+                message.setText("texto reproduzido");
+                break;
+
+            default:
+                break;
+        }
+
+        Update update = new Update();
+        update.setUpdateId((int) ++updatesFed);
+        update.setMessage(message);
+        bot.onUpdateReceived(update);
+    }
+
+    /**
+     * Identificador sintético da próxima mídia, que registra o instante da entrega
+     */
+    private String nextMediaFileId() {
+        int sequence = mediaFed++;
+        long[] fedAt = fedAtNanos;
+        if (sequence == fedAt.length) {
+            fedAt = Arrays.copyOf(fedAt, fedAt.length * 2);
+            fedAtNanos = fedAt;
+        }
+        fedAt[sequence] = System.nanoTime();
+        return FILE_ID_PREFIX + sequence;
+    }
+
+    /**
+     * As respostas de legenda apontam para o último álbum do chat, como fariam os usuários
+     */
+    private Message replyTarget(long chatId, int messageId) {
+        Message target = new Message();
+        UserSession session = bot.getSessionService().getSession(chatId);
+        Album album = session != null ? session.getLastAlbum() : null;
+        target.setMessageId(album != null && album.getSentMessageId() != null
+                ? album.getSentMessageId()
+                : messageId - 1);
+        return target;
+    }
+
+    private boolean awaitQuiet() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIET_TIMEOUT_MILLIS);
+        int quietChecks = 0;
+        while (System.nanoTime() < deadline) {
+            boolean idle = host.getDispatcher().getQueueDepth() == 0
+                    && host.getMediaScheduler().getPendingTasks() == 0
+                    && host.getOutboundScheduler().getQueuedTasks() == 0;
+            quietChecks = idle ? quietChecks + 1 : 0;
+            if (quietChecks >= 3) {
+                return true;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        return false;
+    }
+
+    private void report(long recordedMillis, long feedNanos, long totalNanos, boolean quiet, Map<String, Long> metrics) {
+        long[] latency = mediaLatency.percentiles(50, 95, 99, 100);
+        long[] lag = feederLag.percentiles(99, 100);
+
+        System.out.println();
+        System.out.printf("Atualizações: %d gravadas em %.1f s, entregues em %.1f s (%.0f/s)%n",
+                updatesFed, recordedMillis / 1000.0, feedNanos / 1e9,
+                updatesFed / Math.max(feedNanos / 1e9, 1e-9));
+        System.out.printf("Mídias: %d entregues, %d enviadas em %d álbuns; %d exclusões; %d chamadas à API%n",
+                mediaFed, bot.getMediaGroupItems(), bot.getMediaGroups(), bot.getDeletedMessages(), bot.getApiCalls());
+        System.out.printf("Latência mídia → álbum: p50=%d ms, p95=%d ms, p99=%d ms, máx=%d ms (%d amostras)%n",
+                latency[0], latency[1], latency[2], latency[3], mediaLatency.getCount());
+        if (speed > 0) {
+            System.out.printf("Atraso da entrega em relação à gravação: p99=%d ms, máx=%d ms%n", lag[0], lag[1]);
+        }
+        System.out.printf("Descartes na entrada: normal=%d, baixa=%d; alta além da capacidade: %d; adiamentos por cota: %d%n",
+                metrics.getOrDefault("ingress.shed.normal", 0L), metrics.getOrDefault("ingress.shed.low", 0L),
+                metrics.getOrDefault("ingress.overflow.high", 0L), metrics.getOrDefault("media.albums.deferred", 0L));
+        System.out.printf("Tempo total até esvaziar as filas: %.1f s%s%n", totalNanos / 1e9,
+                quiet ? "" : " (filas não esvaziaram no prazo)");
+    }
+
+    /**
+     * Bot simulado que mede, para cada mídia enviada num álbum, o tempo desde a entrega
+     */
+    private final class ReplayBot extends SimulatedBot {
+        ReplayBot(BotHost host) {
+            super(host);
+        }
+
+        @Override
+        public List<Message> execute(SendMediaGroup sendMediaGroup) {
+            long now = System.nanoTime();
+            long[] fedAt = fedAtNanos;
+            for (InputMedia media : sendMediaGroup.getMedias()) {
+                String fileId = media.getMedia();
+                if (fileId != null && fileId.startsWith(FILE_ID_PREFIX)) {
+                    int sequence = Integer.parseInt(fileId.substring(FILE_ID_PREFIX.length()));
+                    mediaLatency.record(TimeUnit.NANOSECONDS.toMillis(now - fedAt[sequence]));
+                }
+            }
+            return super.execute(sendMediaGroup);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Opção inválida (use chave=valor): " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Grava a configuração da reprodução sobre a configuração base, se houver
+     */
+    private static void prepareConfig(Path workDir) throws IOException {
+        Properties properties = new Properties();
+        String base = System.getProperty("albummaker.config");
+        if (base != null && Files.isRegularFile(Paths.get(base))) {
+            try (InputStream input = Files.newInputStream(Paths.get(base))) {
+                properties.load(input);
+            }
+        }
+
+        properties.putIfAbsent("bot.username", "replay_bot");
+        properties.putIfAbsent("bot.token", "0:replay");
+        properties.remove("tenants");
+        properties.setProperty("recorder.enabled", "false");
+        properties.setProperty("state.dir", workDir.resolve("state").toString());
+
+        Path configFile = workDir.resolve("replay.properties");
+        try (OutputStream output = Files.newOutputStream(configFile)) {
+            properties.store(output, "Configuração gerada pela reprodução");
+        }
+        System.setProperty("albummaker.config", configFile.toString());
+    }
+
+    private static void setLogLevel(String level) {
+        ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger)
+                LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.toLevel(level, Level.WARN));
+    }
+}
@@ -0,0 +1,42 @@
+package org.telegram.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.model.UpdateKind;
+import org.telegram.service.ExecutorTaskScheduler;
+import org.telegram.service.MetricsService;
+import org.telegram.service.UpdateRecorder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Grava uma sequência curta de mídias e a reproduz pela pilha completa com o
+ * {@link UpdateReplay}, com as threads e o relógio reais
+ */
+public class UpdateReplayTest {
+    private static final int CHATS = 8;
+    private static final int MEDIA_PER_CHAT = 25;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordedMediaIsReplayedUntilTheBotIsIdle() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("updates.amr");
+        ExecutorTaskScheduler scheduler = new ExecutorTaskScheduler("recorder", 1);
+        UpdateRecorder recorder = new UpdateRecorder(file, 64 * 1024, 1024 * 1024, 0, new MetricsService(), scheduler);
+        int messageId = 1;
+        for (int i = 0; i < MEDIA_PER_CHAT; i++) {
+            for (long chatId = 1; chatId <= CHATS; chatId++) {
+                recorder.record(i * 10L, chatId, i % 2 == 0 ? UpdateKind.PHOTO : UpdateKind.VIDEO, messageId++, null);
+            }
+        }
+        recorder.close();
+        scheduler.shutdown();
+
+        assertTrue(UpdateReplay.execute("file=" + file, "speed=max"));
+    }
+}
@@ -0,0 +1,227 @@
+package org.telegram.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.service.TaskScheduler;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.PriorityQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agendador em tempo virtual para simulações.
+ *
+ * O tempo só anda quando a simulação chama {@link #advanceTo(long)}; as tarefas vencidas
+ * rodam na própria thread da simulação, em ordem de horário e, em empate, de agendamento.
+ * Não é thread-safe: todo o bot simulado deve rodar na mesma thread (ingress.lanes=0,
+ * outbound.threads=0).
+ */
+public class VirtualTimeScheduler implements TaskScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualTimeScheduler.class);
+
+    private final PriorityQueue<VirtualTask> queue = new PriorityQueue<>();
+    private final Clock clock;
+    private long nowMillis;
+    private long sequence;
+    private int pendingTasks;
+    private long executedTasks;
+    private boolean shutdown;
+
+    public VirtualTimeScheduler(long startMillis) {
+        this.nowMillis = startMillis;
+        this.clock = new VirtualClock(ZoneOffset.UTC);
+    }
+
+    /**
+     * Relógio que acompanha o tempo virtual deste agendador
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    public long currentTimeMillis() {
+        return nowMillis;
+    }
+
+    /**
+     * Avança o tempo virtual executando, em ordem, todas as tarefas vencidas até o instante
+     */
+    public void advanceTo(long targetMillis) {
+        VirtualTask task;
+        while ((task = queue.peek()) != null && task.timeMillis <= targetMillis) {
+            queue.poll();
+            task.queued = false;
+            if (task.cancelled) {
+                continue;
+            }
+
+            nowMillis = Math.max(nowMillis, task.timeMillis);
+            pendingTasks--;
+            executedTasks++;
+            try {
+                task.action.run();
+            } catch (Exception e) {
+                logger.error("Erro em tarefa agendada no tempo virtual", e);
+            }
+
+            if (task.periodMillis > 0 && !task.cancelled && !shutdown) {
+                task.timeMillis += task.periodMillis;
+                task.sequence = sequence++;
+                task.queued = true;
+                pendingTasks++;
+                queue.add(task);
+            } else {
+                task.done = true;
+            }
+        }
+        nowMillis = Math.max(nowMillis, targetMillis);
+    }
+
+    public void advance(long amount, TimeUnit unit) {
+        advanceTo(nowMillis + unit.toMillis(amount));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return enqueue(task, unit.toMillis(delay), 0);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return enqueue(task, unit.toMillis(initialDelay), unit.toMillis(period));
+    }
+
+    private VirtualTask enqueue(Runnable action, long delayMillis, long periodMillis) {
+        if (shutdown) {
+            throw new IllegalStateException("Agendador virtual finalizado");
+        }
+        VirtualTask task = new VirtualTask(action, nowMillis + Math.max(0, delayMillis), periodMillis, sequence++);
+        task.queued = true;
+        queue.add(task);
+        pendingTasks++;
+        return task;
+    }
+
+    @Override
+    public int getPendingTasks() {
+        return pendingTasks;
+    }
+
+    /**
+     * Tarefas executadas desde a criação do agendador
+     */
+    public long getExecutedTasks() {
+        return executedTasks;
+    }
+
+    @Override
+    public void setThreads(int threads) {
+        // Sem threads: as tarefas rodam na thread que avança o tempo
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    private final class VirtualTask implements ScheduledFuture<Object> {
+        final Runnable action;
+        final long periodMillis;
+        long timeMillis;
+        long sequence;
+        boolean queued;
+        boolean cancelled;
+        boolean done;
+
+        VirtualTask(Runnable action, long timeMillis, long periodMillis, long sequence) {
+            this.action = action;
+            this.timeMillis = timeMillis;
+            this.periodMillis = periodMillis;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(timeMillis - nowMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof VirtualTask) {
+                VirtualTask task = (VirtualTask) other;
+                int byTime = Long.compare(timeMillis, task.timeMillis);
+                return byTime != 0 ? byTime : Long.compare(sequence, task.sequence);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (cancelled || done) {
+                return false;
+            }
+            // A tarefa sai da fila quando o tempo passar por ela; até lá só deixa de contar
+            cancelled = true;
+            if (queued) {
+                pendingTasks--;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled || done;
+        }
+
+        @Override
+        public Object get() {
+            if (!isDone()) {
+                throw new IllegalStateException("Tarefa ainda não executada; avance o tempo virtual");
+            }
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return get();
+        }
+    }
+
+    private final class VirtualClock extends Clock {
+        private final ZoneId zone;
+
+        VirtualClock(ZoneId zone) {
+            this.zone = zone;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new VirtualClock(zone);
+        }
+
+        @Override
+        public long millis() {
+            return nowMillis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(nowMillis);
+        }
+    }
+}